@@ -1,73 +1,60 @@
 package com.jakewharton.breakoutwallpaper;
 
-import android.util.Log;
-
 /**
- * Represents a single ball on the game board.
+ * Represents a single ball on the game board. The state itself lives in a
+ * {@link BallStore} slot so it can also be processed in bulk.
  * 
  * @author Jake Wharton
  */
 public class Ball {
-	/**
-	 * Tag used for logging.
-	 */
-	private static final String TAG = "BreakoutWallpaper.Ball";
-	
 	/**
 	 * Size relative to the smaller of cell width and cell height.
 	 */
 	/*package*/static final float SIZE_PERCENTAGE = 0.75f;
 	
 	/**
-	 * Ball radius in a static context.
+	 * Arbitrary default ball speed.
 	 */
-	/*package*/static float RADIUS = 0;
-	
-	/**
-	 * Arbitrary ball speed.
-	 */
-	private static final int SPEED = 10;
+	/*package*/static final int SPEED = 10;
 	
 	
 	
 	/**
-	 * X coordinate of on-screen location.
+	 * Storage holding this ball's state.
 	 */
-	private float mLocationX;
+	private final BallStore mStore;
 	
 	/**
-	 * Y coordinate of on-screen location.
+	 * Index of this ball's slot in the storage.
 	 */
-	private float mLocationY;
+	private final int mIndex;
+	
 	
-	/**
-	 * X coordinate of per-tick movement vector.
-	 */
-	private float mVectorX;
 	
 	/**
-	 * Y coordinate of per-tick movement vector.
+	 * Create a standalone ball heading straight up.
 	 */
-	private float mVectorY;
-	
-	
+	public Ball() {
+		this(new BallStore(1), 0);
+	}
 	
 	/**
-	 * Create a ball.
+	 * Create a ball heading straight up in a storage slot.
+	 * 
+	 * @param store Storage.
+	 * @param index Slot index.
 	 */
-	public Ball() {
-		if (Wallpaper.LOG_VERBOSE) {
-			Log.v(Ball.TAG, "> Ball()");
-		}
+	public Ball(final BallStore store, final int index) {
+		this.mStore = store;
+		this.mIndex = index;
 		
-		this.mLocationX = 0;
-		this.mLocationY = 0;
-		this.mVectorX = 0;
-		this.mVectorY = 0;
-
-		if (Wallpaper.LOG_VERBOSE) {
-			Log.v(Ball.TAG, "< Ball()");
-		}
+		store.mLocationX[index] = 0;
+		store.mLocationY[index] = 0;
+		store.mVectorX[index] = 0;
+		store.mVectorY[index] = -Ball.SPEED;
+		store.mSpeed[index] = Ball.SPEED;
+		store.mRadius[index] = 0;
+		store.mMass[index] = 1;
 	}
 	
 	
@@ -78,7 +65,7 @@ public class Ball {
 	 * @return Float.
 	 */
 	public float getLocationX() {
-		return this.mLocationX;
+		return this.mStore.mLocationX[this.mIndex];
 	}
 	
 	/**
@@ -87,7 +74,7 @@ public class Ball {
 	 * @return Float.
 	 */
 	public float getLocationY() {
-		return this.mLocationY;
+		return this.mStore.mLocationY[this.mIndex];
 	}
 	
 	/**
@@ -97,12 +84,8 @@ public class Ball {
 	 * @param y Y coordinate.
 	 */
 	public void setLocation(final float x, final float y) {
-		this.mLocationX = x;
-		this.mLocationY = y;
-		
-		if (Wallpaper.LOG_DEBUG) {
-			Log.d(Ball.TAG, "Location: (" + x + ", " + y + ")");
-		}
+		this.mStore.mLocationX[this.mIndex] = x;
+		this.mStore.mLocationY[this.mIndex] = y;
 	}
 	
 	/**
@@ -111,7 +94,7 @@ public class Ball {
 	 * @return Float.
 	 */
 	public float getVectorX() {
-		return this.mVectorY;
+		return this.mStore.mVectorX[this.mIndex];
 	}
 	
 	/**
@@ -120,31 +103,103 @@ public class Ball {
 	 * @return Float.
 	 */
 	public float getVectorY() {
-		return this.mVectorX;
+		return this.mStore.mVectorY[this.mIndex];
 	}
 	
 	/**
 	 * Set per-tick movement vector. This will be normalized and then scaled to speed.
+	 * A vector with no length or direction leaves the current heading unchanged.
 	 * 
 	 * @param x X coordinate.
 	 * @param y Y coordinate.
 	 */
-	public void setVector(float x, float y) {
-		final float length = (float)Math.sqrt(Math.pow(x, 2) + Math.pow(y, 2));
-		x /= length;
-		y /= length;
-		x *= Ball.SPEED;
-		y *= Ball.SPEED;
+	public void setVector(final float x, final float y) {
+		//Normalize in double precision so very large and very small vectors survive
+		final double length = Math.sqrt(((double)x * x) + ((double)y * y));
+		if (!(length > 0) || Double.isInfinite(length)) {
+			return;
+		}
 		
-		this.mVectorX = x;
-		this.mVectorY = y;
+		final float speed = this.mStore.mSpeed[this.mIndex];
+		this.mStore.mVectorX[this.mIndex] = (float)(x / length * speed);
+		this.mStore.mVectorY[this.mIndex] = (float)(y / length * speed);
+	}
+	
+	/**
+	 * Get distance moved per tick.
+	 * 
+	 * @return Float.
+	 */
+	public float getSpeed() {
+		return this.mStore.mSpeed[this.mIndex];
+	}
+	
+	/**
+	 * Set distance moved per tick, keeping the current heading.
+	 * 
+	 * @param speed Speed.
+	 */
+	public void setSpeed(final float speed) {
+		this.mStore.mSpeed[this.mIndex] = speed;
+		this.setVector(this.mStore.mVectorX[this.mIndex], this.mStore.mVectorY[this.mIndex]);
+	}
+	
+	/**
+	 * Get radius used when colliding with other balls.
+	 * 
+	 * @return Pixels.
+	 */
+	public float getRadius() {
+		return this.mStore.mRadius[this.mIndex];
+	}
+	
+	/**
+	 * Set radius used when colliding with other balls.
+	 * 
+	 * @param radius Pixels.
+	 */
+	public void setRadius(final float radius) {
+		this.mStore.mRadius[this.mIndex] = radius;
+	}
+	
+	/**
+	 * Get mass used when colliding with other balls.
+	 * 
+	 * @return Mass.
+	 */
+	public float getMass() {
+		return this.mStore.mMass[this.mIndex];
+	}
+	
+	/**
+	 * Set mass used when colliding with other balls.
+	 * 
+	 * @param mass Mass.
+	 */
+	public void setMass(final float mass) {
+		this.mStore.mMass[this.mIndex] = mass;
+	}
+	
+	/**
+	 * Restore an exact location and vector, bypassing normalization.
+	 * 
+	 * @param locationX X coordinate of location.
+	 * @param locationY Y coordinate of location.
+	 * @param vectorX X coordinate of vector.
+	 * @param vectorY Y coordinate of vector.
+	 */
+	/*package*/void restore(final float locationX, final float locationY, final float vectorX, final float vectorY) {
+		this.mStore.mLocationX[this.mIndex] = locationX;
+		this.mStore.mLocationY[this.mIndex] = locationY;
+		this.mStore.mVectorX[this.mIndex] = vectorX;
+		this.mStore.mVectorY[this.mIndex] = vectorY;
 	}
 	
 	/**
 	 * Iterate the ball one step.
 	 */
 	public void tick() {
-		this.mLocationX += this.mVectorX;
-		this.mLocationY += this.mVectorY;
+		this.mStore.mLocationX[this.mIndex] += this.mStore.mVectorX[this.mIndex];
+		this.mStore.mLocationY[this.mIndex] += this.mStore.mVectorY[this.mIndex];
 	}
 }
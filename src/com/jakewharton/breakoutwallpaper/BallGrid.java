@@ -0,0 +1,418 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Uniform grid over the game area used to find the balls touching one
+ * another, or near a point, without testing every ball. The balls are
+ * counting sorted into square cells at least as wide as the largest ball,
+ * so two touching balls always share a cell or sit in neighboring ones.
+ * Cells are also sized to hold about one ball each on average, which keeps
+ * the work per ball constant as the number of balls grows. The arrays are
+ * reused from one rebuild to the next and only reallocated when they need
+ * to grow.
+ */
+public class BallGrid {
+	/**
+	 * Number of balls sorted into the grid.
+	 */
+	private int mCount;
+
+	/**
+	 * Number of cells horizontally.
+	 */
+	private int mColumns;
+
+	/**
+	 * Number of cells vertically.
+	 */
+	private int mRows;
+
+	/**
+	 * Width and height of a cell.
+	 */
+	private float mCellSize;
+
+	/**
+	 * Position in {@link #mOrder} of each cell's first ball, plus one trailing entry for the end of the last cell.
+	 */
+	private int[] mCellStart;
+
+	/**
+	 * Next free position in {@link #mOrder} of each cell while sorting.
+	 */
+	private int[] mCursor;
+
+	/**
+	 * Cell of each ball.
+	 */
+	private int[] mBallCells;
+
+	/**
+	 * Balls ordered by cell and, within a cell, by index.
+	 */
+	private int[] mOrder;
+
+	/**
+	 * Touching balls as consecutive pairs of indices, lower index first.
+	 */
+	private int[] mContacts;
+
+	/**
+	 * Number of pairs in {@link #mContacts}.
+	 */
+	private int mContactCount;
+
+	/**
+	 * Balls found by the last call to {@link #findWithin(BallStore, float, float, float)}.
+	 */
+	private int[] mFound;
+
+	/**
+	 * Nearest ball seen so far by {@link #findNearest(BallStore, float, float)}.
+	 */
+	private int mNearest;
+
+	/**
+	 * Squared distance to {@link #mNearest}.
+	 */
+	private double mNearestDistance;
+
+
+
+	/**
+	 * Create an empty grid.
+	 */
+	public BallGrid() {
+		this.mCellStart = new int[1];
+		this.mCursor = new int[0];
+		this.mBallCells = new int[0];
+		this.mOrder = new int[0];
+		this.mContacts = new int[0];
+		this.mFound = new int[0];
+	}
+
+
+
+	/**
+	 * Get the touching balls found by the last call to
+	 * {@link #findContacts(BallStore, int, int)}.
+	 *
+	 * @return Consecutive pairs of ball indices, lower index first. Only the
+	 * first {@code 2 * count} values are valid.
+	 */
+	public int[] getContacts() {
+		return this.mContacts;
+	}
+
+	/**
+	 * Get the number of touching pairs found by the last call to
+	 * {@link #findContacts(BallStore, int, int)}.
+	 *
+	 * @return Pairs.
+	 */
+	public int getContactCount() {
+		return this.mContactCount;
+	}
+
+	/**
+	 * Get the balls found by the last call to
+	 * {@link #findWithin(BallStore, float, float, float)}.
+	 *
+	 * @return Ball indices. Only the first {@code count} values are valid.
+	 */
+	public int[] getFound() {
+		return this.mFound;
+	}
+
+	/**
+	 * Sort the balls into the grid at their current locations.
+	 *
+	 * @param store Balls.
+	 * @param width Width of the game area.
+	 * @param height Height of the game area.
+	 */
+	public void rebuild(final BallStore store, final int width, final int height) {
+		final int count = store.size();
+		final float[] radius = store.mRadius;
+		float largest = 0;
+		for (int i = 0; i < count; i++) {
+			largest = Math.max(largest, radius[i]);
+		}
+		final double area = (double)Math.max(width, 1) * Math.max(height, 1);
+		this.mCount = count;
+		this.mCellSize = Math.max(largest * 2, (float)Math.sqrt(area / Math.max(count, 1)));
+		this.mColumns = Math.max((int)(width / this.mCellSize), 1);
+		this.mRows = Math.max((int)(height / this.mCellSize), 1);
+		this.sort(store, count);
+	}
+
+	/**
+	 * Sort the balls into the grid and find every pair whose circles
+	 * overlap. Pairs come out in the same order for the same ball state.
+	 *
+	 * @param store Balls.
+	 * @param width Width of the game area.
+	 * @param height Height of the game area.
+	 * @return Number of touching pairs.
+	 */
+	public int findContacts(final BallStore store, final int width, final int height) {
+		this.rebuild(store, width, height);
+		this.mContactCount = 0;
+		if (this.mCount < 2) {
+			return 0;
+		}
+
+		final int columns = this.mColumns;
+		final int rows = this.mRows;
+		final int[] cellStart = this.mCellStart;
+		final int[] order = this.mOrder;
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				final int cell = (row * columns) + column;
+				final int end = cellStart[cell + 1];
+				for (int n = cellStart[cell]; n < end; n++) {
+					final int ball = order[n];
+					//Later balls in the same cell, then the four neighbors not yet visited
+					this.test(store, ball, n + 1, end);
+					if (column + 1 < columns) {
+						this.testCell(store, ball, cell + 1);
+					}
+					if (row + 1 < rows) {
+						if (column > 0) {
+							this.testCell(store, ball, cell + columns - 1);
+						}
+						this.testCell(store, ball, cell + columns);
+						if (column + 1 < columns) {
+							this.testCell(store, ball, cell + columns + 1);
+						}
+					}
+				}
+			}
+		}
+		return this.mContactCount;
+	}
+
+	/**
+	 * Find the ball whose center is nearest a point. Rings of cells are
+	 * searched outward from the point's cell until no ball in the next ring
+	 * could be any nearer. Of two balls at the same distance the one with
+	 * the lower index wins.
+	 *
+	 * @param store Balls, at the locations last passed to {@link #rebuild(BallStore, int, int)}.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return Ball index, or -1 if there are no balls.
+	 */
+	public int findNearest(final BallStore store, final float x, final float y) {
+		this.mNearest = -1;
+		this.mNearestDistance = Double.POSITIVE_INFINITY;
+		final int column = this.columnOf(x);
+		final int row = this.rowOf(y);
+		final int rings = Math.max(this.mColumns, this.mRows);
+		for (int ring = 0; ring < rings; ring++) {
+			final int left = column - ring;
+			final int right = column + ring;
+			final int top = row - ring;
+			final int bottom = row + ring;
+			for (int cellY = Math.max(top, 0); cellY <= Math.min(bottom, this.mRows - 1); cellY++) {
+				final int offset = cellY * this.mColumns;
+				if ((cellY == top) || (cellY == bottom)) {
+					for (int cellX = Math.max(left, 0); cellX <= Math.min(right, this.mColumns - 1); cellX++) {
+						this.visitNearest(store, offset + cellX, x, y);
+					}
+				} else {
+					if (left >= 0) {
+						this.visitNearest(store, offset + left, x, y);
+					}
+					if (right < this.mColumns) {
+						this.visitNearest(store, offset + right, x, y);
+					}
+				}
+			}
+
+			//Every ball in the next ring is at least this far from the point
+			final double reach = (double)ring * this.mCellSize;
+			if ((this.mNearest >= 0) && (this.mNearestDistance <= reach * reach)) {
+				break;
+			}
+		}
+		return this.mNearest;
+	}
+
+	/**
+	 * Find every ball whose center is within a distance of a point. The
+	 * balls are available from {@link #getFound()}.
+	 *
+	 * @param store Balls, at the locations last passed to {@link #rebuild(BallStore, int, int)}.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @param radius Distance.
+	 * @return Number of balls found.
+	 */
+	public int findWithin(final BallStore store, final float x, final float y, final float radius) {
+		if (!(radius >= 0)) {
+			return 0;
+		}
+
+		final double radiusSquared = (double)radius * radius;
+		final int left = this.columnOf(x - radius);
+		final int right = this.columnOf(x + radius);
+		final int top = this.rowOf(y - radius);
+		final int bottom = this.rowOf(y + radius);
+		int found = 0;
+		for (int row = top; row <= bottom; row++) {
+			for (int column = left; column <= right; column++) {
+				final int cell = (row * this.mColumns) + column;
+				final int end = this.mCellStart[cell + 1];
+				for (int n = this.mCellStart[cell]; n < end; n++) {
+					final int ball = this.mOrder[n];
+					final double deltaX = x - store.mLocationX[ball];
+					final double deltaY = y - store.mLocationY[ball];
+					if ((deltaX * deltaX) + (deltaY * deltaY) <= radiusSquared) {
+						this.mFound[found] = ball;
+						found += 1;
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Test every ball in a cell as the nearest to a point.
+	 *
+	 * @param store Balls.
+	 * @param cell Cell index.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 */
+	private void visitNearest(final BallStore store, final int cell, final float x, final float y) {
+		final int end = this.mCellStart[cell + 1];
+		for (int n = this.mCellStart[cell]; n < end; n++) {
+			final int ball = this.mOrder[n];
+			final float deltaX = x - store.mLocationX[ball];
+			final float deltaY = y - store.mLocationY[ball];
+			final double distance = ((double)deltaX * deltaX) + ((double)deltaY * deltaY);
+			if ((distance < this.mNearestDistance) || ((distance == this.mNearestDistance) && (ball < this.mNearest))) {
+				this.mNearest = ball;
+				this.mNearestDistance = distance;
+			}
+		}
+	}
+
+	/**
+	 * Get the column of the cell holding an X coordinate, clamped to the grid.
+	 *
+	 * @param x X coordinate.
+	 * @return Column.
+	 */
+	private int columnOf(final float x) {
+		return Math.max(Math.min((int)(x / this.mCellSize), this.mColumns - 1), 0);
+	}
+
+	/**
+	 * Get the row of the cell holding a Y coordinate, clamped to the grid.
+	 *
+	 * @param y Y coordinate.
+	 * @return Row.
+	 */
+	private int rowOf(final float y) {
+		return Math.max(Math.min((int)(y / this.mCellSize), this.mRows - 1), 0);
+	}
+
+	/**
+	 * Counting sort the balls by cell, keeping index order within a cell.
+	 * Balls slightly outside the game area go in the nearest edge cell.
+	 *
+	 * @param store Balls.
+	 * @param count Number of balls.
+	 */
+	private void sort(final BallStore store, final int count) {
+		final int cells = this.mColumns * this.mRows;
+		if (this.mCellStart.length < cells + 1) {
+			this.mCellStart = new int[cells + 1];
+			this.mCursor = new int[cells];
+		} else {
+			for (int i = 0; i <= cells; i++) {
+				this.mCellStart[i] = 0;
+			}
+		}
+		if (this.mOrder.length < count) {
+			this.mOrder = new int[count];
+			this.mBallCells = new int[count];
+			this.mFound = new int[count];
+		}
+
+		final float[] locationX = store.mLocationX;
+		final float[] locationY = store.mLocationY;
+		final int[] cellStart = this.mCellStart;
+		final int[] ballCells = this.mBallCells;
+		for (int i = 0; i < count; i++) {
+			final int cell = (this.rowOf(locationY[i]) * this.mColumns) + this.columnOf(locationX[i]);
+			ballCells[i] = cell;
+			cellStart[cell + 1] += 1;
+		}
+
+		final int[] cursor = this.mCursor;
+		for (int cell = 0; cell < cells; cell++) {
+			cellStart[cell + 1] += cellStart[cell];
+			cursor[cell] = cellStart[cell];
+		}
+		for (int i = 0; i < count; i++) {
+			final int cell = ballCells[i];
+			this.mOrder[cursor[cell]] = i;
+			cursor[cell] += 1;
+		}
+	}
+
+	/**
+	 * Test a ball against every ball in a cell.
+	 *
+	 * @param store Balls.
+	 * @param ball Ball index.
+	 * @param cell Cell index.
+	 */
+	private void testCell(final BallStore store, final int ball, final int cell) {
+		this.test(store, ball, this.mCellStart[cell], this.mCellStart[cell + 1]);
+	}
+
+	/**
+	 * Test a ball against a run of sorted balls and record those it touches.
+	 *
+	 * @param store Balls.
+	 * @param ball Ball index.
+	 * @param from First position in {@link #mOrder} (inclusive).
+	 * @param to Last position in {@link #mOrder} (exclusive).
+	 */
+	private void test(final BallStore store, final int ball, final int from, final int to) {
+		final float x = store.mLocationX[ball];
+		final float y = store.mLocationY[ball];
+		final float radius = store.mRadius[ball];
+		for (int n = from; n < to; n++) {
+			final int other = this.mOrder[n];
+			final float deltaX = store.mLocationX[other] - x;
+			final float deltaY = store.mLocationY[other] - y;
+			final float reach = radius + store.mRadius[other];
+			if ((deltaX * deltaX) + (deltaY * deltaY) < reach * reach) {
+				this.add(Math.min(ball, other), Math.max(ball, other));
+			}
+		}
+	}
+
+	/**
+	 * Record a touching pair, growing the storage if needed.
+	 *
+	 * @param first Lower ball index.
+	 * @param second Higher ball index.
+	 */
+	private void add(final int first, final int second) {
+		final int index = this.mContactCount * 2;
+		if (index + 1 >= this.mContacts.length) {
+			final int[] contacts = new int[Math.max(this.mContacts.length * 2, 16)];
+			System.arraycopy(this.mContacts, 0, contacts, 0, this.mContacts.length);
+			this.mContacts = contacts;
+		}
+		this.mContacts[index] = first;
+		this.mContacts[index + 1] = second;
+		this.mContactCount += 1;
+	}
+}
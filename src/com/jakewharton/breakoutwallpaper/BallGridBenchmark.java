@@ -0,0 +1,314 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Command-line benchmark comparing {@link BallGrid} with testing every pair
+ * of balls. Balls of mixed sizes are scattered at random over an area
+ * which grows with their number, so the density stays the same, and then
+ * moved for a number of steps. Both find the same pairs; the grid should
+ * take about the same time per ball at every count. Touch lookups of the
+ * nearest ball and of every ball within a radius are then compared with
+ * a scan over every ball in the same way.
+ *
+ * <pre>
+ * java -cp out com.jakewharton.breakoutwallpaper.BallGridBenchmark --balls 1000,2000,4000,8000,16000 --steps 200
+ * </pre>
+ */
+public class BallGridBenchmark {
+	/**
+	 * Area (in square pixels) per ball.
+	 */
+	private static final int AREA_PER_BALL = 2000;
+
+	/**
+	 * Smallest ball radius.
+	 */
+	private static final float MIN_RADIUS = 3;
+
+	/**
+	 * Largest ball radius.
+	 */
+	private static final float MAX_RADIUS = 9;
+
+	/**
+	 * Largest count at which every pair is also tested.
+	 */
+	private static final int MAX_PAIRWISE = 16000;
+
+	/**
+	 * Touch lookups timed per count.
+	 */
+	private static final int QUERIES = 2000;
+
+	/**
+	 * Radius of the within-radius lookups.
+	 */
+	private static final float STEER_RADIUS = 100;
+
+
+
+	public static void main(final String[] args) {
+		String counts = "1000,2000,4000,8000,16000";
+		int steps = 200;
+		int rounds = 3;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			final String name = args[i];
+			final String value = args[i + 1];
+			if ("--balls".equals(name)) {
+				counts = value;
+			} else if ("--steps".equals(name)) {
+				steps = Integer.parseInt(value);
+			} else if ("--rounds".equals(name)) {
+				rounds = Integer.parseInt(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + name);
+			}
+		}
+
+		for (final String countValue : counts.split(",")) {
+			final int count = Integer.parseInt(countValue.trim());
+			final int size = (int)Math.sqrt((double)count * BallGridBenchmark.AREA_PER_BALL);
+			final boolean isPairwise = (count <= BallGridBenchmark.MAX_PAIRWISE);
+
+			long bestGrid = Long.MAX_VALUE;
+			long bestPairwise = Long.MAX_VALUE;
+			long contacts = 0;
+			for (int round = 0; round < rounds; round++) {
+				final BallStore store = BallGridBenchmark.create(count, size);
+				final BallGrid grid = new BallGrid();
+				contacts = 0;
+				long gridElapsed = 0;
+				long pairwiseElapsed = 0;
+				for (int step = 0; step < steps; step++) {
+					store.integrate(0, count);
+					BallGridBenchmark.wrap(store, size);
+
+					long start = System.nanoTime();
+					final int found = grid.findContacts(store, size, size);
+					gridElapsed += System.nanoTime() - start;
+					contacts += found;
+
+					if (isPairwise) {
+						start = System.nanoTime();
+						final long expected = BallGridBenchmark.pairwise(store);
+						pairwiseElapsed += System.nanoTime() - start;
+						if (expected != BallGridBenchmark.hash(grid)) {
+							System.out.println("FAILED: grid and pairwise contacts differ with " + count + " balls at step " + step);
+							System.exit(1);
+						}
+					}
+				}
+				bestGrid = Math.min(bestGrid, gridElapsed);
+				bestPairwise = Math.min(bestPairwise, pairwiseElapsed);
+			}
+
+			final double ballSteps = (double)count * steps;
+			System.out.println(count + " balls (" + size + "x" + size + ", " + String.format("%.2f", contacts / (double)steps) + " contacts/step):"
+					+ " grid " + String.format("%.1f", bestGrid / ballSteps) + "ns/ball"
+					+ (isPairwise
+							? ", pairwise " + String.format("%.1f", bestPairwise / ballSteps) + "ns/ball"
+								+ ", speedup " + String.format("%.1f", bestPairwise / (double)bestGrid) + "x"
+							: ""));
+
+			BallGridBenchmark.query(count, size, rounds);
+		}
+	}
+
+	/**
+	 * Time touch lookups against scanning every ball.
+	 *
+	 * @param count Number of balls.
+	 * @param size Width and height of the square.
+	 * @param rounds Timed runs of each.
+	 */
+	private static void query(final int count, final int size, final int rounds) {
+		final BallStore store = BallGridBenchmark.create(count, size);
+		final BallGrid grid = new BallGrid();
+		grid.rebuild(store, size, size);
+		final FastRandom random = new FastRandom(~count);
+		final float[] points = new float[BallGridBenchmark.QUERIES * 2];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = random.nextFloat() * size;
+		}
+
+		long bestNearest = Long.MAX_VALUE;
+		long bestNearestScan = Long.MAX_VALUE;
+		long bestWithin = Long.MAX_VALUE;
+		long bestWithinScan = Long.MAX_VALUE;
+		long within = 0;
+		for (int round = 0; round < rounds; round++) {
+			long nearestElapsed = 0;
+			long nearestScanElapsed = 0;
+			long withinElapsed = 0;
+			long withinScanElapsed = 0;
+			within = 0;
+			for (int i = 0; i < points.length; i += 2) {
+				final float x = points[i];
+				final float y = points[i + 1];
+
+				long start = System.nanoTime();
+				final int nearest = grid.findNearest(store, x, y);
+				nearestElapsed += System.nanoTime() - start;
+				start = System.nanoTime();
+				final int expected = BallGridBenchmark.scanNearest(store, x, y);
+				nearestScanElapsed += System.nanoTime() - start;
+				if (nearest != expected) {
+					System.out.println("FAILED: grid found ball " + nearest + " nearest (" + x + ", " + y + ") but a scan found " + expected);
+					System.exit(1);
+				}
+
+				start = System.nanoTime();
+				final int found = grid.findWithin(store, x, y, BallGridBenchmark.STEER_RADIUS);
+				withinElapsed += System.nanoTime() - start;
+				start = System.nanoTime();
+				final int expectedFound = BallGridBenchmark.scanWithin(store, x, y, BallGridBenchmark.STEER_RADIUS);
+				withinScanElapsed += System.nanoTime() - start;
+				if (found != expectedFound) {
+					System.out.println("FAILED: grid found " + found + " balls near (" + x + ", " + y + ") but a scan found " + expectedFound);
+					System.exit(1);
+				}
+				within += found;
+			}
+			bestNearest = Math.min(bestNearest, nearestElapsed);
+			bestNearestScan = Math.min(bestNearestScan, nearestScanElapsed);
+			bestWithin = Math.min(bestWithin, withinElapsed);
+			bestWithinScan = Math.min(bestWithinScan, withinScanElapsed);
+		}
+
+		final int queries = BallGridBenchmark.QUERIES;
+		System.out.println("  touch: nearest " + (bestNearest / queries) + "ns (scan " + (bestNearestScan / queries) + "ns)"
+				+ ", within " + (int)BallGridBenchmark.STEER_RADIUS + "px " + (bestWithin / queries) + "ns (scan " + (bestWithinScan / queries) + "ns)"
+				+ ", " + String.format("%.1f", within / (double)queries) + " balls/steer");
+	}
+
+	/**
+	 * Find the ball nearest a point by scanning every ball, as touches did
+	 * before the grid.
+	 *
+	 * @param store Balls.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return Ball index.
+	 */
+	private static int scanNearest(final BallStore store, final float x, final float y) {
+		double nearestDistance = Double.POSITIVE_INFINITY;
+		int nearest = -1;
+		for (int i = 0; i < store.size(); i++) {
+			final float deltaX = x - store.mLocationX[i];
+			final float deltaY = y - store.mLocationY[i];
+			final double distance = ((double)deltaX * deltaX) + ((double)deltaY * deltaY);
+			if (distance < nearestDistance) {
+				nearest = i;
+				nearestDistance = distance;
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Count the balls within a distance of a point by scanning every ball.
+	 *
+	 * @param store Balls.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @param radius Distance.
+	 * @return Number of balls.
+	 */
+	private static int scanWithin(final BallStore store, final float x, final float y, final float radius) {
+		final double radiusSquared = (double)radius * radius;
+		int found = 0;
+		for (int i = 0; i < store.size(); i++) {
+			final double deltaX = x - store.mLocationX[i];
+			final double deltaY = y - store.mLocationY[i];
+			if ((deltaX * deltaX) + (deltaY * deltaY) <= radiusSquared) {
+				found += 1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Scatter balls of random size, mass and heading over a square.
+	 *
+	 * @param count Number of balls.
+	 * @param size Width and height of the square.
+	 * @return Balls.
+	 */
+	private static BallStore create(final int count, final int size) {
+		final FastRandom random = new FastRandom(count);
+		final BallStore store = new BallStore(count);
+		for (int i = 0; i < count; i++) {
+			final Ball ball = new Ball(store, i);
+			final float radius = BallGridBenchmark.MIN_RADIUS + (random.nextFloat() * (BallGridBenchmark.MAX_RADIUS - BallGridBenchmark.MIN_RADIUS));
+			ball.setRadius(radius);
+			ball.setMass(radius * radius);
+			ball.setLocation(random.nextFloat() * size, random.nextFloat() * size);
+			ball.setVector(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+		}
+		return store;
+	}
+
+	/**
+	 * Bring balls which left the square back in on the opposite side.
+	 *
+	 * @param store Balls.
+	 * @param size Width and height of the square.
+	 */
+	private static void wrap(final BallStore store, final int size) {
+		for (int i = 0; i < store.size(); i++) {
+			store.mLocationX[i] = (store.mLocationX[i] + size) % size;
+			store.mLocationY[i] = (store.mLocationY[i] + size) % size;
+		}
+	}
+
+	/**
+	 * Test every pair of balls.
+	 *
+	 * @param store Balls.
+	 * @return Order independent hash of the touching pairs.
+	 */
+	private static long pairwise(final BallStore store) {
+		final int count = store.size();
+		long hash = 0;
+		for (int i = 0; i < count; i++) {
+			for (int j = i + 1; j < count; j++) {
+				final float deltaX = store.mLocationX[j] - store.mLocationX[i];
+				final float deltaY = store.mLocationY[j] - store.mLocationY[i];
+				final float reach = store.mRadius[i] + store.mRadius[j];
+				if ((deltaX * deltaX) + (deltaY * deltaY) < reach * reach) {
+					hash += BallGridBenchmark.mix(i, j);
+				}
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Hash the pairs found by a grid.
+	 *
+	 * @param grid Grid.
+	 * @return Order independent hash of the touching pairs.
+	 */
+	private static long hash(final BallGrid grid) {
+		final int[] contacts = grid.getContacts();
+		long hash = 0;
+		for (int n = 0; n < grid.getContactCount() * 2; n += 2) {
+			hash += BallGridBenchmark.mix(contacts[n], contacts[n + 1]);
+		}
+		return hash;
+	}
+
+	/**
+	 * Scramble a pair of indices.
+	 *
+	 * @param first Lower index.
+	 * @param second Higher index.
+	 * @return Hash.
+	 */
+	private static long mix(final int first, final int second) {
+		long value = (((long)first) << 32) | second;
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		return value;
+	}
+}
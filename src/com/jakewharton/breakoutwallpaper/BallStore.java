@@ -0,0 +1,200 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * State of every ball in a simulation held as parallel primitive arrays.
+ * Keeping each component contiguous lets the bulk passes below run as
+ * simple counted loops with no branches or object loads, which a JIT with
+ * loop vectorization (such as HotSpot's superword pass) turns into SIMD
+ * instructions on CPUs that support them and runs as scalar code elsewhere.
+ * {@link Ball} instances are views onto a single slot.
+ *
+ * <p>Storage is sized once for a fixed capacity and the balls in play are
+ * always the first {@link #size()} slots. Slots past those form a pool:
+ * {@link #acquire()} puts the next one in play and {@link #release(int)}
+ * fills a released slot from the last ball in play, both in constant time
+ * without allocating.</p>
+ */
+public class BallStore {
+	/**
+	 * Values written per ball by {@link #probeCells(int, int, float, float, float, int[], int)}.
+	 */
+	/*package*/static final int PROBES_STRIDE = 6;
+
+
+
+	/**
+	 * X coordinate of each on-screen location.
+	 */
+	/*package*/final float[] mLocationX;
+
+	/**
+	 * Y coordinate of each on-screen location.
+	 */
+	/*package*/final float[] mLocationY;
+
+	/**
+	 * X coordinate of each per-tick movement vector.
+	 */
+	/*package*/final float[] mVectorX;
+
+	/**
+	 * Y coordinate of each per-tick movement vector.
+	 */
+	/*package*/final float[] mVectorY;
+
+	/**
+	 * Distance each ball moves per tick.
+	 */
+	/*package*/final float[] mSpeed;
+
+	/**
+	 * Radius of each ball when colliding with other balls.
+	 */
+	/*package*/final float[] mRadius;
+
+	/**
+	 * Mass of each ball when colliding with other balls.
+	 */
+	/*package*/final float[] mMass;
+
+	/**
+	 * Number of balls in play.
+	 */
+	private int mSize;
+
+
+
+	/**
+	 * Create storage for a fixed number of balls, all in play.
+	 *
+	 * @param count Number of balls.
+	 */
+	public BallStore(final int count) {
+		this(count, count);
+	}
+
+	/**
+	 * Create storage for balls with room for more to be put in play later.
+	 *
+	 * @param count Number of balls in play.
+	 * @param capacity Most balls which can ever be in play.
+	 */
+	public BallStore(final int count, final int capacity) {
+		this.mLocationX = new float[capacity];
+		this.mLocationY = new float[capacity];
+		this.mVectorX = new float[capacity];
+		this.mVectorY = new float[capacity];
+		this.mSpeed = new float[capacity];
+		this.mRadius = new float[capacity];
+		this.mMass = new float[capacity];
+		this.mSize = count;
+	}
+
+
+
+	/**
+	 * Get the number of balls in play.
+	 *
+	 * @return Balls.
+	 */
+	public int size() {
+		return this.mSize;
+	}
+
+	/**
+	 * Get the most balls which can ever be in play.
+	 *
+	 * @return Balls.
+	 */
+	public int capacity() {
+		return this.mLocationX.length;
+	}
+
+	/**
+	 * Put the next free slot in play. Its values are left as they were.
+	 *
+	 * @return Index of the slot, or -1 if every slot is in play.
+	 */
+	public int acquire() {
+		if (this.mSize == this.mLocationX.length) {
+			return -1;
+		}
+		final int index = this.mSize;
+		this.mSize += 1;
+		return index;
+	}
+
+	/**
+	 * Take a ball out of play. The last ball in play is moved into its slot
+	 * so the balls in play stay contiguous.
+	 *
+	 * @param index Index of the ball.
+	 * @return Previous index of the ball now in the slot, equal to
+	 *         {@code index} if the released ball was the last.
+	 */
+	public int release(final int index) {
+		this.mSize -= 1;
+		final int last = this.mSize;
+		if (index != last) {
+			this.mLocationX[index] = this.mLocationX[last];
+			this.mLocationY[index] = this.mLocationY[last];
+			this.mVectorX[index] = this.mVectorX[last];
+			this.mVectorY[index] = this.mVectorY[last];
+			this.mSpeed[index] = this.mSpeed[last];
+			this.mRadius[index] = this.mRadius[last];
+			this.mMass[index] = this.mMass[last];
+		}
+		return last;
+	}
+
+	/**
+	 * Move a range of balls one step along their vectors.
+	 *
+	 * @param from First ball index (inclusive).
+	 * @param to Last ball index (exclusive).
+	 */
+	public void integrate(final int from, final int to) {
+		final float[] locationX = this.mLocationX;
+		final float[] locationY = this.mLocationY;
+		final float[] vectorX = this.mVectorX;
+		final float[] vectorY = this.mVectorY;
+		for (int i = from; i < to; i++) {
+			locationX[i] += vectorX[i];
+			locationY[i] += vectorY[i];
+		}
+	}
+
+	/**
+	 * Compute the three board cells each ball in a range should be tested
+	 * against: the two leading corners in the direction of vertical travel
+	 * and the leading side in the direction of horizontal travel. For each
+	 * ball {@link #PROBES_STRIDE} values are written starting at
+	 * {@code offset + (index - from) * PROBES_STRIDE}: X and Y of each probe.
+	 *
+	 * @param from First ball index (inclusive).
+	 * @param to Last ball index (exclusive).
+	 * @param radius Ball radius.
+	 * @param cellWidth Width of a cell.
+	 * @param cellHeight Height of a cell.
+	 * @param probes Destination.
+	 * @param offset Position in the destination of the first ball's values.
+	 */
+	public void probeCells(final int from, final int to, final float radius, final float cellWidth, final float cellHeight, final int[] probes, final int offset) {
+		final float[] locationX = this.mLocationX;
+		final float[] locationY = this.mLocationY;
+		final float[] vectorX = this.mVectorX;
+		final float[] vectorY = this.mVectorY;
+		for (int i = from; i < to; i++) {
+			final int index = offset + ((i - from) * BallStore.PROBES_STRIDE);
+			final float signX = Math.signum(vectorX[i]);
+			final float signY = Math.signum(vectorY[i]);
+			final int leadingY = (int)((locationY[i] + (signY * radius)) / cellHeight);
+			probes[index] = (int)((locationX[i] - radius) / cellWidth);
+			probes[index + 1] = leadingY;
+			probes[index + 2] = (int)((locationX[i] + radius) / cellWidth);
+			probes[index + 3] = leadingY;
+			probes[index + 4] = (int)((locationX[i] + (signX * radius)) / cellWidth);
+			probes[index + 5] = (int)((locationY[i] + (-signY * radius)) / cellHeight);
+		}
+	}
+}
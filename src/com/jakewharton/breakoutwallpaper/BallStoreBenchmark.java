@@ -0,0 +1,174 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Command-line benchmark comparing the per-ball movement and probe cell
+ * lookup done on one object per ball (as the game used to do) against the
+ * bulk passes over {@link BallStore}. Each size is run for the same number
+ * of ball steps so the results are directly comparable.
+ *
+ * <pre>
+ * java -cp out com.jakewharton.breakoutwallpaper.BallStoreBenchmark --steps 50000000 --rounds 5
+ * </pre>
+ */
+public class BallStoreBenchmark {
+	/**
+	 * Ball with its state held in its own fields, reproducing the old layout.
+	 */
+	private static class ObjectBall {
+		float locationX;
+		float locationY;
+		float vectorX;
+		float vectorY;
+	}
+
+	/**
+	 * Numbers of balls measured.
+	 */
+	private static final int[] SIZES = { 1000, 10000, 100000 };
+
+	/**
+	 * Ball radius used for probe lookups.
+	 */
+	private static final float RADIUS = 7.5f;
+
+	/**
+	 * Cell width used for probe lookups.
+	 */
+	private static final float CELL_WIDTH = 20;
+
+	/**
+	 * Cell height used for probe lookups.
+	 */
+	private static final float CELL_HEIGHT = 30;
+
+
+
+	public static void main(final String[] args) {
+		long steps = 50000000;
+		int rounds = 5;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			final String name = args[i];
+			final String value = args[i + 1];
+			if ("--steps".equals(name)) {
+				steps = Long.parseLong(value);
+			} else if ("--rounds".equals(name)) {
+				rounds = Integer.parseInt(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + name);
+			}
+		}
+
+		System.out.println("Ball steps per run: " + steps + ", rounds: " + rounds);
+		long sink = 0;
+		for (final int size : BallStoreBenchmark.SIZES) {
+			final int ticks = (int)Math.max(1, steps / size);
+			final FastRandom random = new FastRandom(size);
+			final ObjectBall[] objects = new ObjectBall[size];
+			final BallStore store = new BallStore(size);
+			for (int i = 0; i < size; i++) {
+				final float x = random.nextFloat() * 480;
+				final float y = random.nextFloat() * 800;
+				final double angle = random.nextFloat() * 2 * Math.PI;
+				final float vx = (float)(Math.cos(angle) * Ball.SPEED);
+				final float vy = (float)(Math.sin(angle) * Ball.SPEED);
+
+				objects[i] = new ObjectBall();
+				objects[i].locationX = x;
+				objects[i].locationY = y;
+				objects[i].vectorX = vx;
+				objects[i].vectorY = vy;
+				store.mLocationX[i] = x;
+				store.mLocationY[i] = y;
+				store.mVectorX[i] = vx;
+				store.mVectorY[i] = vy;
+			}
+			final int[] probes = new int[size * BallStore.PROBES_STRIDE];
+
+			long bestObjects = Long.MAX_VALUE;
+			long bestStore = Long.MAX_VALUE;
+			for (int round = 0; round < rounds; round++) {
+				long start = System.nanoTime();
+				sink += BallStoreBenchmark.runObjects(objects, probes, ticks);
+				bestObjects = Math.min(bestObjects, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				sink += BallStoreBenchmark.runStore(store, probes, ticks);
+				bestStore = Math.min(bestStore, System.nanoTime() - start);
+			}
+
+			final double ballSteps = (double)size * ticks;
+			System.out.println(size + " balls, " + ticks + " ticks:"
+					+ " objects " + String.format("%.2f", bestObjects / ballSteps) + "ns/ball"
+					+ ", store " + String.format("%.2f", bestStore / ballSteps) + "ns/ball"
+					+ ", speedup " + String.format("%.2f", bestObjects / (double)bestStore) + "x");
+		}
+		//Printed so the JIT cannot discard the work
+		System.out.println("Sink: " + sink);
+	}
+
+	/**
+	 * Move and probe one object per ball, as the tick loop used to.
+	 *
+	 * @param balls Balls.
+	 * @param probes Probe destination.
+	 * @param ticks Ticks to run.
+	 * @return Value depending on every probe.
+	 */
+	private static long runObjects(final ObjectBall[] balls, final int[] probes, final int ticks) {
+		final float radius = BallStoreBenchmark.RADIUS;
+		long sum = 0;
+		for (int tick = 0; tick < ticks; tick++) {
+			for (int i = 0; i < balls.length; i++) {
+				final ObjectBall ball = balls[i];
+				ball.locationX += ball.vectorX;
+				ball.locationY += ball.vectorY;
+
+				final int index = i * BallStore.PROBES_STRIDE;
+				final float signX = Math.signum(ball.vectorX);
+				final float signY = Math.signum(ball.vectorY);
+				final int leadingY = (int)((ball.locationY + (signY * radius)) / BallStoreBenchmark.CELL_HEIGHT);
+				probes[index] = (int)((ball.locationX - radius) / BallStoreBenchmark.CELL_WIDTH);
+				probes[index + 1] = leadingY;
+				probes[index + 2] = (int)((ball.locationX + radius) / BallStoreBenchmark.CELL_WIDTH);
+				probes[index + 3] = leadingY;
+				probes[index + 4] = (int)((ball.locationX + (signX * radius)) / BallStoreBenchmark.CELL_WIDTH);
+				probes[index + 5] = (int)((ball.locationY + (-signY * radius)) / BallStoreBenchmark.CELL_HEIGHT);
+			}
+			//Turn around so the balls stay near the board
+			if ((tick & 63) == 63) {
+				for (final ObjectBall ball : balls) {
+					ball.vectorX = -ball.vectorX;
+					ball.vectorY = -ball.vectorY;
+				}
+			}
+			sum += probes[(tick * 7) % probes.length];
+		}
+		return sum;
+	}
+
+	/**
+	 * Move and probe every ball with the bulk passes.
+	 *
+	 * @param store Balls.
+	 * @param probes Probe destination.
+	 * @param ticks Ticks to run.
+	 * @return Value depending on every probe.
+	 */
+	private static long runStore(final BallStore store, final int[] probes, final int ticks) {
+		final int size = store.size();
+		long sum = 0;
+		for (int tick = 0; tick < ticks; tick++) {
+			store.integrate(0, size);
+			store.probeCells(0, size, BallStoreBenchmark.RADIUS, BallStoreBenchmark.CELL_WIDTH, BallStoreBenchmark.CELL_HEIGHT, probes, 0);
+			//Turn around so the balls stay near the board
+			if ((tick & 63) == 63) {
+				for (int i = 0; i < size; i++) {
+					store.mVectorX[i] = -store.mVectorX[i];
+					store.mVectorY[i] = -store.mVectorY[i];
+				}
+			}
+			sum += probes[(tick * 7) % probes.length];
+		}
+		return sum;
+	}
+}
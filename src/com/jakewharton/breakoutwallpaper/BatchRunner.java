@@ -0,0 +1,247 @@
+package com.jakewharton.breakoutwallpaper;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command-line runner which plays a grid of configurations times seeds as
+ * independent headless games on a thread pool and prints aggregate
+ * statistics for each configuration. Useful for tuning gameplay settings
+ * without installing the wallpaper on a device.
+ *
+ * <pre>
+ * java -cp out com.jakewharton.breakoutwallpaper.BatchRunner --modes 0,1 --balls 1,2,4 --regens 30,45,70 --speeds 8,10,12 --seeds 100 --ticks 100000
+ * </pre>
+ *
+ * Layout options (rows, columns, spacing, widgets and size) are the same as
+ * {@link SoakRunner} and apply to every game.
+ */
+public class BatchRunner {
+	/**
+	 * Outcome of a single game.
+	 */
+	/*package*/static class GameResult {
+		/** Tick on which the first level was cleared, or -1 if never. */
+		long clearTick = -1;
+		long blocksDestroyed;
+		long regenerated;
+		long collisionTicks;
+		long ticks;
+		long elapsed;
+	}
+
+	/**
+	 * One point of the configuration grid.
+	 */
+	/*package*/static class Point {
+		int mode;
+		int balls;
+		int regen;
+		float speed;
+	}
+
+
+
+	public static void main(final String[] args) throws InterruptedException, ExecutionException {
+		int[] modes = { Simulation.MODE_ENDLESS };
+		int[] balls = { 4 };
+		int[] regens = { 45 };
+		float[] speeds = { Ball.SPEED };
+		int seeds = 10;
+		long firstSeed = 0;
+		long ticks = 100000;
+		int fps = 20;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean virtual = true;
+		final List<String> layout = new ArrayList<String>();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			final String name = args[i];
+			final String value = args[i + 1];
+			if ("--modes".equals(name)) {
+				modes = BatchRunner.parseInts(value);
+			} else if ("--balls".equals(name)) {
+				balls = BatchRunner.parseInts(value);
+			} else if ("--regens".equals(name)) {
+				regens = BatchRunner.parseInts(value);
+			} else if ("--speeds".equals(name)) {
+				final String[] values = value.split(",");
+				speeds = new float[values.length];
+				for (int j = 0; j < values.length; j++) {
+					speeds[j] = Float.parseFloat(values[j].trim());
+				}
+			} else if ("--seeds".equals(name)) {
+				seeds = Integer.parseInt(value);
+			} else if ("--seed".equals(name)) {
+				firstSeed = Long.parseLong(value);
+			} else if ("--ticks".equals(name)) {
+				ticks = Long.parseLong(value);
+			} else if ("--fps".equals(name)) {
+				fps = Integer.parseInt(value);
+			} else if ("--threads".equals(name)) {
+				threads = Integer.parseInt(value);
+				virtual = false;
+			} else if ("--pool".equals(name)) {
+				virtual = "virtual".equals(value);
+			} else {
+				layout.add(name);
+				layout.add(value);
+			}
+		}
+		final String[] layoutArgs = layout.toArray(new String[layout.size()]);
+		//Fail early on bad layout options
+		SoakRunner.parse(layoutArgs);
+
+		final List<Point> points = new ArrayList<Point>();
+		for (final int mode : modes) {
+			for (final int ballCount : balls) {
+				for (final int regen : regens) {
+					for (final float speed : speeds) {
+						final Point point = new Point();
+						point.mode = mode;
+						point.balls = ballCount;
+						point.regen = regen;
+						point.speed = speed;
+						points.add(point);
+					}
+				}
+			}
+		}
+
+		ExecutorService pool = virtual ? BatchRunner.newVirtualThreadPool() : null;
+		final String poolName;
+		if (pool != null) {
+			poolName = "virtual threads";
+		} else {
+			pool = Executors.newFixedThreadPool(threads);
+			poolName = threads + " thread(s)";
+		}
+		System.out.println(points.size() + " configurations x " + seeds + " seeds, " + ticks + " ticks each on " + poolName);
+
+		final long start = System.nanoTime();
+		final List<Future<GameResult>> futures = new ArrayList<Future<GameResult>>(points.size() * seeds);
+		for (final Point point : points) {
+			for (int i = 0; i < seeds; i++) {
+				final long seed = firstSeed + i;
+				final long gameTicks = ticks;
+				futures.add(pool.submit(new Callable<GameResult>() {
+					public GameResult call() {
+						return BatchRunner.play(layoutArgs, point, seed, gameTicks);
+					}
+				}));
+			}
+		}
+
+		System.out.println("mode,balls,regen,speed,games,cleared,clear_seconds_mean,blocks_per_second,regen_per_second,collision_tick_percent,ticks_per_second");
+		long totalTicks = 0;
+		int index = 0;
+		for (final Point point : points) {
+			int cleared = 0;
+			double clearSeconds = 0;
+			double blocksPerSecond = 0;
+			double regenPerSecond = 0;
+			double collisionPercent = 0;
+			long pointTicks = 0;
+			long pointElapsed = 0;
+			for (int i = 0; i < seeds; i++) {
+				final GameResult result = futures.get(index).get();
+				index += 1;
+
+				final double seconds = result.ticks / (double)fps;
+				if (result.clearTick >= 0) {
+					cleared += 1;
+					clearSeconds += result.clearTick / (double)fps;
+				}
+				blocksPerSecond += result.blocksDestroyed / seconds;
+				regenPerSecond += result.regenerated / seconds;
+				collisionPercent += (100.0 * result.collisionTicks) / result.ticks;
+				pointTicks += result.ticks;
+				pointElapsed += result.elapsed;
+			}
+			totalTicks += pointTicks;
+
+			System.out.println(point.mode + "," + point.balls + "," + point.regen + "," + point.speed
+					+ "," + seeds + "," + cleared
+					+ "," + ((cleared > 0) ? String.format("%.1f", clearSeconds / cleared) : "")
+					+ "," + String.format("%.2f", blocksPerSecond / seeds)
+					+ "," + String.format("%.2f", regenPerSecond / seeds)
+					+ "," + String.format("%.1f", collisionPercent / seeds)
+					+ "," + ((pointTicks * FrameStats.NANOSECONDS_IN_SECOND) / Math.max(1, pointElapsed)));
+		}
+		pool.shutdown();
+
+		final long elapsed = System.nanoTime() - start;
+		System.out.println("Elapsed: " + (elapsed / FrameStats.NANOSECONDS_IN_MILLISECOND) + "ms, "
+				+ ((totalTicks * FrameStats.NANOSECONDS_IN_SECOND) / Math.max(1, elapsed)) + " ticks/s across all games");
+	}
+
+	/**
+	 * Play a single game to completion.
+	 *
+	 * @param layoutArgs Layout options.
+	 * @param point Configuration.
+	 * @param seed Seed.
+	 * @param ticks Ticks to run.
+	 * @return Outcome.
+	 */
+	/*package*/static GameResult play(final String[] layoutArgs, final Point point, final long seed, final long ticks) {
+		final SoakRunner.Config config = SoakRunner.parse(layoutArgs);
+		config.mode = point.mode;
+		config.balls = point.balls;
+		config.regen = point.regen;
+		config.seed = seed;
+		final Simulation simulation = config.create();
+		simulation.setBallSpeed(point.speed);
+
+		final GameResult result = new GameResult();
+		final long start = System.nanoTime();
+		for (long tick = 1; tick <= ticks; tick++) {
+			simulation.tick();
+			if ((result.clearTick < 0) && (simulation.getLevelsCleared() > 0)) {
+				result.clearTick = tick;
+			}
+		}
+		result.elapsed = System.nanoTime() - start;
+		result.ticks = ticks;
+		result.blocksDestroyed = simulation.getBlocksDestroyed();
+		result.regenerated = simulation.getRegenerated();
+		result.collisionTicks = simulation.getCollisionTicks();
+		return result;
+	}
+
+	/**
+	 * Create an executor which runs each task on its own virtual thread, if
+	 * the running JVM supports them.
+	 *
+	 * @return Executor, or null if virtual threads are not available.
+	 */
+	private static ExecutorService newVirtualThreadPool() {
+		try {
+			final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)method.invoke(null);
+		} catch (final Exception e) {
+			//Older JVM
+			return null;
+		}
+	}
+
+	/**
+	 * Parse a comma-separated list of integers.
+	 *
+	 * @param value List.
+	 * @return Values.
+	 */
+	private static int[] parseInts(final String value) {
+		final String[] values = value.split(",");
+		final int[] result = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = Integer.parseInt(values[i].trim());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,275 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Animation of blocks appearing on the board. Regenerated blocks grow in
+ * over {@link #GROW_TICKS} ticks, each holding a slot in a fixed pool of
+ * {@link #CAPACITY} cells and ages. A cell maps to its slot through one short
+ * per cell, so looking a cell up costs one array read whether or not it is
+ * animating, and a tick ages only the cells in the pool. A new level sweeps
+ * in row by row from the top instead, which needs nothing per cell beyond
+ * the age of the sweep. Cells are indexed by board row, the same as
+ * {@link HitPoints}, so an animation moves with its block.
+ */
+public class BlockEffects {
+	/**
+	 * Most cells growing in at once. Blocks regenerated while the pool is full appear at once.
+	 */
+	/*package*/static final int CAPACITY = 256;
+
+	/**
+	 * Ticks a regenerated block takes to grow to full size.
+	 */
+	/*package*/static final int GROW_TICKS = 8;
+
+	/**
+	 * Ticks a new level takes to sweep in from the top.
+	 */
+	/*package*/static final int SWEEP_TICKS = 16;
+
+	/**
+	 * Rows over which the leading edge of the sweep fades in.
+	 */
+	private static final int SWEEP_EDGE_ROWS = 4;
+
+
+
+	/**
+	 * Number of cells horizontally.
+	 */
+	private int mCellsWide;
+
+	/**
+	 * Number of cells vertically.
+	 */
+	private int mCellsTall;
+
+	/**
+	 * One more than the slot of each cell indexed by row * width + column, zero for none.
+	 */
+	private short[] mSlots;
+
+	/**
+	 * Cell (row * width + column) growing in each slot.
+	 */
+	private final int[] mCells;
+
+	/**
+	 * Ticks since each slot's cell started growing.
+	 */
+	private final byte[] mAges;
+
+	/**
+	 * Number of slots in use, packed at the front of the pool.
+	 */
+	private int mCount;
+
+	/**
+	 * Ticks since the current level started sweeping in, {@link #SWEEP_TICKS} once it has.
+	 */
+	private int mSweepAge;
+
+	/**
+	 * Number of cells which started growing.
+	 */
+	private long mStarted;
+
+	/**
+	 * Number of cells which appeared at once because the pool was full.
+	 */
+	private long mDropped;
+
+	/**
+	 * Most slots in use at once.
+	 */
+	private int mPeak;
+
+
+
+	/**
+	 * Create an empty set of effects.
+	 */
+	public BlockEffects() {
+		this.mSlots = new short[0];
+		this.mCells = new int[BlockEffects.CAPACITY];
+		this.mAges = new byte[BlockEffects.CAPACITY];
+		this.mSweepAge = BlockEffects.SWEEP_TICKS;
+	}
+
+
+
+	/**
+	 * Size for a new board with nothing animating.
+	 *
+	 * @param cellsWide Number of cells horizontally.
+	 * @param cellsTall Number of cells vertically.
+	 */
+	public void resize(final int cellsWide, final int cellsTall) {
+		this.mCellsWide = cellsWide;
+		this.mCellsTall = cellsTall;
+		if (this.mSlots.length == cellsWide * cellsTall) {
+			this.clear();
+		} else {
+			this.mSlots = new short[cellsWide * cellsTall];
+			this.mCount = 0;
+		}
+		this.mSweepAge = BlockEffects.SWEEP_TICKS;
+	}
+
+	/**
+	 * Stop every cell growing. Costs one pass over the pool rather than the board.
+	 */
+	public void clear() {
+		for (int i = 0; i < this.mCount; i++) {
+			this.mSlots[this.mCells[i]] = 0;
+		}
+		this.mCount = 0;
+	}
+
+	/**
+	 * Start a new level sweeping in from the top, replacing anything growing.
+	 */
+	public void startSweep() {
+		this.clear();
+		this.mSweepAge = 0;
+	}
+
+	/**
+	 * Start a newly placed block growing in, from nothing if it already was.
+	 *
+	 * @param x Column.
+	 * @param y Board row.
+	 */
+	public void add(final int x, final int y) {
+		final int cell = (y * this.mCellsWide) + x;
+		final int slot = this.mSlots[cell] - 1;
+		if (slot >= 0) {
+			this.mAges[slot] = 0;
+		} else if (this.mCount == BlockEffects.CAPACITY) {
+			this.mDropped += 1;
+			return;
+		} else {
+			this.mCells[this.mCount] = cell;
+			this.mAges[this.mCount] = 0;
+			this.mCount += 1;
+			this.mSlots[cell] = (short)this.mCount;
+			this.mPeak = Math.max(this.mPeak, this.mCount);
+		}
+		this.mStarted += 1;
+	}
+
+	/**
+	 * Stop the cells of one row growing.
+	 *
+	 * @param y Board row.
+	 */
+	public void dropRow(final int y) {
+		int i = 0;
+		while (i < this.mCount) {
+			if ((this.mCells[i] / this.mCellsWide) == y) {
+				this.remove(i);
+			} else {
+				i += 1;
+			}
+		}
+	}
+
+	/**
+	 * Advance every animation one tick, freeing the slots of cells now fully grown.
+	 */
+	public void tick() {
+		int i = 0;
+		while (i < this.mCount) {
+			this.mAges[i] += 1;
+			if (this.mAges[i] >= BlockEffects.GROW_TICKS) {
+				this.remove(i);
+			} else {
+				i += 1;
+			}
+		}
+		if (this.mSweepAge < BlockEffects.SWEEP_TICKS) {
+			this.mSweepAge += 1;
+		}
+	}
+
+	/**
+	 * Free a slot by moving the last slot in use into it.
+	 *
+	 * @param slot Slot.
+	 */
+	private void remove(final int slot) {
+		final int last = this.mCount - 1;
+		this.mSlots[this.mCells[slot]] = 0;
+		if (slot != last) {
+			this.mCells[slot] = this.mCells[last];
+			this.mAges[slot] = this.mAges[last];
+			this.mSlots[this.mCells[slot]] = (short)(slot + 1);
+		}
+		this.mCount = last;
+	}
+
+	/**
+	 * Get how far a block has grown in.
+	 *
+	 * @param x Column.
+	 * @param y Board row.
+	 * @param screenY Row on the screen.
+	 * @return Fraction between 0 and 1, 1 for a block which is not animating.
+	 */
+	public float getGrowth(final int x, final int y, final int screenY) {
+		float growth = 1;
+		if (this.mSweepAge < BlockEffects.SWEEP_TICKS) {
+			final float front = (this.mSweepAge * (this.mCellsTall + BlockEffects.SWEEP_EDGE_ROWS)) / (float)BlockEffects.SWEEP_TICKS;
+			growth = Math.max(0, Math.min(1, (front - screenY) / BlockEffects.SWEEP_EDGE_ROWS));
+		}
+		final int slot = this.mSlots[(y * this.mCellsWide) + x] - 1;
+		if (slot >= 0) {
+			growth = Math.min(growth, this.mAges[slot] / (float)BlockEffects.GROW_TICKS);
+		}
+		return growth;
+	}
+
+	/**
+	 * Get the number of cells growing in.
+	 *
+	 * @return Cells.
+	 */
+	public int size() {
+		return this.mCount;
+	}
+
+	/**
+	 * Determine whether or not a new level is still sweeping in.
+	 *
+	 * @return Boolean.
+	 */
+	public boolean isSweeping() {
+		return this.mSweepAge < BlockEffects.SWEEP_TICKS;
+	}
+
+	/**
+	 * Get the number of cells which started growing.
+	 *
+	 * @return Cells.
+	 */
+	public long getStarted() {
+		return this.mStarted;
+	}
+
+	/**
+	 * Get the number of cells which appeared at once because the pool was full.
+	 *
+	 * @return Cells.
+	 */
+	public long getDropped() {
+		return this.mDropped;
+	}
+
+	/**
+	 * Get the most cells growing in at once.
+	 *
+	 * @return Cells.
+	 */
+	public int getPeak() {
+		return this.mPeak;
+	}
+}
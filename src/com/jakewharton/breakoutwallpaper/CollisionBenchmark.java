@@ -0,0 +1,298 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Command-line runner which first checks the ball/block bounce against
+ * cases with a known answer, then times it against the previous routine
+ * which reflected the ball about the line between ball and block centers
+ * once for every block hit.
+ *
+ * <pre>
+ * java -cp out com.jakewharton.breakoutwallpaper.CollisionBenchmark --samples 100000 --rounds 5
+ * </pre>
+ */
+public class CollisionBenchmark {
+	/**
+	 * Width and height of a cell in the known cases.
+	 */
+	private static final float CELL_SIZE = 20;
+
+	/**
+	 * Allowed difference between a bounced vector and the expected one.
+	 */
+	private static final float TOLERANCE = 0.001f;
+
+	/**
+	 * Passes over the samples per timed run.
+	 */
+	private static final int PASSES = 50;
+
+	/**
+	 * Known cases: ball X, Y, vector X, Y, expected vector X, Y, expected hits, followed by the blocks (column, row) left on the board.
+	 */
+	private static final float[][] CASES = {
+		//Flat face: bounces straight back off the bottom of the block
+		{ 210, 46, 6, -8, 6, 8, 1, 10, 1 },
+		//Side face
+		{ 194, 30, 8, -6, -8, -6, 1, 10, 1 },
+		//Seam between two blocks still acts as one flat surface
+		{ 220, 46, 0, -10, 0, 10, 2, 10, 1, 11, 1 },
+		//Corner hit along the diagonal comes straight back
+		{ 196, 44, 7.0710678f, -7.0710678f, -7.0710678f, 7.0710678f, 1, 10, 1 },
+		//Bounding box overlaps the corner but the ball does not
+		{ 194, 46, 6, -8, 6, -8, 0, 10, 1 },
+		//Touching but already moving away: the block breaks, no bounce
+		{ 210, 46, 6, 8, 6, 8, 1, 10, 1 },
+	};
+
+	/**
+	 * Names of the known cases, in the same order.
+	 */
+	private static final String[] CASE_NAMES = {
+		"flat face", "side face", "seam", "corner", "corner miss", "separating",
+	};
+
+
+
+	public static void main(final String[] args) {
+		int samples = 100000;
+		int rounds = 5;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			final String name = args[i];
+			final String value = args[i + 1];
+			if ("--samples".equals(name)) {
+				samples = Integer.parseInt(value);
+			} else if ("--rounds".equals(name)) {
+				rounds = Integer.parseInt(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + name);
+			}
+		}
+
+		boolean isFailed = false;
+		for (int i = 0; i < CollisionBenchmark.CASES.length; i++) {
+			final String failure = CollisionBenchmark.check(CollisionBenchmark.CASES[i]);
+			System.out.println(CollisionBenchmark.CASE_NAMES[i] + ": " + ((failure == null) ? "OK" : failure));
+			isFailed |= (failure != null);
+		}
+		if (isFailed) {
+			System.exit(1);
+		}
+
+		CollisionBenchmark.benchmark(samples, rounds);
+	}
+
+	/**
+	 * Build a one-ball simulation with square cells and a full level.
+	 *
+	 * @return Simulation.
+	 */
+	private static Simulation create() {
+		final SoakRunner.Config config = new SoakRunner.Config();
+		config.balls = 1;
+		final Simulation simulation = new Simulation(0);
+		config.populate(simulation);
+		simulation.resize((int)(simulation.getCellsWide() * CollisionBenchmark.CELL_SIZE), (int)(simulation.getCellsTall() * CollisionBenchmark.CELL_SIZE));
+		return simulation;
+	}
+
+	/**
+	 * Run one known case.
+	 *
+	 * @param input Case values.
+	 * @return Description of the failure, or null if the ball bounced as expected.
+	 */
+	private static String check(final float[] input) {
+		final Simulation simulation = CollisionBenchmark.create();
+		for (int y = 0; y < simulation.getCellsTall(); y++) {
+			for (int x = 0; x < simulation.getCellsWide(); x++) {
+				if (simulation.isBlock(x, y) && !CollisionBenchmark.isKept(input, x, y)) {
+					simulation.clearBlock(x, y);
+				}
+			}
+		}
+
+		final Ball ball = simulation.getBalls()[0];
+		ball.restore(input[0], input[1], input[2], input[3]);
+		final int[] probes = new int[BallStore.PROBES_STRIDE];
+		simulation.getBallStore().probeCells(0, 1, simulation.getBallRadius(), simulation.getCellWidth(), simulation.getCellHeight(), probes, 0);
+		final int hits = simulation.collide(0, probes, 0);
+
+		if ((hits != (int)input[6])
+				|| (Math.abs(ball.getVectorX() - input[4]) > CollisionBenchmark.TOLERANCE)
+				|| (Math.abs(ball.getVectorY() - input[5]) > CollisionBenchmark.TOLERANCE)) {
+			return "expected " + (int)input[6] + " hit(s) moving (" + input[4] + ", " + input[5] + ")"
+					+ " but got " + hits + " moving (" + ball.getVectorX() + ", " + ball.getVectorY() + ")";
+		}
+		return null;
+	}
+
+	/**
+	 * Determine whether or not a case keeps a block.
+	 *
+	 * @param input Case values.
+	 * @param x Column.
+	 * @param y Row.
+	 * @return Boolean.
+	 */
+	private static boolean isKept(final float[] input, final int x, final int y) {
+		for (int i = 7; i + 1 < input.length; i += 2) {
+			if (((int)input[i] == x) && ((int)input[i + 1] == y)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Time both routines on balls placed at random where at least one probe
+	 * lands on a block of a full level.
+	 *
+	 * @param samples Number of ball placements.
+	 * @param rounds Timed runs of each routine.
+	 */
+	private static void benchmark(final int samples, final int rounds) {
+		final Simulation simulation = CollisionBenchmark.create();
+		final BallStore store = simulation.getBallStore();
+		final FastRandom random = new FastRandom(samples);
+		final float[] states = new float[samples * 4];
+		final int[] probes = new int[samples * BallStore.PROBES_STRIDE];
+		final int[] one = new int[BallStore.PROBES_STRIDE];
+		for (int i = 0; i < samples; ) {
+			final float x = random.nextFloat() * simulation.getGameWidth();
+			final float y = random.nextFloat() * simulation.getGameHeight();
+			final double angle = random.nextFloat() * 2 * Math.PI;
+			store.mLocationX[0] = x;
+			store.mLocationY[0] = y;
+			store.mVectorX[0] = (float)(Math.cos(angle) * Ball.SPEED);
+			store.mVectorY[0] = (float)(Math.sin(angle) * Ball.SPEED);
+			store.probeCells(0, 1, simulation.getBallRadius(), simulation.getCellWidth(), simulation.getCellHeight(), one, 0);
+			if (!simulation.isBlock(one[0], one[1]) && !simulation.isBlock(one[2], one[3]) && !simulation.isBlock(one[4], one[5])) {
+				continue;
+			}
+			states[(i * 4)] = x;
+			states[(i * 4) + 1] = y;
+			states[(i * 4) + 2] = store.mVectorX[0];
+			states[(i * 4) + 3] = store.mVectorY[0];
+			System.arraycopy(one, 0, probes, i * BallStore.PROBES_STRIDE, BallStore.PROBES_STRIDE);
+			i += 1;
+		}
+
+		final int[] hits = new int[3];
+		final float[] state = new float[4];
+		long bestOld = Long.MAX_VALUE;
+		long bestNew = Long.MAX_VALUE;
+		long oldHits = 0;
+		long newHits = 0;
+		long sink = 0;
+		for (int round = 0; round < rounds; round++) {
+			oldHits = 0;
+			newHits = 0;
+			long start = System.nanoTime();
+			for (int pass = 0; pass < CollisionBenchmark.PASSES; pass++) {
+				for (int i = 0; i < samples; i++) {
+					System.arraycopy(states, i * 4, state, 0, 4);
+					final int index = i * BallStore.PROBES_STRIDE;
+					int count = 0;
+					count = CollisionBenchmark.checkCollision(simulation, state, hits, count, probes[index], probes[index + 1]);
+					count = CollisionBenchmark.checkCollision(simulation, state, hits, count, probes[index + 2], probes[index + 3]);
+					count = CollisionBenchmark.checkCollision(simulation, state, hits, count, probes[index + 4], probes[index + 5]);
+					oldHits += count;
+					sink += Float.floatToIntBits(state[2]);
+				}
+			}
+			bestOld = Math.min(bestOld, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (int pass = 0; pass < CollisionBenchmark.PASSES; pass++) {
+				for (int i = 0; i < samples; i++) {
+					store.mLocationX[0] = states[(i * 4)];
+					store.mLocationY[0] = states[(i * 4) + 1];
+					store.mVectorX[0] = states[(i * 4) + 2];
+					store.mVectorY[0] = states[(i * 4) + 3];
+					newHits += simulation.collide(0, probes, i * BallStore.PROBES_STRIDE);
+					sink += Float.floatToIntBits(store.mVectorX[0]);
+				}
+			}
+			bestNew = Math.min(bestNew, System.nanoTime() - start);
+		}
+
+		final double resolutions = (double)samples * CollisionBenchmark.PASSES;
+		System.out.println(samples + " contact candidates:"
+				+ " center reflections " + String.format("%.2f", bestOld / resolutions) + "ns/ball"
+				+ " (" + String.format("%.2f", oldHits / resolutions) + " hits)"
+				+ ", closest point " + String.format("%.2f", bestNew / resolutions) + "ns/ball"
+				+ " (" + String.format("%.2f", newHits / resolutions) + " hits)"
+				+ ", speedup " + String.format("%.2f", bestOld / (double)bestNew) + "x");
+		//Printed so the JIT cannot discard the work
+		System.out.println("Sink: " + sink);
+	}
+
+	/**
+	 * The previous bounce: if the cell holds a block not yet hit, reflect
+	 * the ball about the line from its center to the block's center.
+	 *
+	 * @param simulation Simulation supplying the cell sizes.
+	 * @param state Ball location X, Y and vector X, Y, updated in place.
+	 * @param hits Cells hit so far.
+	 * @param count Number of cells hit so far.
+	 * @param blockX X coordinate of potential block.
+	 * @param blockY Y coordinate of potential block.
+	 * @return Number of cells hit.
+	 */
+	private static int checkCollision(final Simulation simulation, final float[] state, final int[] hits, final int count, final int blockX, final int blockY) {
+		if (!simulation.isBlock(blockX, blockY)) {
+			return count;
+		}
+		final int cell = (blockY * simulation.getCellsWide()) + blockX;
+		for (int i = 0; i < count; i++) {
+			if (hits[i] == cell) {
+				return count;
+			}
+		}
+
+		final float cellWidth = simulation.getCellWidth();
+		final float cellHeight = simulation.getCellHeight();
+		final float blockCenterX = (blockX * cellWidth) + (cellWidth / 2);
+		final float blockCenterY = (blockY * cellHeight) + (cellHeight / 2);
+
+		final float ballVectorLength = (float)Math.sqrt(CollisionBenchmark.square(state[2]) + CollisionBenchmark.square(state[3]));
+		final float ballUnitVectorX = state[2] / ballVectorLength;
+		final float ballUnitVectorY = state[3] / ballVectorLength;
+
+		float collisionUnitVectorX = blockCenterX - state[0];
+		float collisionUnitVectorY = blockCenterY - state[1];
+		final float collisionVectorLength = (float)Math.sqrt(CollisionBenchmark.square(collisionUnitVectorX) + CollisionBenchmark.square(collisionUnitVectorY));
+		if (collisionVectorLength > 0) {
+			collisionUnitVectorX /= collisionVectorLength;
+			collisionUnitVectorY /= collisionVectorLength;
+		} else {
+			collisionUnitVectorX = ballUnitVectorX;
+			collisionUnitVectorY = ballUnitVectorY;
+		}
+
+		final float dotProduct = (collisionUnitVectorX * ballUnitVectorX) + (collisionUnitVectorY * ballUnitVectorY);
+		float newVectorX = state[2] + (-2 * collisionUnitVectorX * dotProduct * ballVectorLength);
+		float newVectorY = state[3] + (-2 * collisionUnitVectorY * dotProduct * ballVectorLength);
+		final float newVectorLength = (float)Math.sqrt(CollisionBenchmark.square(newVectorX) + CollisionBenchmark.square(newVectorY));
+		newVectorX /= newVectorLength;
+		newVectorY /= newVectorLength;
+
+		//Ball.setVector normalization
+		final double length = Math.sqrt(((double)newVectorX * newVectorX) + ((double)newVectorY * newVectorY));
+		state[2] = (float)(newVectorX / length * Ball.SPEED);
+		state[3] = (float)(newVectorY / length * Ball.SPEED);
+
+		hits[count] = cell;
+		return count + 1;
+	}
+
+	/**
+	 * Square a value exactly.
+	 *
+	 * @param value Value.
+	 * @return Square.
+	 */
+	private static double square(final float value) {
+		return (double)value * value;
+	}
+}
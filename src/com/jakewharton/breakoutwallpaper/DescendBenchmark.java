@@ -0,0 +1,130 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Command-line benchmark of descending mode moving the blocks down a row.
+ * A step on the board's ring of rows is timed next to the copying of every
+ * row's blocks and hit points down that a board of fixed rows would need on
+ * top of it, on the default layout and the largest the preferences allow.
+ * Steps are first checked against the board before them: every row must
+ * hold the row above it, less any blocks moved under an icon, and the run
+ * fails otherwise.
+ *
+ * <pre>
+ * java -cp out com.jakewharton.breakoutwallpaper.DescendBenchmark --steps 100000 --rounds 5
+ * </pre>
+ */
+public class DescendBenchmark {
+	/**
+	 * Layouts compared unless one is given on the command line.
+	 */
+	private static final String[][] DEFAULT_LAYOUTS = {
+		{ },
+		{ "--rows", "8", "--cols", "8", "--rowspacing", "20", "--colspacing", "12" },
+	};
+
+
+
+	public static void main(final String[] args) {
+		int steps = 100000;
+		int rounds = 5;
+		final String[] layoutArgs = new String[args.length];
+		int layoutCount = 0;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			final String name = args[i];
+			final String value = args[i + 1];
+			if ("--steps".equals(name)) {
+				steps = Integer.parseInt(value);
+			} else if ("--rounds".equals(name)) {
+				rounds = Integer.parseInt(value);
+			} else {
+				layoutArgs[layoutCount++] = name;
+				layoutArgs[layoutCount++] = value;
+			}
+		}
+		final String[][] layouts;
+		if (layoutCount > 0) {
+			final String[] trimmedArgs = new String[layoutCount];
+			System.arraycopy(layoutArgs, 0, trimmedArgs, 0, layoutCount);
+			layouts = new String[][] { trimmedArgs };
+		} else {
+			layouts = DescendBenchmark.DEFAULT_LAYOUTS;
+		}
+
+		for (final String[] layout : layouts) {
+			final SoakRunner.Config config = SoakRunner.parse(layout);
+			config.mode = Simulation.MODE_DESCENDING;
+			final Simulation check = config.create();
+			DescendBenchmark.verify(check, 2 * check.getCellsTall());
+
+			long bestRing = Long.MAX_VALUE;
+			long bestCopy = Long.MAX_VALUE;
+			long sink = 0;
+			for (int round = 0; round < rounds; round++) {
+				final Simulation simulation = config.create();
+				long start = System.nanoTime();
+				for (int i = 0; i < steps; i++) {
+					simulation.descend();
+				}
+				bestRing = Math.min(bestRing, System.nanoTime() - start);
+				sink += simulation.getBlocksRemaining();
+
+				//The same cells as fixed rows: block colors and packed hit points
+				final int cellsWide = simulation.getCellsWide();
+				final int cellsTall = simulation.getCellsTall();
+				final int[][] board = new int[cellsTall][cellsWide];
+				final byte[] hitPoints = new byte[((cellsWide * cellsTall) + 1) >> 1];
+				start = System.nanoTime();
+				for (int i = 0; i < steps; i++) {
+					for (int y = cellsTall - 1; y > 0; y--) {
+						System.arraycopy(board[y - 1], 0, board[y], 0, cellsWide);
+					}
+					System.arraycopy(hitPoints, 0, hitPoints, cellsWide >> 1, hitPoints.length - (cellsWide >> 1));
+					for (int x = 0; x < cellsWide; x++) {
+						board[0][x] = i + x;
+					}
+				}
+				bestCopy = Math.min(bestCopy, System.nanoTime() - start);
+				sink += board[cellsTall - 1][0];
+			}
+
+			System.out.println("Board " + check.getCellsWide() + "x" + check.getCellsTall() + ":"
+					+ " ring " + (bestRing / steps) + "ns per row"
+					+ ", copying fixed rows would add " + (bestCopy / steps) + "ns"
+					+ " (" + sink + ")");
+		}
+	}
+
+	/**
+	 * Move the rows down step by step, checking each step against the
+	 * board before it.
+	 *
+	 * @param simulation Simulation in descending mode.
+	 * @param steps Steps to check.
+	 */
+	private static void verify(final Simulation simulation, final int steps) {
+		final int cellsWide = simulation.getCellsWide();
+		final int cellsTall = simulation.getCellsTall();
+		final int[][] before = new int[cellsTall][cellsWide];
+		for (int step = 0; step < steps; step++) {
+			for (int y = 0; y < cellsTall; y++) {
+				System.arraycopy(simulation.getRow(y), 0, before[y], 0, cellsWide);
+			}
+			simulation.descend();
+			for (int y = 1; y < cellsTall; y++) {
+				final int[] row = simulation.getRow(y);
+				for (int x = 0; x < cellsWide; x++) {
+					final int expected = simulation.isCell(x, y) ? before[y - 1][x] : Simulation.CELL_BLANK;
+					if (row[x] != expected) {
+						System.out.println("FAILED: cell (" + x + ", " + y + ") holds " + row[x] + " instead of " + expected + " after " + (step + 1) + " rows");
+						System.exit(1);
+					}
+				}
+			}
+			final String violation = simulation.checkInvariants();
+			if (violation != null) {
+				System.out.println("FAILED: " + violation + " after " + (step + 1) + " rows");
+				System.exit(1);
+			}
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Descending mode. The blocks move down a row every {@link #DESCEND_TICKS}
+ * ticks and a new row appears at the top. A cleared board moves down every
+ * tick so it refills quickly.
+ */
+public class DescendingMode implements GameMode {
+	/**
+	 * Ticks between the rows moving down.
+	 */
+	/*package*/static final int DESCEND_TICKS = 600;
+
+
+
+	@Override
+	public int update(final Simulation simulation) {
+		final boolean isDue = ((simulation.getTicks() % DescendingMode.DESCEND_TICKS) == DescendingMode.DESCEND_TICKS - 1);
+		if ((simulation.getBlocksRemaining() > 0) && !isDue) {
+			return 0;
+		}
+		simulation.descend();
+		return 1;
+	}
+}
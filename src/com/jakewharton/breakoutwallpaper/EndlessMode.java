@@ -0,0 +1,20 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Endless mode. Once the blocks remaining fall below the regeneration
+ * fraction of the level's blocks, enough random cells are refilled in one
+ * batch to bring the board back up to it. A tick which clears many blocks
+ * at once, whether by many balls or by a chain of explosions, is made good
+ * by the end of the same tick.
+ */
+public class EndlessMode implements GameMode {
+	@Override
+	public int update(final Simulation simulation) {
+		final float threshold = simulation.getBlocksTotal() * simulation.getRegenPercent();
+		final int remaining = simulation.getBlocksRemaining();
+		if (remaining >= threshold) {
+			return 0;
+		}
+		return simulation.regenerate((int)Math.ceil(threshold - remaining));
+	}
+}
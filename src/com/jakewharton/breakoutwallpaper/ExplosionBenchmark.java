@@ -0,0 +1,124 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Command-line benchmark for the worst case of explosive blocks: a large
+ * board on which every block is explosive, set off by destroying the block
+ * nearest its center. The chain clears the whole board, and is run with each
+ * limit on explosions per tick to show the most time spent on explosions in
+ * one tick and how many ticks the chain is spread over. Every limit must
+ * destroy the same blocks.
+ * Layout options are the same as {@link SoakRunner}'s, defaulting to the
+ * largest layout the preferences allow.
+ *
+ * <pre>
+ * java -cp out com.jakewharton.breakoutwallpaper.ExplosionBenchmark --limits 16,64,256,0 --rounds 5
+ * </pre>
+ */
+public class ExplosionBenchmark {
+	/**
+	 * Layout used unless overridden on the command line.
+	 */
+	private static final String[] DEFAULT_LAYOUT = {
+		"--rows", "8", "--cols", "8", "--rowspacing", "20", "--colspacing", "12", "--balls", "1",
+	};
+
+
+
+	public static void main(final String[] args) {
+		String limits = "16,64,256,0";
+		int rounds = 5;
+		final String[] layoutArgs = new String[ExplosionBenchmark.DEFAULT_LAYOUT.length + args.length];
+		System.arraycopy(ExplosionBenchmark.DEFAULT_LAYOUT, 0, layoutArgs, 0, ExplosionBenchmark.DEFAULT_LAYOUT.length);
+		int layoutCount = ExplosionBenchmark.DEFAULT_LAYOUT.length;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			final String name = args[i];
+			final String value = args[i + 1];
+			if ("--limits".equals(name)) {
+				limits = value;
+			} else if ("--rounds".equals(name)) {
+				rounds = Integer.parseInt(value);
+			} else {
+				layoutArgs[layoutCount++] = name;
+				layoutArgs[layoutCount++] = value;
+			}
+		}
+		final String[] trimmedArgs = new String[layoutCount];
+		System.arraycopy(layoutArgs, 0, trimmedArgs, 0, layoutCount);
+		final SoakRunner.Config config = SoakRunner.parse(trimmedArgs);
+		config.mode = Simulation.MODE_LEVELS;
+		config.explosive = 100;
+
+		long expected = -1;
+		for (final String limitValue : limits.split(",")) {
+			final int limit = Integer.parseInt(limitValue.trim());
+
+			long bestWorst = Long.MAX_VALUE;
+			long bestTotal = Long.MAX_VALUE;
+			int ticks = 0;
+			long explosions = 0;
+			long destroyed = 0;
+			int blocks = 0;
+			for (int round = 0; round < rounds; round++) {
+				final Simulation simulation = config.create();
+				final TickProfiler profiler = new TickProfiler();
+				simulation.setProfiler(profiler);
+				simulation.setExplosionsPerTick((limit > 0) ? limit : Integer.MAX_VALUE);
+				blocks = simulation.getBlocksRemaining();
+				ExplosionBenchmark.ignite(simulation);
+
+				long worst = 0;
+				long total = 0;
+				ticks = 0;
+				while (simulation.getPendingExplosions() > 0) {
+					simulation.tick();
+					final long elapsed = profiler.getNanos(TickProfiler.PHASE_EXPLODE) - total;
+					worst = Math.max(worst, elapsed);
+					total += elapsed;
+					ticks += 1;
+				}
+				bestWorst = Math.min(bestWorst, worst);
+				bestTotal = Math.min(bestTotal, total);
+				explosions = simulation.getExplosions();
+				destroyed = simulation.getBlocksDestroyed();
+			}
+
+			if (expected < 0) {
+				expected = destroyed;
+			} else if (destroyed != expected) {
+				System.out.println("FAILED: " + destroyed + " blocks destroyed with a limit of " + limit + " but " + expected + " before");
+				System.exit(1);
+			}
+
+			System.out.println(((limit > 0) ? "limit " + limit : "no limit") + ":"
+					+ " " + explosions + " explosions destroyed " + destroyed + "/" + blocks + " blocks"
+					+ " over " + ticks + " ticks"
+					+ ", worst tick " + String.format("%.3fms", bestWorst / (float)FrameStats.NANOSECONDS_IN_MILLISECOND)
+					+ ", total " + String.format("%.3fms", bestTotal / (float)FrameStats.NANOSECONDS_IN_MILLISECOND));
+		}
+	}
+
+	/**
+	 * Destroy the block nearest the center of the board, queueing the first
+	 * explosion of the chain.
+	 *
+	 * @param simulation Simulation with a full board.
+	 */
+	private static void ignite(final Simulation simulation) {
+		final int centerX = simulation.getCellsWide() / 2;
+		final int centerY = simulation.getCellsTall() / 2;
+		int bestX = -1;
+		int bestY = -1;
+		int bestDistance = Integer.MAX_VALUE;
+		for (int y = 0; y < simulation.getCellsTall(); y++) {
+			for (int x = 0; x < simulation.getCellsWide(); x++) {
+				final int distance = Math.abs(x - centerX) + Math.abs(y - centerY);
+				if (simulation.isBlock(x, y) && (distance < bestDistance)) {
+					bestX = x;
+					bestY = y;
+					bestDistance = distance;
+				}
+			}
+		}
+		simulation.destroyBlock(bestX, bestY);
+	}
+}
@@ -0,0 +1,193 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Explosive blocks on the board and the explosions waiting to go off. Which
+ * cells hold an explosive block is kept as one bit per cell. Explosions wait
+ * in a ring of cell indices (row * width + column) with room for every cell
+ * on the board, and a second bit per cell marks the cells already waiting so
+ * none is queued twice. Nothing is allocated once the board is sized, and a
+ * chain of any length is worked through without recursion.
+ */
+public class Explosives {
+	/**
+	 * Base two logarithm of the bits in a word.
+	 */
+	private static final int WORD_SHIFT = 6;
+
+
+
+	/**
+	 * Number of cells horizontally.
+	 */
+	private int mCellsWide;
+
+	/**
+	 * Bit set of the cells holding an explosive block.
+	 */
+	private long[] mExplosive;
+
+	/**
+	 * Bit set of the cells waiting in {@link #mQueue}.
+	 */
+	private long[] mQueued;
+
+	/**
+	 * Ring of cells waiting to explode, oldest at {@link #mHead}.
+	 */
+	private int[] mQueue;
+
+	/**
+	 * Position in {@link #mQueue} of the oldest waiting cell.
+	 */
+	private int mHead;
+
+	/**
+	 * Number of cells waiting to explode.
+	 */
+	private int mCount;
+
+
+
+	/**
+	 * Create an empty set of explosives.
+	 */
+	public Explosives() {
+		this.mExplosive = new long[0];
+		this.mQueued = new long[0];
+		this.mQueue = new int[0];
+	}
+
+
+
+	/**
+	 * Size for a new board, with no explosive blocks and nothing waiting.
+	 *
+	 * @param cellsWide Number of cells horizontally.
+	 * @param cellsTall Number of cells vertically.
+	 */
+	public void resize(final int cellsWide, final int cellsTall) {
+		final int cells = cellsWide * cellsTall;
+		final int words = (cells + 63) >> Explosives.WORD_SHIFT;
+		this.mCellsWide = cellsWide;
+		if (this.mQueue.length == cells) {
+			this.clear();
+		} else {
+			this.mExplosive = new long[words];
+			this.mQueued = new long[words];
+			this.mQueue = new int[cells];
+			this.mHead = 0;
+			this.mCount = 0;
+		}
+	}
+
+	/**
+	 * Remove every explosive block and drop every waiting explosion.
+	 */
+	public void clear() {
+		for (int i = 0; i < this.mExplosive.length; i++) {
+			this.mExplosive[i] = 0;
+			this.mQueued[i] = 0;
+		}
+		this.mHead = 0;
+		this.mCount = 0;
+	}
+
+	/**
+	 * Determine whether or not a cell holds an explosive block.
+	 *
+	 * @param x Column.
+	 * @param y Row.
+	 * @return Boolean.
+	 */
+	public boolean isExplosive(final int x, final int y) {
+		final int cell = (y * this.mCellsWide) + x;
+		return (this.mExplosive[cell >> Explosives.WORD_SHIFT] & (1L << cell)) != 0;
+	}
+
+	/**
+	 * Set whether or not a cell holds an explosive block.
+	 *
+	 * @param x Column.
+	 * @param y Row.
+	 * @param isExplosive Whether or not the block is explosive.
+	 */
+	public void setExplosive(final int x, final int y, final boolean isExplosive) {
+		final int cell = (y * this.mCellsWide) + x;
+		if (isExplosive) {
+			this.mExplosive[cell >> Explosives.WORD_SHIFT] |= (1L << cell);
+		} else {
+			this.mExplosive[cell >> Explosives.WORD_SHIFT] &= ~(1L << cell);
+		}
+	}
+
+	/**
+	 * Queue a cell to explode unless it is already waiting.
+	 *
+	 * @param x Column.
+	 * @param y Row.
+	 * @return Whether or not the cell was queued.
+	 */
+	public boolean enqueue(final int x, final int y) {
+		final int cell = (y * this.mCellsWide) + x;
+		final int word = cell >> Explosives.WORD_SHIFT;
+		if ((this.mQueued[word] & (1L << cell)) != 0) {
+			return false;
+		}
+		this.mQueued[word] |= (1L << cell);
+		this.mQueue[(this.mHead + this.mCount) % this.mQueue.length] = cell;
+		this.mCount += 1;
+		return true;
+	}
+
+	/**
+	 * Drop the waiting cells of one row, keeping the rest in order.
+	 *
+	 * @param y Row.
+	 */
+	public void dropRow(final int y) {
+		final int length = this.mQueue.length;
+		int kept = 0;
+		for (int i = 0; i < this.mCount; i++) {
+			final int cell = this.mQueue[(this.mHead + i) % length];
+			if ((cell / this.mCellsWide) == y) {
+				this.mQueued[cell >> Explosives.WORD_SHIFT] &= ~(1L << cell);
+			} else {
+				this.mQueue[(this.mHead + kept) % length] = cell;
+				kept += 1;
+			}
+		}
+		this.mCount = kept;
+	}
+
+	/**
+	 * Take the oldest waiting cell off the queue.
+	 *
+	 * @return Cell (row * width + column).
+	 */
+	public int poll() {
+		final int cell = this.mQueue[this.mHead];
+		this.mHead = (this.mHead + 1) % this.mQueue.length;
+		this.mCount -= 1;
+		this.mQueued[cell >> Explosives.WORD_SHIFT] &= ~(1L << cell);
+		return cell;
+	}
+
+	/**
+	 * Get a waiting cell without taking it off the queue.
+	 *
+	 * @param index Position in the queue, 0 being the oldest.
+	 * @return Cell (row * width + column).
+	 */
+	public int peek(final int index) {
+		return this.mQueue[(this.mHead + index) % this.mQueue.length];
+	}
+
+	/**
+	 * Get the number of cells waiting to explode.
+	 *
+	 * @return Cells.
+	 */
+	public int size() {
+		return this.mCount;
+	}
+}
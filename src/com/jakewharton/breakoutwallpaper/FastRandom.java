@@ -0,0 +1,105 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Small, fast, non-synchronized pseudo-random number generator using the
+ * SplitMix64 algorithm. Unlike {@link java.util.Random} there is no atomic
+ * update of the seed, so each simulation (or thread) should own its own
+ * instance. Independent streams for parallel work are created with
+ * {@link #split()}.
+ */
+public class FastRandom {
+	/**
+	 * Increment applied to the state on every step (the golden ratio in 64-bit fixed point).
+	 */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * Multiplier which converts 24 random bits into a float in [0, 1).
+	 */
+	private static final float FLOAT_UNIT = 1.0f / (1 << 24);
+
+
+
+	/**
+	 * Current state.
+	 */
+	private long mState;
+
+
+
+	/**
+	 * Create a new generator.
+	 *
+	 * @param seed Seed. The same seed always produces the same sequence.
+	 */
+	public FastRandom(final long seed) {
+		this.mState = seed;
+	}
+
+
+
+	/**
+	 * Reset the generator as if it had just been created.
+	 *
+	 * @param seed Seed.
+	 */
+	public void setSeed(final long seed) {
+		this.mState = seed;
+	}
+
+	/**
+	 * Get the current state. Passing it to {@link #setSeed(long)} continues
+	 * the sequence from this point.
+	 *
+	 * @return State.
+	 */
+	/*package*/long getState() {
+		return this.mState;
+	}
+
+	/**
+	 * Get the next 64 random bits.
+	 *
+	 * @return Random long.
+	 */
+	public long nextLong() {
+		this.mState += FastRandom.GOLDEN_GAMMA;
+		long z = this.mState;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Get a random integer in [0, bound).
+	 *
+	 * @param bound Exclusive upper bound. Must be positive.
+	 * @return Random integer.
+	 */
+	public int nextInt(final int bound) {
+		if (bound <= 0) {
+			throw new IllegalArgumentException("Bound must be positive: " + bound);
+		}
+		//Scale 31 random bits into the range rather than using a slow modulus
+		return (int)(((this.nextLong() >>> 33) * bound) >>> 31);
+	}
+
+	/**
+	 * Get a random float in [0, 1).
+	 *
+	 * @return Random float.
+	 */
+	public float nextFloat() {
+		return (this.nextLong() >>> 40) * FastRandom.FLOAT_UNIT;
+	}
+
+	/**
+	 * Create a new generator whose sequence is independent of this one. This
+	 * advances this generator.
+	 *
+	 * @return New generator.
+	 */
+	public FastRandom split() {
+		return new FastRandom(this.nextLong());
+	}
+}
@@ -0,0 +1,292 @@
+package com.jakewharton.breakoutwallpaper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Always-on ring buffer of recent binary events. Recording an event only
+ * stores primitives so it is cheap enough to leave on in release builds.
+ * When an anomaly is recorded the buffer is flagged so that the host can
+ * persist it for later inspection.
+ */
+public class FlightRecorder {
+	/**
+	 * Engine was created.
+	 */
+	/*package*/static final int EVENT_ENGINE_CREATED = 0;
+
+	/**
+	 * Engine visibility changed. A is 1 when visible.
+	 */
+	/*package*/static final int EVENT_VISIBILITY = 1;
+
+	/**
+	 * Surface changed. A is the width, B is the height.
+	 */
+	/*package*/static final int EVENT_SURFACE_CHANGED = 2;
+
+	/**
+	 * Game resized. A is the game width, B is the game height.
+	 */
+	/*package*/static final int EVENT_RESIZE = 3;
+
+	/**
+	 * New level created. A is the number of blocks.
+	 */
+	/*package*/static final int EVENT_NEW_LEVEL = 4;
+
+	/**
+	 * Preference changed. A is the hash code of the key.
+	 */
+	/*package*/static final int EVENT_PREFERENCE = 5;
+
+	/**
+	 * User touch. A and B are the screen coordinates.
+	 */
+	/*package*/static final int EVENT_TOUCH = 6;
+
+	/**
+	 * Game reset by the user.
+	 */
+	/*package*/static final int EVENT_RESET = 7;
+
+	/**
+	 * Anomaly: frame took longer than its slot. A is the duration, B is the budget (both in microseconds).
+	 */
+	/*package*/static final int EVENT_FRAME_OVER_BUDGET = 8;
+
+	/**
+	 * Anomaly: background bitmap could not be loaded.
+	 */
+	/*package*/static final int EVENT_BITMAP_FAILED = 9;
+
+	/**
+	 * Anomaly: block regeneration was asked for more blocks than there were blank cells. A is the blocks asked for, B is the blank cells.
+	 */
+	/*package*/static final int EVENT_REGEN_SHORT = 10;
+
+	/**
+	 * Anomaly: surface did not provide a canvas.
+	 */
+	/*package*/static final int EVENT_NO_CANVAS = 11;
+
+	/**
+	 * User steered every ball near a touch. A is the number of balls, B is the radius.
+	 */
+	/*package*/static final int EVENT_STEER = 12;
+
+	/**
+	 * User flung a ball. A is the ball, B is the fling speed in pixels per second.
+	 */
+	/*package*/static final int EVENT_FLING = 13;
+
+	/**
+	 * Rows moved down in descending mode. A is the ring's top row, B is the number of blocks.
+	 */
+	/*package*/static final int EVENT_DESCEND = 14;
+
+	/**
+	 * Human-readable event names.
+	 */
+	private static final String[] EVENT_NAMES = {
+		"engine-created", "visibility", "surface-changed", "resize", "new-level", "preference",
+		"touch", "reset", "frame-over-budget", "bitmap-failed", "regen-short", "no-canvas",
+		"steer", "fling", "descend"
+	};
+
+	/**
+	 * Number of events held by the ring buffer.
+	 */
+	private static final int CAPACITY = 1024;
+
+	/**
+	 * Longs stored per event: time, ID, and two arguments.
+	 */
+	private static final int STRIDE = 4;
+
+	/**
+	 * Minimum time (in nanoseconds) between two anomaly dumps.
+	 */
+	private static final long DUMP_INTERVAL = 60 * FrameStats.NANOSECONDS_IN_SECOND;
+
+	/**
+	 * Magic number written at the start of a dump file ("BWFR").
+	 */
+	private static final int FILE_MAGIC = 0x42574652;
+
+	/**
+	 * Version of the dump file format.
+	 */
+	private static final int FILE_VERSION = 1;
+
+
+
+	/**
+	 * Event storage.
+	 */
+	private final long[] mData;
+
+	/**
+	 * Total number of events ever recorded.
+	 */
+	private long mCount;
+
+	/**
+	 * Total number of anomalies ever recorded.
+	 */
+	private long mAnomalies;
+
+	/**
+	 * Whether or not an anomaly is waiting to be persisted.
+	 */
+	private boolean mIsDumpPending;
+
+	/**
+	 * Time of the last anomaly dump.
+	 */
+	private long mLastDump;
+
+
+
+	/**
+	 * Create a new, empty recorder.
+	 */
+	public FlightRecorder() {
+		this.mData = new long[FlightRecorder.CAPACITY * FlightRecorder.STRIDE];
+	}
+
+
+
+	/**
+	 * Record an event.
+	 *
+	 * @param event Event constant.
+	 * @param a First argument.
+	 * @param b Second argument.
+	 */
+	public void record(final int event, final long a, final long b) {
+		final int index = (int)(this.mCount % FlightRecorder.CAPACITY) * FlightRecorder.STRIDE;
+		this.mData[index] = System.nanoTime();
+		this.mData[index + 1] = event;
+		this.mData[index + 2] = a;
+		this.mData[index + 3] = b;
+		this.mCount += 1;
+	}
+
+	/**
+	 * Record an anomalous event and flag the buffer for persisting.
+	 *
+	 * @param event Event constant.
+	 * @param a First argument.
+	 * @param b Second argument.
+	 */
+	public void anomaly(final int event, final long a, final long b) {
+		this.record(event, a, b);
+		this.mAnomalies += 1;
+
+		final long now = System.nanoTime();
+		if ((this.mLastDump == 0) || (now - this.mLastDump >= FlightRecorder.DUMP_INTERVAL)) {
+			this.mIsDumpPending = true;
+			this.mLastDump = now;
+		}
+	}
+
+	/**
+	 * Check for and clear a pending anomaly dump. Dumps are rate limited so
+	 * a persistent problem does not turn into constant file writes.
+	 *
+	 * @return Whether or not the buffer should be persisted now.
+	 */
+	public boolean takePendingDump() {
+		final boolean pending = this.mIsDumpPending;
+		this.mIsDumpPending = false;
+		return pending;
+	}
+
+	/**
+	 * Get the total number of anomalies recorded.
+	 *
+	 * @return Anomalies.
+	 */
+	public long getAnomalies() {
+		return this.mAnomalies;
+	}
+
+	/**
+	 * Create a buffer large enough for {@link #copyTo(long[])}.
+	 *
+	 * @return Buffer.
+	 */
+	public static long[] newBuffer() {
+		return new long[FlightRecorder.CAPACITY * FlightRecorder.STRIDE];
+	}
+
+	/**
+	 * Copy the buffered events, oldest first, so they can be written
+	 * elsewhere while recording carries on. Only copies memory.
+	 *
+	 * @param buffer Destination from {@link #newBuffer()}.
+	 * @return Number of events copied.
+	 */
+	public int copyTo(final long[] buffer) {
+		final long count = this.mCount;
+		final int events = (int)Math.min(count, FlightRecorder.CAPACITY);
+		final int head = (int)((count - events) % FlightRecorder.CAPACITY) * FlightRecorder.STRIDE;
+		final int tail = Math.min(events * FlightRecorder.STRIDE, this.mData.length - head);
+		System.arraycopy(this.mData, head, buffer, 0, tail);
+		System.arraycopy(this.mData, 0, buffer, tail, (events * FlightRecorder.STRIDE) - tail);
+		return events;
+	}
+
+	/**
+	 * Persist copied events to a compact binary file.
+	 *
+	 * @param file Destination.
+	 * @param buffer Events from {@link #copyTo(long[])}.
+	 * @param events Number of events copied.
+	 * @param copied {@link System#nanoTime()} at which they were copied.
+	 * @throws IOException If the file could not be written.
+	 */
+	public static void writeTo(final File file, final long[] buffer, final int events, final long copied) throws IOException {
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(FlightRecorder.FILE_MAGIC);
+			out.writeInt(FlightRecorder.FILE_VERSION);
+			out.writeLong(copied);
+			out.writeInt(events);
+			for (int i = 0; i < events; i++) {
+				final int index = i * FlightRecorder.STRIDE;
+				out.writeLong(buffer[index]);
+				out.writeShort((int)buffer[index + 1]);
+				out.writeLong(buffer[index + 2]);
+				out.writeLong(buffer[index + 3]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Print the buffered events in a human-readable form, newest last.
+	 *
+	 * @param prefix Prefix for each line.
+	 * @param writer Destination.
+	 */
+	public void dump(final String prefix, final PrintWriter writer) {
+		final long count = this.mCount;
+		final long first = Math.max(0, count - FlightRecorder.CAPACITY);
+		final long now = System.nanoTime();
+
+		writer.println(prefix + "events=" + count + " anomalies=" + this.mAnomalies);
+		for (long i = first; i < count; i++) {
+			final int index = (int)(i % FlightRecorder.CAPACITY) * FlightRecorder.STRIDE;
+			final int event = (int)this.mData[index + 1];
+			final String name = ((event >= 0) && (event < FlightRecorder.EVENT_NAMES.length)) ? FlightRecorder.EVENT_NAMES[event] : String.valueOf(event);
+			writer.println(prefix + "-" + ((now - this.mData[index]) / FrameStats.NANOSECONDS_IN_MILLISECOND) + "ms " + name + " " + this.mData[index + 2] + " " + this.mData[index + 3]);
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package com.jakewharton.breakoutwallpaper;
+
+import java.io.PrintWriter;
+
+/**
+ * Timing and counters collected by the game and its host. Everything here is
+ * cheap enough to leave enabled in release builds.
+ */
+public class FrameStats {
+	/**
+	 * Number of nanoseconds in a second.
+	 */
+	/*package*/static final long NANOSECONDS_IN_SECOND = 1000000000L;
+
+	/**
+	 * Number of nanoseconds in a millisecond.
+	 */
+	/*package*/static final long NANOSECONDS_IN_MILLISECOND = 1000000L;
+
+
+
+	/**
+	 * Time spent in {@link Game#tick()}.
+	 */
+	private final Histogram mTick;
+
+	/**
+	 * Time spent in {@link Game#draw(android.graphics.Canvas)}.
+	 */
+	private final Histogram mDraw;
+
+	/**
+	 * Time spent waiting on the surface for a canvas.
+	 */
+	private final Histogram mLock;
+
+	/**
+	 * Time between when a frame was scheduled and when it actually ran.
+	 */
+	private final Histogram mLateness;
+
+	/**
+	 * Total time of a scheduled frame from start to post.
+	 */
+	private final Histogram mFrame;
+
+	/**
+	 * Time spent in {@link Game#performResize(int, int)}.
+	 */
+	private final Histogram mResize;
+
+	/**
+	 * Time spent in {@link Game#newLevel()}.
+	 */
+	private final Histogram mNewLevel;
+
+	/**
+	 * Time from a touch sample happening to the first frame showing it
+	 * being posted.
+	 */
+	private final Histogram mInput;
+
+	/**
+	 * Number of scheduled frames which missed their slot or had no surface.
+	 */
+	private long mDropped;
+
+	/**
+	 * Start of the current one-second FPS window.
+	 */
+	private long mWindowStart;
+
+	/**
+	 * Frames completed in the current FPS window.
+	 */
+	private int mWindowFrames;
+
+	/**
+	 * Frames completed in the last full FPS window.
+	 */
+	private int mFps;
+
+
+
+	/**
+	 * Create a new set of empty statistics.
+	 */
+	public FrameStats() {
+		this.mTick = new Histogram();
+		this.mDraw = new Histogram();
+		this.mLock = new Histogram();
+		this.mLateness = new Histogram();
+		this.mFrame = new Histogram();
+		this.mResize = new Histogram();
+		this.mNewLevel = new Histogram();
+		this.mInput = new Histogram();
+	}
+
+
+
+	/**
+	 * Get the histogram of tick durations.
+	 *
+	 * @return Histogram.
+	 */
+	public Histogram getTick() {
+		return this.mTick;
+	}
+
+	/**
+	 * Get the histogram of draw durations.
+	 *
+	 * @return Histogram.
+	 */
+	public Histogram getDraw() {
+		return this.mDraw;
+	}
+
+	/**
+	 * Get the histogram of canvas lock waits.
+	 *
+	 * @return Histogram.
+	 */
+	public Histogram getLock() {
+		return this.mLock;
+	}
+
+	/**
+	 * Get the histogram of schedule lateness.
+	 *
+	 * @return Histogram.
+	 */
+	public Histogram getLateness() {
+		return this.mLateness;
+	}
+
+	/**
+	 * Get the histogram of whole frame durations.
+	 *
+	 * @return Histogram.
+	 */
+	public Histogram getFrame() {
+		return this.mFrame;
+	}
+
+	/**
+	 * Get the histogram of resize durations.
+	 *
+	 * @return Histogram.
+	 */
+	public Histogram getResize() {
+		return this.mResize;
+	}
+
+	/**
+	 * Get the histogram of new level durations.
+	 *
+	 * @return Histogram.
+	 */
+	public Histogram getNewLevel() {
+		return this.mNewLevel;
+	}
+
+	/**
+	 * Get the histogram of touch to posted frame latencies.
+	 *
+	 * @return Histogram.
+	 */
+	public Histogram getInput() {
+		return this.mInput;
+	}
+
+	/**
+	 * Mark a frame as dropped.
+	 */
+	public void onDropped() {
+		this.mDropped += 1;
+	}
+
+	/**
+	 * Get the number of dropped frames.
+	 *
+	 * @return Long.
+	 */
+	public long getDropped() {
+		return this.mDropped;
+	}
+
+	/**
+	 * Mark the completion of a frame.
+	 *
+	 * @param now Current {@link System#nanoTime()}.
+	 * @param duration Duration (in nanoseconds) of the frame.
+	 */
+	public void onFrame(final long now, final long duration) {
+		this.mFrame.record(duration);
+
+		if (this.mWindowStart == 0) {
+			this.mWindowStart = now;
+		}
+		this.mWindowFrames += 1;
+		if (now - this.mWindowStart >= FrameStats.NANOSECONDS_IN_SECOND) {
+			this.mFps = this.mWindowFrames;
+			this.mWindowFrames = 0;
+			this.mWindowStart = now;
+		}
+	}
+
+	/**
+	 * Get the number of frames completed in the last full second.
+	 *
+	 * @return Integer.
+	 */
+	public int getFps() {
+		return this.mFps;
+	}
+
+	/**
+	 * Discard all recorded timings.
+	 */
+	public void reset() {
+		this.mTick.reset();
+		this.mDraw.reset();
+		this.mLock.reset();
+		this.mLateness.reset();
+		this.mFrame.reset();
+		this.mResize.reset();
+		this.mNewLevel.reset();
+		this.mInput.reset();
+		this.mDropped = 0;
+		this.mWindowStart = 0;
+		this.mWindowFrames = 0;
+		this.mFps = 0;
+	}
+
+	/**
+	 * Print all statistics in a human-readable form.
+	 *
+	 * @param prefix Prefix for each line.
+	 * @param writer Destination.
+	 */
+	public void dump(final String prefix, final PrintWriter writer) {
+		writer.println(prefix + "fps=" + this.mFps + " rendered=" + this.mFrame.getCount() + " dropped=" + this.mDropped);
+		FrameStats.dump(prefix, writer, "frame", this.mFrame);
+		FrameStats.dump(prefix, writer, "tick", this.mTick);
+		FrameStats.dump(prefix, writer, "draw", this.mDraw);
+		FrameStats.dump(prefix, writer, "lock", this.mLock);
+		FrameStats.dump(prefix, writer, "lateness", this.mLateness);
+		FrameStats.dump(prefix, writer, "resize", this.mResize);
+		FrameStats.dump(prefix, writer, "newLevel", this.mNewLevel);
+		FrameStats.dump(prefix, writer, "input", this.mInput);
+	}
+
+	/**
+	 * Print a single histogram summary in milliseconds.
+	 *
+	 * @param prefix Prefix for the line.
+	 * @param writer Destination.
+	 * @param name Name of the histogram.
+	 * @param histogram Histogram to print.
+	 */
+	private static void dump(final String prefix, final PrintWriter writer, final String name, final Histogram histogram) {
+		writer.println(prefix + name + ": count=" + histogram.getCount()
+				+ " mean=" + FrameStats.toMillis(histogram.getMean())
+				+ " p50=" + FrameStats.toMillis(histogram.getPercentile(0.5f))
+				+ " p90=" + FrameStats.toMillis(histogram.getPercentile(0.9f))
+				+ " p99=" + FrameStats.toMillis(histogram.getPercentile(0.99f))
+				+ " max=" + FrameStats.toMillis(histogram.getMax())
+				+ " total=" + FrameStats.toMillis(histogram.getSum()));
+	}
+
+	/**
+	 * Convert nanoseconds to a millisecond string with two decimal places.
+	 *
+	 * @param nanos Nanoseconds.
+	 * @return String.
+	 */
+	private static String toMillis(final long nanos) {
+		return String.format("%.2fms", nanos / (float)FrameStats.NANOSECONDS_IN_MILLISECOND);
+	}
+}
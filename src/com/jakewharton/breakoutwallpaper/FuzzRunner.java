@@ -0,0 +1,488 @@
+package com.jakewharton.breakoutwallpaper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Command-line runner which throws randomly generated layouts, widgets,
+ * ball positions, vectors and radii at a headless {@link Simulation} and
+ * checks its invariants after every tick. Failing cases are shrunk to a
+ * minimal reproduction before being reported.
+ *
+ * <pre>
+ * java -cp out com.jakewharton.breakoutwallpaper.FuzzRunner --cases 10000 --seed 42
+ * java -cp out com.jakewharton.breakoutwallpaper.FuzzRunner --case -4962768465676381896
+ * </pre>
+ */
+public class FuzzRunner {
+	/**
+	 * Number of ticks over which a ball must leave a small area to not be considered stuck.
+	 */
+	private static final int STUCK_WINDOW = 1000;
+
+	/**
+	 * Maximum number of shrinking passes over a failing case.
+	 */
+	private static final int MAX_SHRINK_PASSES = 100;
+
+
+
+	/**
+	 * A single generated input to the simulation.
+	 */
+	/*package*/static class Case {
+		long seed;
+		int iconRows;
+		int iconCols;
+		int rowSpacing;
+		int colSpacing;
+		int[] widgets;
+		int mode;
+		int regen;
+		int hits;
+		int explosive;
+		int powerUps;
+		int width;
+		int height;
+		float radius;
+		/** Consecutive location X, location Y, vector X, vector Y values. */
+		float[] balls;
+		int ticks;
+
+		/**
+		 * Create a copy of this case.
+		 *
+		 * @return Copy.
+		 */
+		Case copy() {
+			final Case copy = new Case();
+			copy.seed = this.seed;
+			copy.iconRows = this.iconRows;
+			copy.iconCols = this.iconCols;
+			copy.rowSpacing = this.rowSpacing;
+			copy.colSpacing = this.colSpacing;
+			copy.widgets = this.widgets.clone();
+			copy.mode = this.mode;
+			copy.regen = this.regen;
+			copy.hits = this.hits;
+			copy.explosive = this.explosive;
+			copy.powerUps = this.powerUps;
+			copy.width = this.width;
+			copy.height = this.height;
+			copy.radius = this.radius;
+			copy.balls = this.balls.clone();
+			copy.ticks = this.ticks;
+			return copy;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder builder = new StringBuilder();
+			builder.append("seed=").append(this.seed);
+			builder.append(" layout=").append(this.iconRows).append('x').append(this.iconCols);
+			builder.append(" spacing=").append(this.rowSpacing).append('x').append(this.colSpacing);
+			builder.append(" widgets=").append(Arrays.toString(this.widgets));
+			builder.append(" mode=").append(this.mode);
+			builder.append(" regen=").append(this.regen);
+			builder.append(" hits=").append(this.hits);
+			builder.append(" explosive=").append(this.explosive);
+			builder.append(" powerups=").append(this.powerUps);
+			builder.append(" size=").append(this.width).append('x').append(this.height);
+			builder.append(" radius=").append(this.radius);
+			builder.append(" ticks=").append(this.ticks);
+			for (int i = 0; i < this.balls.length; i += 4) {
+				builder.append("\n  ball ").append(i / 4).append(" at (").append(this.balls[i]).append(", ").append(this.balls[i + 1])
+						.append(") moving (").append(this.balls[i + 2]).append(", ").append(this.balls[i + 3]).append(')');
+			}
+			return builder.toString();
+		}
+	}
+
+	/**
+	 * Outcome of running a case.
+	 */
+	/*package*/static class Failure {
+		/** Tick on which the failure was detected. */
+		final int tick;
+		/** Description of the failure. */
+		final String message;
+
+		Failure(final int tick, final String message) {
+			this.tick = tick;
+			this.message = message;
+		}
+	}
+
+
+
+	public static void main(final String[] args) {
+		long seed = System.nanoTime();
+		int cases = 1000;
+		int ticks = 5000;
+		Long single = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			final String name = args[i];
+			final String value = args[i + 1];
+			if ("--seed".equals(name)) {
+				seed = Long.parseLong(value);
+			} else if ("--cases".equals(name)) {
+				cases = Integer.parseInt(value);
+			} else if ("--ticks".equals(name)) {
+				ticks = Integer.parseInt(value);
+			} else if ("--case".equals(name)) {
+				single = Long.valueOf(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + name);
+			}
+		}
+
+		final Random seeds = new Random(seed);
+		if (single != null) {
+			cases = 1;
+		} else {
+			System.out.println("Fuzzing " + cases + " cases of " + ticks + " ticks, seed " + seed);
+		}
+
+		for (int i = 0; i < cases; i++) {
+			final long caseSeed = (single != null) ? single.longValue() : seeds.nextLong();
+			final Case input = FuzzRunner.generate(caseSeed, ticks);
+			final Failure failure = FuzzRunner.run(input);
+			if (failure != null) {
+				System.out.println("FAILED case " + caseSeed + " at tick " + failure.tick + ": " + failure.message);
+				final Case minimal = FuzzRunner.shrink(input);
+				final Failure minimalFailure = FuzzRunner.run(minimal);
+				System.out.println("Minimal reproduction: " + minimalFailure.message);
+				System.out.println("  " + minimal);
+				System.exit(1);
+			}
+		}
+		System.out.println("OK");
+	}
+
+	/**
+	 * Generate a random case. Values are biased towards the edges of their
+	 * ranges and towards degenerate inputs such as balls sitting exactly on
+	 * block centers or having a zero vector.
+	 *
+	 * @param seed Seed from which the case is derived.
+	 * @param ticks Number of ticks to run.
+	 * @return Case.
+	 */
+	/*package*/static Case generate(final long seed, final int ticks) {
+		final Random random = new Random(seed);
+		final Case input = new Case();
+		input.seed = seed;
+		input.iconRows = 1 + random.nextInt(6);
+		input.iconCols = 1 + random.nextInt(6);
+		input.rowSpacing = random.nextInt(20);
+		input.colSpacing = random.nextInt(12);
+		input.mode = random.nextInt(3);
+		//Stay within the ranges the preferences allow
+		input.regen = 30 + random.nextInt(41);
+		input.width = 50 + random.nextInt(1200);
+		input.height = 50 + random.nextInt(1200);
+		input.ticks = ticks;
+
+		//Widgets must lie within the icon grid
+		final int widgetCount = random.nextInt(3);
+		input.widgets = new int[widgetCount * 4];
+		for (int i = 0; i < widgetCount; i++) {
+			final int left = random.nextInt(input.iconCols);
+			final int top = random.nextInt(input.iconRows);
+			input.widgets[(i * 4)] = left;
+			input.widgets[(i * 4) + 1] = top;
+			input.widgets[(i * 4) + 2] = left + random.nextInt(input.iconCols - left);
+			input.widgets[(i * 4) + 3] = top + random.nextInt(input.iconRows - top);
+		}
+
+		final int cellsWide = (input.iconCols * (input.colSpacing + Simulation.CELLS_BETWEEN_COLUMN)) + Simulation.CELLS_BETWEEN_COLUMN;
+		final int cellsTall = (input.iconRows * (input.rowSpacing + Simulation.CELLS_BETWEEN_ROW)) + Simulation.CELLS_BETWEEN_ROW;
+		final float cellWidth = input.width / (float)cellsWide;
+		final float cellHeight = input.height / (float)cellsTall;
+		switch (random.nextInt(4)) {
+			case 0:
+				input.radius = 0;
+				break;
+			case 1:
+				input.radius = Math.max(cellWidth, cellHeight);
+				break;
+			default:
+				input.radius = random.nextFloat() * Math.min(cellWidth, cellHeight);
+				break;
+		}
+
+		final int ballCount = 1 + random.nextInt(4);
+		input.balls = new float[ballCount * 4];
+		for (int i = 0; i < ballCount; i++) {
+			final int index = i * 4;
+			switch (random.nextInt(4)) {
+				case 0:
+					//Exactly on a cell center
+					input.balls[index] = (random.nextInt(cellsWide) + 0.5f) * cellWidth;
+					input.balls[index + 1] = (random.nextInt(cellsTall) + 0.5f) * cellHeight;
+					break;
+				case 1:
+					//On an edge or corner
+					input.balls[index] = random.nextBoolean() ? 0 : input.width;
+					input.balls[index + 1] = random.nextBoolean() ? random.nextFloat() * input.height : (random.nextBoolean() ? 0 : input.height);
+					break;
+				default:
+					input.balls[index] = random.nextFloat() * input.width;
+					input.balls[index + 1] = random.nextFloat() * input.height;
+					break;
+			}
+			switch (random.nextInt(4)) {
+				case 0:
+					input.balls[index + 2] = 0;
+					input.balls[index + 3] = 0;
+					break;
+				case 1:
+					//Axis aligned
+					input.balls[index + 2] = random.nextBoolean() ? 0 : (random.nextBoolean() ? 1 : -1);
+					input.balls[index + 3] = (input.balls[index + 2] != 0) ? 0 : (random.nextBoolean() ? 1 : -1);
+					break;
+				case 2:
+					//Extreme magnitudes
+					input.balls[index + 2] = (random.nextBoolean() ? Float.MIN_VALUE : Float.MAX_VALUE) * (random.nextBoolean() ? 1 : -1);
+					input.balls[index + 3] = (random.nextBoolean() ? Float.MIN_VALUE : Float.MAX_VALUE) * (random.nextBoolean() ? 1 : -1);
+					break;
+				default:
+					input.balls[index + 2] = (random.nextFloat() * 2) - 1;
+					input.balls[index + 3] = (random.nextFloat() * 2) - 1;
+					break;
+			}
+		}
+		//Drawn last so the rest of a case is the same as before for its seed
+		input.hits = random.nextBoolean() ? 1 : 1 + random.nextInt(HitPoints.MAX);
+		input.explosive = random.nextBoolean() ? 0 : random.nextInt(101);
+		input.powerUps = random.nextBoolean() ? 0 : random.nextInt(101);
+		return input;
+	}
+
+	/**
+	 * Run a case and check the simulation invariants after every tick.
+	 *
+	 * @param input Case.
+	 * @return Failure, or null if the case ran cleanly.
+	 */
+	/*package*/static Failure run(final Case input) {
+		int tick = 0;
+		try {
+			final Simulation simulation = new Simulation(input.seed);
+			simulation.setLayout(input.iconRows, input.iconCols, input.rowSpacing, input.colSpacing, input.widgets);
+			simulation.setBallCount(input.balls.length / 4);
+			simulation.setMode(input.mode);
+			simulation.setRegenPercent(input.regen / 100.0f);
+			simulation.setBlockHits(input.hits, 0);
+			simulation.setExplosivePercent(input.explosive / 100.0f);
+			simulation.setPowerUpPercent(input.powerUps / 100.0f);
+			for (int i = 0; i < Simulation.BLOCK_COLORS; i++) {
+				simulation.setBlockColor(i, 0xff000000 | (i + 2));
+			}
+			simulation.resize(input.width, input.height);
+			simulation.newLevel();
+			simulation.setBallRadius(input.radius);
+
+			final Ball[] balls = simulation.getBalls();
+			for (int i = 0; i < simulation.getBallCount(); i++) {
+				balls[i].setLocation(input.balls[i * 4], input.balls[(i * 4) + 1]);
+				balls[i].setVector(input.balls[(i * 4) + 2], input.balls[(i * 4) + 3]);
+			}
+
+			//Extra balls from power-ups come and go, so only the others are watched
+			final int ballCount = input.balls.length / 4;
+
+			String violation = simulation.checkInvariants();
+			if (violation != null) {
+				return new Failure(tick, violation);
+			}
+
+			//Bounding box of each ball over the current window: min X, min Y, max X, max Y
+			final float[] bounds = new float[ballCount * 4];
+			FuzzRunner.resetBounds(balls, bounds);
+
+			for (tick = 1; tick <= input.ticks; tick++) {
+				simulation.tick();
+
+				violation = simulation.checkInvariants();
+				if (violation != null) {
+					return new Failure(tick, violation);
+				}
+
+				for (int i = 0; i < ballCount; i++) {
+					final int index = i * 4;
+					bounds[index] = Math.min(bounds[index], balls[i].getLocationX());
+					bounds[index + 1] = Math.min(bounds[index + 1], balls[i].getLocationY());
+					bounds[index + 2] = Math.max(bounds[index + 2], balls[i].getLocationX());
+					bounds[index + 3] = Math.max(bounds[index + 3], balls[i].getLocationY());
+				}
+				if (tick % FuzzRunner.STUCK_WINDOW == 0) {
+					for (int i = 0; i < ballCount; i++) {
+						final int index = i * 4;
+						if ((bounds[index + 2] - bounds[index] < balls[i].getSpeed()) && (bounds[index + 3] - bounds[index + 1] < balls[i].getSpeed())) {
+							return new Failure(tick, "Ball " + i + " stuck near (" + balls[i].getLocationX() + ", " + balls[i].getLocationY() + ")");
+						}
+					}
+					FuzzRunner.resetBounds(balls, bounds);
+				}
+			}
+		} catch (final RuntimeException e) {
+			return new Failure(tick, "Threw " + e);
+		}
+		return null;
+	}
+
+	/**
+	 * Reset the per-ball bounding boxes to the current ball locations.
+	 *
+	 * @param balls Balls.
+	 * @param bounds Bounding boxes.
+	 */
+	private static void resetBounds(final Ball[] balls, final float[] bounds) {
+		for (int i = 0; i < bounds.length / 4; i++) {
+			final int index = i * 4;
+			bounds[index] = balls[i].getLocationX();
+			bounds[index + 1] = balls[i].getLocationY();
+			bounds[index + 2] = balls[i].getLocationX();
+			bounds[index + 3] = balls[i].getLocationY();
+		}
+	}
+
+	/**
+	 * Repeatedly simplify a failing case while it keeps failing.
+	 *
+	 * @param input Failing case.
+	 * @return Smallest failing case found.
+	 */
+	/*package*/static Case shrink(final Case input) {
+		Case current = input.copy();
+		current.ticks = FuzzRunner.run(current).tick;
+
+		for (int pass = 0; pass < FuzzRunner.MAX_SHRINK_PASSES; pass++) {
+			boolean progress = false;
+			for (final Case candidate : FuzzRunner.simplify(current)) {
+				final Failure failure = FuzzRunner.run(candidate);
+				if (failure != null) {
+					current = candidate;
+					current.ticks = failure.tick;
+					progress = true;
+					break;
+				}
+			}
+			if (!progress) {
+				break;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Produce simpler variants of a case, simplest first.
+	 *
+	 * @param input Case.
+	 * @return Candidates.
+	 */
+	private static Case[] simplify(final Case input) {
+		final List<Case> candidates = new ArrayList<Case>();
+
+		//Drop balls
+		final int ballCount = input.balls.length / 4;
+		for (int i = 0; (ballCount > 1) && (i < ballCount); i++) {
+			final Case candidate = input.copy();
+			candidate.balls = new float[(ballCount - 1) * 4];
+			System.arraycopy(input.balls, 0, candidate.balls, 0, i * 4);
+			System.arraycopy(input.balls, (i + 1) * 4, candidate.balls, i * 4, (ballCount - i - 1) * 4);
+			candidates.add(candidate);
+		}
+
+		//Drop widgets
+		final int widgetCount = input.widgets.length / 4;
+		for (int i = 0; i < widgetCount; i++) {
+			final Case candidate = input.copy();
+			candidate.widgets = new int[(widgetCount - 1) * 4];
+			System.arraycopy(input.widgets, 0, candidate.widgets, 0, i * 4);
+			System.arraycopy(input.widgets, (i + 1) * 4, candidate.widgets, i * 4, (widgetCount - i - 1) * 4);
+			candidates.add(candidate);
+		}
+
+		//Shrink the layout, discarding widgets which no longer fit
+		if (input.iconRows > 1) {
+			final Case candidate = input.copy();
+			candidate.iconRows -= 1;
+			candidate.widgets = FuzzRunner.fitWidgets(candidate.widgets, candidate.iconRows, candidate.iconCols);
+			candidates.add(candidate);
+		}
+		if (input.iconCols > 1) {
+			final Case candidate = input.copy();
+			candidate.iconCols -= 1;
+			candidate.widgets = FuzzRunner.fitWidgets(candidate.widgets, candidate.iconRows, candidate.iconCols);
+			candidates.add(candidate);
+		}
+		if (input.rowSpacing > 0) {
+			final Case candidate = input.copy();
+			candidate.rowSpacing /= 2;
+			candidates.add(candidate);
+		}
+		if (input.colSpacing > 0) {
+			final Case candidate = input.copy();
+			candidate.colSpacing /= 2;
+			candidates.add(candidate);
+		}
+
+		//Round ball values
+		for (int i = 0; i < input.balls.length; i++) {
+			final float rounded = Math.round(input.balls[i]);
+			if ((rounded != input.balls[i]) && !Float.isInfinite(rounded)) {
+				final Case candidate = input.copy();
+				candidate.balls[i] = rounded;
+				candidates.add(candidate);
+			}
+		}
+		if (input.explosive > 0) {
+			final Case candidate = input.copy();
+			candidate.explosive = 0;
+			candidates.add(candidate);
+		}
+		if (input.powerUps > 0) {
+			final Case candidate = input.copy();
+			candidate.powerUps = 0;
+			candidates.add(candidate);
+		}
+		if (input.hits > 1) {
+			final Case candidate = input.copy();
+			candidate.hits = 1;
+			candidates.add(candidate);
+		}
+		if (input.radius != Math.round(input.radius)) {
+			final Case candidate = input.copy();
+			candidate.radius = Math.round(input.radius);
+			candidates.add(candidate);
+		}
+
+		return candidates.toArray(new Case[candidates.size()]);
+	}
+
+	/**
+	 * Remove widgets which do not fit in a layout.
+	 *
+	 * @param widgets Widget locations.
+	 * @param iconRows Number of icon rows.
+	 * @param iconCols Number of icon columns.
+	 * @return Fitting widget locations.
+	 */
+	private static int[] fitWidgets(final int[] widgets, final int iconRows, final int iconCols) {
+		int count = 0;
+		final int[] fitting = new int[widgets.length];
+		for (int i = 0; i + 3 < widgets.length; i += 4) {
+			if ((widgets[i + 2] < iconCols) && (widgets[i + 3] < iconRows)) {
+				System.arraycopy(widgets, i, fitting, count, 4);
+				count += 4;
+			}
+		}
+		final int[] result = new int[count];
+		System.arraycopy(fitting, 0, result, 0, count);
+		return result;
+	}
+}
@@ -1,83 +1,74 @@
 package com.jakewharton.breakoutwallpaper;
 
+import java.io.PrintWriter;
 import java.util.List;
-import java.util.Random;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.net.Uri;
 import android.util.Log;
+import android.view.ViewConfiguration;
 import android.widget.Toast;
 import com.jakewharton.utilities.WidgetLocationsPreference;
 
 public class Game implements SharedPreferences.OnSharedPreferenceChangeListener {
-	/**
-	 * Single random number generate for this wallpaper.
-	 */
-	/*package*/static final Random RANDOM = new Random();
-	
 	/**
 	 * Tag used for logging.
 	 */
 	private static final String TAG = "BreakoutWallpaper.Game";
 	
 	/**
-	 * Cell value for a blank space.
+	 * Paint solid shapes.
 	 */
-	private static final int CELL_BLANK = 0;
+	private static final int PAINT_STYLE_FILL = 0;
 	
 	/**
-	 * Cell value for an invalid space.
+	 * Paint shape outlines.
 	 */
-	private static final int CELL_INVALID = 1;
+	private static final int PAINT_STYLE_STROKE = 1;
 	
 	/**
-	 * Block cells between icon rows.
+	 * Text size (in pixels) of the statistics overlay.
 	 */
-	private static final int CELLS_BETWEEN_ROW = 2;
+	private static final float STATS_TEXT_SIZE = 14;
 	
 	/**
-	 * Block cells between icon columns.
+	 * Radius of a steering touch relative to the smaller screen dimension.
 	 */
-	private static final int CELLS_BETWEEN_COLUMN = 1;
+	private static final float STEER_RADIUS_PERCENT = 0.25f;
 	
 	/**
-	 * Paint solid shapes.
+	 * Alpha a block fades toward as it loses its hit points.
 	 */
-	private static final int PAINT_STYLE_FILL = 0;
+	private static final int WEAKEST_BLOCK_ALPHA = 80;
 	
 	/**
-	 * Paint shape outlines.
+	 * Inset of an explosive block's core relative to the cell size.
 	 */
-	private static final int PAINT_STYLE_STROKE = 1;
+	private static final float EXPLOSIVE_INSET_PERCENT = 0.3f;
 	
-	/**
-	 * Endless mode.
-	 */
-	/*package*/static final int MODE_ENDLESS = 0;
+
 	
 	/**
-	 * Level mode.
+	 * The board, balls and rules.
 	 */
-	private static final int MODE_LEVELS = 1;
-	
-
+	private final Simulation mSimulation;
 	
 	/**
-	 * Number of cells on the board horizontally.
+	 * Pointer samples waiting for the next tick.
 	 */
-	private int mCellsWide;
+	private final InputQueue mInputQueue;
 	
 	/**
-	 * Number of cells on the board vertically.
+	 * Applies pointer samples to the simulation.
 	 */
-	private int mCellsTall;
+	private final TouchSteering mSteering;
 	
 	/**
 	 * Number of cells horizontally between the columns.
@@ -89,16 +80,6 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	 */
 	private int mCellRowSpacing;
 	
-	/**
-	 * Width (in pixels) of a single cell.
-	 */
-	private float mCellWidth;
-	
-	/**
-	 * Height (in pixels) of a single cell.
-	 */
-	private float mCellHeight;
-	
 	/**
 	 * Height (in pixels) of the screen.
 	 */
@@ -109,16 +90,6 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
      */
     private int mScreenWidth;
     
-    /**
-     * Width (in pixels) of the game board.
-     */
-    private int mGameWidth;
-    
-    /**
-     * Height (in pixels) of the game board.
-     */
-    private int mGameHeight;
-    
     /**
      * Whether or not the screen is currently in landscape mode.
      */
@@ -134,14 +105,6 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
      */
     private int mIconCols;
     
-    /**
-     * 2-dimensional array of the board's cells.
-     * 
-     * zero == blank
-     * non-zero == block and represents its color
-     */
-	private int[][] mBoard;
-    
     /**
      * Color of the background.
      */
@@ -203,34 +166,19 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     private final Paint mBallForeground;
     
     /**
-     * Balls. Enough said.
-     */
-    private Ball[] mBalls;
-    
-    /**
-     * Colors for blocks.
-     */
-    private final int[] mBlockColors;
-    
-    /**
-     * Number of blocks remaining in the game.
-     */
-    private int mBlocksRemaining;
-    
-    /**
-     * Total blocks in a level.
+     * Whether or not to draw the statistics overlay.
      */
-    private int mBlocksTotal;
+    private boolean mShowStats;
     
     /**
-     * Gameplay mode.
+     * Paint to draw the statistics overlay.
      */
-    private int mMode;
+    private final Paint mStatsForeground;
     
     /**
-     * Percentage at which to regenerate blocks.
+     * Reusable buffer for statistics overlay text.
      */
-    private float mRegenPercent;
+    private final char[] mStatsText;
     
     
     
@@ -246,10 +194,22 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
         this.mBackgroundPaint = new Paint();
         this.mBlockForeground = new Paint(Paint.ANTI_ALIAS_FLAG);
         this.mBallForeground = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.mStatsForeground = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.mStatsForeground.setColor(0xffffffff);
+        this.mStatsForeground.setTextSize(Game.STATS_TEXT_SIZE);
         
-        this.mCellSize = new RectF(0, 0, 0, 0);
+        this.mSimulation = new Simulation();
+        //Record from the start so any session can be replayed headlessly
+        this.mSimulation.startSession(this.mSimulation.getSeed());
+        this.mInputQueue = new InputQueue();
+        this.mSteering = new TouchSteering(this.mSimulation);
+        final ViewConfiguration configuration = ViewConfiguration.get(Wallpaper.CONTEXT);
+        this.mSteering.setLongPress(ViewConfiguration.getLongPressTimeout() * FrameStats.NANOSECONDS_IN_MILLISECOND);
+        this.mSteering.setSlop(configuration.getScaledTouchSlop());
+        this.mSteering.setFlingVelocity(configuration.getScaledMinimumFlingVelocity());
+        this.mStatsText = new char[64];
         
-        this.mBlockColors = new int[3];
+        this.mCellSize = new RectF(0, 0, 0, 0);
         
         //Load all preferences or their defaults
         Wallpaper.PREFERENCES.registerOnSharedPreferenceChangeListener(this);
@@ -272,6 +232,7 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	
 		final boolean all = (key == null);
 		final Resources resources = Wallpaper.CONTEXT.getResources();
+		this.mSimulation.getRecorder().record(FlightRecorder.EVENT_PREFERENCE, all ? 0 : key.hashCode(), 0);
 		
 		boolean hasLayoutChanged = false;
 		boolean hasGraphicsChanged = false;
@@ -290,30 +251,84 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
         		Log.d(Game.TAG, "Ball Count: " + balls);
         	}
         	
-	    	this.mBalls = new Ball[balls];
-	    	for (int i = 0; i < balls; i++) {
-	    		this.mBalls[i] = new Ball();
-	    	}
+	    	this.mSimulation.setBallCount(balls);
         }
         
         final String gameMode = resources.getString(R.string.settings_game_mode_key);
         if (all || key.equals(gameMode)) {
-        	this.mMode = preferences.getInt(gameMode, resources.getInteger(R.integer.game_mode_default));
+        	final int mode = preferences.getInt(gameMode, resources.getInteger(R.integer.game_mode_default));
+        	if ((mode == Simulation.MODE_ENDLESS) || (mode == Simulation.MODE_LEVELS) || (mode == Simulation.MODE_DESCENDING)) {
+        		this.mSimulation.setMode(mode);
+        	} else {
+        		Log.e(Game.TAG, "Invalid game mode value " + mode);
+        	}
         	
         	if (Wallpaper.LOG_DEBUG) {
-        		Log.d(Game.TAG, "Game Mode: " + this.mMode);
+        		Log.d(Game.TAG, "Game Mode: " + mode);
         	}
         }
         
         final String endlessRegen = resources.getString(R.string.settings_game_endlessregen_key);
         if (all || key.equals(endlessRegen)) {
         	final int regen = preferences.getInt(endlessRegen, resources.getInteger(R.integer.game_endlessregen_default));
-        	this.mRegenPercent = regen / 100.0f;
+        	this.mSimulation.setRegenPercent(regen / 100.0f);
         	
         	if (Wallpaper.LOG_DEBUG) {
         		Log.d(Game.TAG, "Endless Regen: " + regen + "%");
         	}
         }
+        
+        final String blockHits = resources.getString(R.string.settings_game_blockhits_key);
+        final String blockHitsPerLevel = resources.getString(R.string.settings_game_blockhitsperlevel_key);
+        if (all || key.equals(blockHits) || key.equals(blockHitsPerLevel)) {
+        	final int hits = preferences.getInt(blockHits, resources.getInteger(R.integer.game_blockhits_default));
+        	final int perLevel = preferences.getInt(blockHitsPerLevel, resources.getInteger(R.integer.game_blockhitsperlevel_default));
+        	this.mSimulation.setBlockHits(hits, perLevel);
+        	
+        	if (Wallpaper.LOG_DEBUG) {
+        		Log.d(Game.TAG, "Block Hits: " + hits + " + " + perLevel + " per level");
+        	}
+        }
+        
+        final String explosive = resources.getString(R.string.settings_game_explosive_key);
+        if (all || key.equals(explosive)) {
+        	final int percent = preferences.getInt(explosive, resources.getInteger(R.integer.game_explosive_default));
+        	this.mSimulation.setExplosivePercent(percent / 100.0f);
+        	
+        	if (Wallpaper.LOG_DEBUG) {
+        		Log.d(Game.TAG, "Explosive Blocks: " + percent + "%");
+        	}
+        }
+        
+        final String powerUps = resources.getString(R.string.settings_game_powerups_key);
+        if (all || key.equals(powerUps)) {
+        	final int percent = preferences.getInt(powerUps, resources.getInteger(R.integer.game_powerups_default));
+        	this.mSimulation.setPowerUpPercent(percent / 100.0f);
+        	
+        	if (Wallpaper.LOG_DEBUG) {
+        		Log.d(Game.TAG, "Multiball Power-Ups: " + percent + "%");
+        	}
+        }
+        
+        final String ballCollisions = resources.getString(R.string.settings_game_ballcollisions_key);
+        if (all || key.equals(ballCollisions)) {
+        	final boolean isBallCollisions = preferences.getBoolean(ballCollisions, resources.getBoolean(R.bool.game_ballcollisions_default));
+        	this.mSimulation.setBallCollisions(isBallCollisions);
+        	
+        	if (Wallpaper.LOG_DEBUG) {
+        		Log.d(Game.TAG, "Ball Collisions: " + isBallCollisions);
+        	}
+        }
+
+        final String paddle = resources.getString(R.string.settings_game_paddle_key);
+        if (all || key.equals(paddle)) {
+        	final boolean isPaddle = preferences.getBoolean(paddle, resources.getBoolean(R.bool.game_paddle_default));
+        	this.mSimulation.setPaddle(isPaddle);
+
+        	if (Wallpaper.LOG_DEBUG) {
+        		Log.d(Game.TAG, "Paddle: " + isPaddle);
+        	}
+        }
 		
 		
 		// COLORS //
@@ -363,28 +378,28 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 		
 		final String block1Color = resources.getString(R.string.settings_color_block1_key);
 		if (all || key.equals(block1Color)) {
-			this.mBlockColors[0] = preferences.getInt(block1Color, resources.getInteger(R.integer.color_block1_default));
+			this.mSimulation.setBlockColor(0, preferences.getInt(block1Color, resources.getInteger(R.integer.color_block1_default)));
 			
 			if (Wallpaper.LOG_DEBUG) {
-				Log.d(Game.TAG, "Block 1 Color: #" + Integer.toHexString(this.mBlockColors[0]));
+				Log.d(Game.TAG, "Block 1 Color: #" + Integer.toHexString(this.mSimulation.getBlockColor(0)));
 			}
 		}
 		
 		final String block2Color = resources.getString(R.string.settings_color_block2_key);
 		if (all || key.equals(block2Color)) {
-			this.mBlockColors[1] = preferences.getInt(block2Color, resources.getInteger(R.integer.color_block2_default));
+			this.mSimulation.setBlockColor(1, preferences.getInt(block2Color, resources.getInteger(R.integer.color_block2_default)));
 			
 			if (Wallpaper.LOG_DEBUG) {
-				Log.d(Game.TAG, "Block 2 Color: #" + Integer.toHexString(this.mBlockColors[1]));
+				Log.d(Game.TAG, "Block 2 Color: #" + Integer.toHexString(this.mSimulation.getBlockColor(1)));
 			}
 		}
 		
 		final String block3Color = resources.getString(R.string.settings_color_block3_key);
 		if (all || key.equals(block3Color)) {
-			this.mBlockColors[2] = preferences.getInt(block3Color, resources.getInteger(R.integer.color_block3_default));
+			this.mSimulation.setBlockColor(2, preferences.getInt(block3Color, resources.getInteger(R.integer.color_block3_default)));
 			
 			if (Wallpaper.LOG_DEBUG) {
-				Log.d(Game.TAG, "Block 3 Color: #" + Integer.toHexString(this.mBlockColors[2]));
+				Log.d(Game.TAG, "Block 3 Color: #" + Integer.toHexString(this.mSimulation.getBlockColor(2)));
 			}
 		}
 		
@@ -439,6 +454,28 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 		}
     	
         
+		final String showStats = resources.getString(R.string.settings_display_showstats_key);
+		if (all || key.equals(showStats)) {
+			this.mShowStats = preferences.getBoolean(showStats, resources.getBoolean(R.bool.display_showstats_default));
+			
+			if (Wallpaper.LOG_DEBUG) {
+				Log.d(Game.TAG, "Show Stats: " + this.mShowStats);
+			}
+		}
+		
+		final String animate = resources.getString(R.string.settings_display_animate_key);
+		if (all || key.equals(animate)) {
+			final boolean isAnimated = preferences.getBoolean(animate, resources.getBoolean(R.bool.display_animate_default));
+			if (isAnimated != (this.mSimulation.getEffects() != null)) {
+				this.mSimulation.setEffects(isAnimated ? new BlockEffects() : null);
+			}
+			
+			if (Wallpaper.LOG_DEBUG) {
+				Log.d(Game.TAG, "Animate Blocks: " + isAnimated);
+			}
+		}
+		
+		
 		// GRID //
 		
 		final String dotGridPaddingLeft = resources.getString(R.string.settings_display_padding_left_key);
@@ -535,16 +572,23 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 		}
 		
 		if (hasLayoutChanged) {
-	    	this.mCellsWide = (this.mIconCols * (this.mCellColumnSpacing + Game.CELLS_BETWEEN_COLUMN)) + Game.CELLS_BETWEEN_COLUMN;
-	    	this.mCellsTall = (this.mIconRows * (this.mCellRowSpacing + Game.CELLS_BETWEEN_ROW)) + Game.CELLS_BETWEEN_ROW;
+			//Flatten widget locations for the simulation
+			final int[] widgets = new int[this.mWidgetLocations.size() * 4];
+			int index = 0;
+			for (final Rect widget : this.mWidgetLocations) {
+				widgets[index++] = widget.left;
+				widgets[index++] = widget.top;
+				widgets[index++] = widget.right;
+				widgets[index++] = widget.bottom;
+			}
+			
+			//Create playing board
+			this.mSimulation.setLayout(this.mIconRows, this.mIconCols, this.mCellRowSpacing, this.mCellColumnSpacing, widgets);
 	    	
 	    	if (Wallpaper.LOG_DEBUG) {
-	    		Log.d(Game.TAG, "Cells Wide: " + this.mCellsWide);
-	    		Log.d(Game.TAG, "Cells Tall: " + this.mCellsTall);
+	    		Log.d(Game.TAG, "Cells Wide: " + this.mSimulation.getCellsWide());
+	    		Log.d(Game.TAG, "Cells Tall: " + this.mSimulation.getCellsTall());
 	    	}
-	    	
-	    	//Create playing board
-	        this.mBoard = new int[this.mCellsTall][this.mCellsWide];
 		}
 		if (hasLayoutChanged || hasGraphicsChanged || hasBallsChanged) {
 			if ((this.mScreenWidth > 0) && (this.mScreenHeight > 0)) {
@@ -566,7 +610,7 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	 * @return Cell width.
 	 */
 	public float getCellWidth() {
-		return this.mCellWidth;
+		return this.mSimulation.getCellWidth();
 	}
 	
 	/**
@@ -575,51 +619,139 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	 * @return Cell height.
 	 */
 	public float getCellHeight() {
-		return this.mCellHeight;
+		return this.mSimulation.getCellHeight();
 	}
 	
 	/**
-	 * Determine whether or not a position is a valid cell.
+	 * Get the headless simulation driving this game.
 	 * 
-	 * @param x X coordinate.
-	 * @param y Y coordinate.
-	 * @return Boolean.
+	 * @return Simulation.
 	 */
-	private boolean isCell(final int x, final int y) {
-		return (x >= 0) && (x < this.mCellsWide)
-			&& (y >= 0) && (y < this.mCellsTall)
-			&& (this.mBoard[y][x] != Game.CELL_INVALID);
+	public Simulation getSimulation() {
+		return this.mSimulation;
 	}
 	
 	/**
-	 * Determine whether or not a position contains a block.
+	 * Get the timing statistics.
 	 * 
-	 * @param x X coordinate.
-	 * @param y Y coordinate.
-	 * @return Boolean.
+	 * @return Statistics.
 	 */
-	private boolean isBlock(final int x, final int y) {
-		return this.isCell(x, y) && (this.mBoard[y][x] != Game.CELL_BLANK);
+	public FrameStats getStats() {
+		return this.mSimulation.getStats();
 	}
 	
 	/**
-	 * Manipulate a ball direction based on a user touch.
+	 * Get the trace section recorder.
 	 * 
-	 * @param x X coordinate of touch.
-	 * @param y Y coordinate of touch.
+	 * @return Tracer.
 	 */
-	public void setTouch(final float x, final float y) {
-		double closestDistance = Float.MAX_VALUE;
-		Ball closestBall = null;
-		for (final Ball ball : this.mBalls) {
-			final double ballDistance = Math.sqrt(Math.pow(x - ball.getLocationX(), 2) + Math.pow(y - ball.getLocationY(), 2));
-			if (ballDistance < closestDistance) {
-				closestBall = ball;
-				closestDistance = ballDistance;
-			}
+	public Tracer getTracer() {
+		return this.mSimulation.getTracer();
+	}
+	
+	/**
+	 * Get the always-on event recorder.
+	 * 
+	 * @return Recorder.
+	 */
+	public FlightRecorder getRecorder() {
+		return this.mSimulation.getRecorder();
+	}
+	
+	/**
+	 * Get the tick phase profiler.
+	 * 
+	 * @return Profiler, or null if profiling is disabled.
+	 */
+	public TickProfiler getProfiler() {
+		return this.mSimulation.getProfiler();
+	}
+	
+	/**
+	 * Enable or disable tick phase profiling.
+	 * 
+	 * @param profiler Profiler to record into, or null to disable.
+	 */
+	public void setProfiler(final TickProfiler profiler) {
+		this.mSimulation.setProfiler(profiler);
+	}
+	
+	/**
+	 * Get the number of bytes held by the background image.
+	 * 
+	 * @return Bytes.
+	 */
+	public int getBackgroundBytes() {
+		final Bitmap background = this.mBackground;
+		return (background == null) ? 0 : (background.getRowBytes() * background.getHeight());
+	}
+	
+	/**
+	 * Print the current game state and statistics in a human-readable form.
+	 * 
+	 * @param prefix Prefix for each line.
+	 * @param writer Destination.
+	 */
+	public void dump(final String prefix, final PrintWriter writer) {
+		final Simulation simulation = this.mSimulation;
+		writer.println(prefix + "screen=" + this.mScreenWidth + "x" + this.mScreenHeight + " game=" + simulation.getGameWidth() + "x" + simulation.getGameHeight() + " landscape=" + this.mIsLandscape);
+		writer.println(prefix + "cells=" + simulation.getCellsWide() + "x" + simulation.getCellsTall() + " cellSize=" + simulation.getCellWidth() + "x" + simulation.getCellHeight());
+		writer.println(prefix + "mode=" + simulation.getMode() + " balls=" + simulation.getBallCount() + " spawned=" + simulation.getSpawned() + " despawned=" + simulation.getDespawned() + " blocks=" + simulation.getBlocksRemaining() + "/" + simulation.getBlocksTotal() + " levelHits=" + simulation.getLevelHits() + " descended=" + simulation.getDescended());
+		writer.println(prefix + "levelsCleared=" + simulation.getLevelsCleared() + " regenerated=" + simulation.getRegenerated() + " destroyed=" + simulation.getBlocksDestroyed() + " collisionTicks=" + simulation.getCollisionTicks() + " explosions=" + simulation.getExplosions() + " pendingExplosions=" + simulation.getPendingExplosions());
+		final Paddle paddle = simulation.getPaddle();
+		if (paddle != null) {
+			writer.println(prefix + "paddleSaves=" + paddle.getSaves() + " paddleMisses=" + paddle.getMisses() + " predictions=" + paddle.getPredictions() + " reused=" + paddle.getReused());
+		}
+		final BlockEffects effects = simulation.getEffects();
+		if (effects != null) {
+			writer.println(prefix + "effectsGrowing=" + effects.size() + " effectsPeak=" + effects.getPeak() + " effectsStarted=" + effects.getStarted() + " effectsDropped=" + effects.getDropped() + " sweeping=" + effects.isSweeping());
 		}
+		writer.println(prefix + "backgroundBytes=" + this.getBackgroundBytes());
+		writer.println(prefix + "inputPending=" + this.mInputQueue.size() + " inputDropped=" + this.mInputQueue.getDropped() + " pointersDown=" + this.mSteering.getDownCount());
+		simulation.getStats().dump(prefix, writer);
+		
+		final TickProfiler profiler = simulation.getProfiler();
+		if (profiler != null) {
+			writer.println(prefix + "Profiler:");
+			profiler.dump(prefix + "  ", writer);
+		}
+		
+		writer.println(prefix + "Flight Recorder:");
+		simulation.getRecorder().dump(prefix + "  ", writer);
 		
-		closestBall.setVector(x - closestBall.getLocationX(), y - closestBall.getLocationY());
+		final SessionRecorder session = simulation.getSession();
+		if (session != null) {
+			writer.println(prefix + "session seed=" + session.getSeed() + " ticks=" + (simulation.getTicks() - session.getStartTick()) + " events=" + session.getEvents() + " bytes=" + session.getSize());
+		}
+	}
+	
+	/**
+	 * Get the queue into which user touches are offered. They are applied
+	 * at the start of the next tick.
+	 * 
+	 * @return Queue.
+	 */
+	public InputQueue getInputQueue() {
+		return this.mInputQueue;
+	}
+	
+	/**
+	 * Set whether or not user touches steer the balls.
+	 * 
+	 * @param isControllable Whether or not touches steer.
+	 */
+	public void setControllable(final boolean isControllable) {
+		this.mSteering.setControllable(isControllable);
+	}
+	
+	/**
+	 * Mark a frame as posted to the screen, completing the latency of any
+	 * touches it was the first to show.
+	 * 
+	 * @param now Current {@link System#nanoTime()}.
+	 */
+	public void onFramePosted(final long now) {
+		this.mSteering.onFramePosted(now);
 	}
     
     /**
@@ -629,195 +761,21 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	if (Wallpaper.LOG_VERBOSE) {
     		Log.v(Game.TAG, "> newGame()");
     	}
-
-    	//Initialize board
-    	final int iconCellsWidth = this.mCellColumnSpacing + Game.CELLS_BETWEEN_COLUMN;
-    	final int iconCellsHeight = this.mCellRowSpacing + Game.CELLS_BETWEEN_ROW;
-    	final int colors = this.mBlockColors.length;
-    	for (int y = 0; y < this.mCellsTall; y++) {
-    		for (int x = 0; x < this.mCellsWide; x++) {
-    			final int dx = x % iconCellsWidth;
-    			final int dy = y % iconCellsHeight;
-    			if ((dx < Game.CELLS_BETWEEN_COLUMN) || (dy < Game.CELLS_BETWEEN_ROW)) {
-    				this.mBoard[y][x] = this.mBlockColors[(x + y) % colors];
-    			} else {
-    				this.mBoard[y][x] = Game.CELL_INVALID;
-    			}
-    		}
-    	}
-    	
-    	//Remove board under widgets
-    	for (final Rect widget : this.mWidgetLocations) {
-    		if (Wallpaper.LOG_DEBUG) {
-    			Log.d(Game.TAG, "Widget: L=" + widget.left + ", T=" + widget.top + ", R=" + widget.right + ", B=" + widget.bottom);
-    		}
-    		
-    		final int left = (widget.left * iconCellsWidth) + Game.CELLS_BETWEEN_COLUMN;
-    		final int top = (widget.top * iconCellsHeight) + Game.CELLS_BETWEEN_ROW;
-    		final int bottom = (widget.bottom * iconCellsHeight) + Game.CELLS_BETWEEN_ROW + this.mCellRowSpacing - 1;
-    		final int right = (widget.right * iconCellsWidth) + Game.CELLS_BETWEEN_COLUMN + this.mCellColumnSpacing - 1;
-    		for (int y = top; y <= bottom; y++) {
-    			for (int x = left; x <= right; x++) {
-    				this.mBoard[y][x] = Game.CELL_INVALID;
-    			}
-    		}
-    	}
     	
-    	//Count blocks
-    	this.mBlocksRemaining = 0;
-    	for (int y = 0; y < this.mCellsTall; y++) {
-    		for (int x = 0; x < this.mCellsWide; x++) {
-    			if ((this.mBoard[y][x] != Game.CELL_BLANK) && (this.mBoard[y][x] != Game.CELL_INVALID)) {
-    				this.mBlocksRemaining += 1;
-    			}
-    		}
-    	}
-    	this.mBlocksTotal = this.mBlocksRemaining;
+    	this.mSimulation.newLevel();
     	
     	if (Wallpaper.LOG_VERBOSE) {
     		Log.v(Game.TAG, "< newGame()");
     	}
     }
     
-    /**
-     * Convert an icon position to on-screen coordinates
-     * 
-     * @param x Icon column
-     * @param y Icon row
-     * @return Screen coordinates.
-     */
-    private PointF getBallLocationAtIcon(final int x, final int y) {
-    	return new PointF(
-    			((this.mCellColumnSpacing * x) + (Game.CELLS_BETWEEN_COLUMN * (x + 1)) + (this.mCellColumnSpacing / 2.0f)) * this.mCellWidth,
-    			((this.mCellRowSpacing * y) + (Game.CELLS_BETWEEN_ROW * (y + 1)) + (this.mCellRowSpacing / 2.0f)) * this.mCellHeight
-    	);
-    }
-    
     /**
      * Iterate all entities one step.
      */
     public void tick() {
-    	for (final Ball ball : this.mBalls) {
-    		ball.tick();
-
-    		//Test screen edges
-    		if (ball.getLocationX() <= 0) {
-    			ball.setVector(Math.abs(ball.getVectorX()), ball.getVectorY() + Game.RANDOM.nextFloat());
-    		} else if (ball.getLocationX() >= this.mGameWidth) {
-    			ball.setVector(-Math.abs(ball.getVectorX()), ball.getVectorY() + Game.RANDOM.nextFloat());
-    		}
-    		if (ball.getLocationY() <= 0) {
-    			ball.setVector(ball.getVectorX() + Game.RANDOM.nextFloat(), Math.abs(ball.getVectorY()));
-    		} else if (ball.getLocationY() >= this.mGameHeight) {
-    			ball.setVector(ball.getVectorX() + Game.RANDOM.nextFloat(), -Math.abs(ball.getVectorY()));
-    		}
-    		
-    		//Test blocks
-    		final int ballCheck1X = (int)((ball.getLocationX() - Ball.RADIUS) / this.mCellWidth);
-    		final int ballCheck1Y = (int)((ball.getLocationY() + (Math.signum(ball.getVectorY()) * Ball.RADIUS)) / this.mCellHeight);
-    		final int ballCheck2X = (int)((ball.getLocationX() + Ball.RADIUS) / this.mCellWidth);
-    		final int ballCheck2Y = ballCheck1Y;
-    		final int ballCheck3X = (int)((ball.getLocationX() + (Math.signum(ball.getVectorX()) * Ball.RADIUS)) / this.mCellWidth);
-    		final int ballCheck3Y = (int)((ball.getLocationY() + (-Math.signum(ball.getVectorY()) * Ball.RADIUS)) / this.mCellHeight);
-    		this.checkCollision(ball, ballCheck1X, ballCheck1Y);
-    		this.checkCollision(ball, ballCheck2X, ballCheck2Y);
-    		this.checkCollision(ball, ballCheck3X, ballCheck3Y);
-    		
-    		//Check game mode
-    		switch (this.mMode) {
-    			case Game.MODE_ENDLESS:
-    				if (this.mBlocksRemaining < (this.mBlocksTotal * this.mRegenPercent)) {
-    					while (true) {
-    						final int x = Game.RANDOM.nextInt(this.mCellsWide);
-    						final int y = Game.RANDOM.nextInt(this.mCellsTall);
-    						
-    						if (this.isCell(x, y) && (this.mBoard[y][x] == Game.CELL_BLANK)) {
-    							this.mBoard[y][x] = this.mBlockColors[(x + y) % this.mBlockColors.length];
-    							break;
-    						}
-    					}
-    					this.mBlocksRemaining += 1;
-    				}
-    				break;
-    				
-    			case Game.MODE_LEVELS:
-    				if (this.mBlocksRemaining == 0) {
-    					this.newLevel();
-    				}
-    				break;
-    				
-    			default:
-    				Log.e(Game.TAG, "Invalid game mode value " + this.mMode);
-    				break;
-    		}
-    	}
-    	
-    	if (this.mBlocksRemaining <= 0) {
-    		this.newLevel();
-    	}
+    	this.mInputQueue.drainTo(this.mSteering);
+    	this.mSimulation.tick();
     }
-    
-    /**
-     * Determine if a ball has collided with a block in the specified coordinates.
-     * 
-     * @param ball Ball instance.
-     * @param blockX X coordinate of potential block.
-     * @param blockY Y coordinate of potential block.
-     * @return Boolean indicating collision.
-     */
-	private boolean checkCollision(final Ball ball, final int blockX, final int blockY)
-	{
-		if (Wallpaper.LOG_VERBOSE) {
-			Log.d(Game.TAG, "Checking block (" + blockX + "," + blockY + ") against ball at (" + ball.getLocationX() + "," + ball.getLocationY() + ")");
-		}
-		
-		if (!this.isBlock(blockX, blockY)) {
-			return false;
-		}
-		
-		if (Wallpaper.LOG_VERBOSE) {
-			Log.d(Game.TAG, "-- Is Collision");
-			Log.d(Game.TAG, "-- Current Vector: (" + ball.getVectorX() + "," + ball.getVectorY() + ")");
-		}
-		
-		final float cellWidthOverTwo = this.mCellWidth / 2;
-		final float cellHeightOverTwo = this.mCellHeight / 2;
-		final float blockCenterX = (blockX * this.mCellWidth) + cellWidthOverTwo;
-		final float blockCenterY = (blockY * this.mCellHeight) + cellHeightOverTwo;
-		
-		//Calculate collision unit vector
-		float collisionUnitVectorX = blockCenterX - ball.getLocationX();
-		float collisionUnitVectorY = blockCenterY - ball.getLocationY();
-		final float collisionVectorLength = (float)Math.sqrt(Math.pow(collisionUnitVectorX, 2) + Math.pow(collisionUnitVectorY, 2));
-		collisionUnitVectorX /= collisionVectorLength;
-		collisionUnitVectorY /= collisionVectorLength;
-		
-		//Calculate ball velocity unit vector
-		final float ballVectorLength = (float)Math.sqrt(Math.pow(ball.getVectorX(), 2) + Math.pow(ball.getVectorY(), 2));
-		final float ballUnitVectorX = ball.getVectorX() / ballVectorLength;
-		final float ballUnitVectorY = ball.getVectorY() / ballVectorLength;
-		
-		final float dotProduct = (collisionUnitVectorX * ballUnitVectorX) + (collisionUnitVectorY * ballUnitVectorY);
-		final float vectorDeltaX = -2 * collisionUnitVectorX * dotProduct * ballVectorLength;
-		final float vectorDeltaY = -2 * collisionUnitVectorY * dotProduct * ballVectorLength;
-		
-		float newVectorX = ball.getVectorX() + vectorDeltaX;
-		float newVectorY = ball.getVectorY() + vectorDeltaY;
-		final float newVectorLength = (float)Math.sqrt(Math.pow(newVectorX, 2) + Math.pow(newVectorY, 2));
-		newVectorX /= newVectorLength;
-		newVectorY /= newVectorLength;
-		
-		ball.setVector(newVectorX, newVectorY);
-		
-		if (Wallpaper.LOG_VERBOSE) {
-			Log.d(Game.TAG, "-- New Vector: (" + ball.getVectorX() + "," + ball.getVectorY() + ")");
-		}
-
-		this.mBoard[blockY][blockX] = Game.CELL_BLANK;
-		this.mBlocksRemaining -= 1;
-		
-		return true;
-	}
 
     /**
      * Resize the game board and all entities according to a new width and height.
@@ -830,6 +788,9 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     		Log.v(Game.TAG, "> performResize(width = " + screenWidth + ", height = " + screenHeight + ")");
     	}
     	
+    	this.mSimulation.getTracer().begin(Tracer.SECTION_RESIZE);
+    	final long start = System.nanoTime();
+    	
     	//Background image
     	if (this.mBackgroundPath != null) {
 			try {
@@ -858,8 +819,8 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	    		final Bitmap scaled = Bitmap.createScaledBitmap(temp, newWidth, newHeight, false);
 	    		this.mBackground = Bitmap.createBitmap(scaled, x, y, screenWidth, screenHeight);
 			} catch (final Exception e) {
-				e.printStackTrace();
-				Log.w(Game.TAG, "Unable to load background bitmap.");
+				Log.w(Game.TAG, "Unable to load background bitmap.", e);
+				this.mSimulation.getRecorder().anomaly(FlightRecorder.EVENT_BITMAP_FAILED, screenWidth, screenHeight);
 				Toast.makeText(Wallpaper.CONTEXT, "Unable to load background bitmap.", Toast.LENGTH_SHORT).show();
 				this.mBackground = null;
 			}
@@ -868,52 +829,31 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	this.mIsLandscape = (screenWidth > screenHeight);
     	this.mScreenWidth = screenWidth;
     	this.mScreenHeight = screenHeight;
+    	this.mSteering.setSteerRadius(Math.min(screenWidth, screenHeight) * Game.STEER_RADIUS_PERCENT);
     	
+    	final int gameWidth;
+    	final int gameHeight;
     	if (this.mIsLandscape) {
-    		this.mGameWidth = (screenWidth - (this.mDotGridPaddingLeft + this.mDotGridPaddingRight + this.mDotGridPaddingBottom));
-    		this.mGameHeight = (screenHeight - this.mDotGridPaddingTop);
+    		gameWidth = (screenWidth - (this.mDotGridPaddingLeft + this.mDotGridPaddingRight + this.mDotGridPaddingBottom));
+    		gameHeight = (screenHeight - this.mDotGridPaddingTop);
     	} else {
-    		this.mGameWidth = (screenWidth - (this.mDotGridPaddingLeft + this.mDotGridPaddingRight));
-    		this.mGameHeight = (screenHeight - (this.mDotGridPaddingTop + this.mDotGridPaddingBottom));
+    		gameWidth = (screenWidth - (this.mDotGridPaddingLeft + this.mDotGridPaddingRight));
+    		gameHeight = (screenHeight - (this.mDotGridPaddingTop + this.mDotGridPaddingBottom));
     	}
     	
-    	//Update cell size
-		this.mCellWidth = this.mGameWidth / (this.mCellsWide * 1.0f);
-		this.mCellHeight = this.mGameHeight / (this.mCellsTall * 1.0f);
-    	this.mCellSize.right = this.mCellWidth;
-    	this.mCellSize.bottom = this.mCellHeight;
-    	
-    	//Set ball radius
-    	Ball.RADIUS = ((this.mCellWidth < this.mCellHeight) ? this.mCellWidth : this.mCellHeight) * Ball.SIZE_PERCENTAGE / 2;
+    	//Trickle down to the board and balls
+    	this.mSimulation.resize(gameWidth, gameHeight);
     	
-    	//Position balls
-    	final PointF ball0Location = this.getBallLocationAtIcon(0, 0);
-    	this.mBalls[0].setLocation(ball0Location.x, ball0Location.y);
-    	this.mBalls[0].setVector(0, -1);
-    	if (this.mBalls.length > 1) {
-    		final PointF ball1Location = this.getBallLocationAtIcon(this.mIconCols - 1, this.mIconRows - 1);
-    		this.mBalls[1].setLocation(ball1Location.x, ball1Location.y);
-        	this.mBalls[1].setVector(0, 1);
-    	}
-    	if (this.mBalls.length > 2) {
-    		final PointF ball2Location = this.getBallLocationAtIcon(this.mIconCols - 1, 0);
-    		this.mBalls[2].setLocation(ball2Location.x, ball2Location.y);
-        	this.mBalls[2].setVector(1, 0);
-    	}
-    	if (this.mBalls.length > 3) {
-    		final PointF ball3Location = this.getBallLocationAtIcon(0, this.mIconRows - 1);
-    		this.mBalls[3].setLocation(ball3Location.x, ball3Location.y);
-        	this.mBalls[3].setVector(-1, 0);
-    	}
+    	//Update cell size
+    	this.mCellSize.right = this.mSimulation.getCellWidth();
+    	this.mCellSize.bottom = this.mSimulation.getCellHeight();
     	
     	if (Wallpaper.LOG_DEBUG) {
     		Log.d(Game.TAG, "Is Landscape: " + this.mIsLandscape);
-    		Log.d(Game.TAG, "Screen Width: " + screenWidth);
-    		Log.d(Game.TAG, "Screen Height: " + screenHeight);
-    		Log.d(Game.TAG, "Cell Width: " + this.mCellWidth);
-    		Log.d(Game.TAG, "Cell Height: " + this.mCellHeight);
-    		Log.d(Game.TAG, "Ball Radius: " + Ball.RADIUS);
     	}
+    	
+    	this.mSimulation.getStats().getResize().record(System.nanoTime() - start);
+    	this.mSimulation.getTracer().end(Tracer.SECTION_RESIZE);
 
     	if (Wallpaper.LOG_VERBOSE) {
     		Log.v(Game.TAG, "< performResize()");
@@ -926,6 +866,9 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
      * @param c Canvas to draw on.
      */
     public void draw(final Canvas c) {
+    	final Simulation simulation = this.mSimulation;
+    	simulation.getTracer().begin(Tracer.SECTION_DRAW);
+    	final long start = System.nanoTime();
     	c.save();
     	
     	//Clear the screen in case of transparency in the image
@@ -939,27 +882,182 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	c.translate(this.mDotGridPaddingLeft, this.mDotGridPaddingTop);
 
     	//Draw blocks
-        for (int y = 0; y < this.mCellsTall; y++) {
-        	for (int x = 0; x < this.mCellsWide; x++) {
-        		final int cell = this.mBoard[y][x];
-        		if ((cell != Game.CELL_BLANK) && (cell != Game.CELL_INVALID)) {
+    	final int cellsWide = simulation.getCellsWide();
+    	final int cellsTall = simulation.getCellsTall();
+    	final float cellWidth = simulation.getCellWidth();
+    	final float cellHeight = simulation.getCellHeight();
+    	final int levelHits = simulation.getLevelHits();
+        for (int y = 0; y < cellsTall; y++) {
+        	final int[] row = simulation.getRow(y);
+        	for (int x = 0; x < cellsWide; x++) {
+        		final int cell = row[x];
+        		if (cell != Simulation.CELL_BLANK) {
         			this.mBlockForeground.setColor(cell);
         			
-        			final float left = x * this.mCellWidth;
-        			final float top = y * this.mCellHeight;
-        			final float right = left + this.mCellWidth;
-        			final float bottom = top + this.mCellHeight;
+        			//Fade weakened blocks toward the background one step per hit
+        			final int hitPoints = simulation.getHitPoints(x, y);
+        			int alpha = 255;
+        			if (hitPoints < levelHits) {
+        				alpha = 255 - (((255 - Game.WEAKEST_BLOCK_ALPHA) * (levelHits - hitPoints)) / levelHits);
+        			}
+        			
+        			//Grow and fade in blocks which have just appeared
+        			final float growth = simulation.getGrowth(x, y);
+        			if (growth <= 0) {
+        				continue;
+        			}
+        			final float insetGrowthX = cellWidth * (1 - growth) / 2;
+        			final float insetGrowthY = cellHeight * (1 - growth) / 2;
+        			if (growth < 1) {
+        				alpha = (int)(alpha * growth);
+        			}
+        			if (alpha < 255) {
+        				this.mBlockForeground.setAlpha((Color.alpha(cell) * alpha) / 255);
+        			}
+        			
+        			final float left = (x * cellWidth) + insetGrowthX;
+        			final float top = (y * cellHeight) + insetGrowthY;
+        			final float right = ((x + 1) * cellWidth) - insetGrowthX;
+        			final float bottom = ((y + 1) * cellHeight) - insetGrowthY;
         			
         			c.drawRect(left, top, right, bottom, this.mBlockForeground);
+        			
+        			//Mark explosive blocks with a core in the ball color
+        			if (simulation.isExplosive(x, y)) {
+        				final float insetX = cellWidth * growth * Game.EXPLOSIVE_INSET_PERCENT;
+        				final float insetY = cellHeight * growth * Game.EXPLOSIVE_INSET_PERCENT;
+        				c.drawRect(left + insetX, top + insetY, right - insetX, bottom - insetY, this.mBallForeground);
+        			}
         		}
         	}
         }
         
         //Draw balls
-        for (final Ball ball : this.mBalls) {
-        	c.drawRect(ball.getLocationX() - Ball.RADIUS, ball.getLocationY() - Ball.RADIUS, ball.getLocationX() + Ball.RADIUS, ball.getLocationY() + Ball.RADIUS, this.mBallForeground);
+        final float radius = simulation.getBallRadius();
+        final Ball[] balls = simulation.getBalls();
+        for (int i = 0; i < simulation.getBallCount(); i++) {
+        	final Ball ball = balls[i];
+        	c.drawRect(ball.getLocationX() - radius, ball.getLocationY() - radius, ball.getLocationX() + radius, ball.getLocationY() + radius, this.mBallForeground);
         }
-        
+
+        //Draw the paddle along the bottom of the game area, where the balls bounce,
+        //rather than over the padding below it
+        final Paddle paddle = simulation.getPaddle();
+        if (paddle != null) {
+        	final float halfWidth = paddle.getHalfWidth();
+        	final float bottom = simulation.getGameHeight();
+        	c.drawRect(paddle.getX() - halfWidth, bottom - radius, paddle.getX() + halfWidth, bottom, this.mBallForeground);
+        }
+
         c.restore();
+        
+        simulation.getStats().getDraw().record(System.nanoTime() - start);
+        
+        if (this.mShowStats) {
+        	this.drawStats(c);
+        }
+        
+        simulation.getTracer().end(Tracer.SECTION_DRAW);
+    }
+    
+    /**
+     * Render the statistics overlay in the top left corner of the screen.
+     * 
+     * @param c Canvas to draw on.
+     */
+    private void drawStats(final Canvas c) {
+    	final char[] text = this.mStatsText;
+    	final Simulation simulation = this.mSimulation;
+    	final Histogram frame = simulation.getStats().getFrame();
+    	final float lineHeight = this.mStatsForeground.getFontSpacing();
+    	final float x = lineHeight / 2;
+    	float y = this.mDotGridPaddingTop + lineHeight;
+    	int length;
+    	
+    	length = Game.appendText(text, 0, "FPS ");
+    	length = Game.appendNumber(text, length, simulation.getStats().getFps());
+    	c.drawText(text, 0, length, x, y, this.mStatsForeground);
+    	y += lineHeight;
+    	
+    	length = Game.appendText(text, 0, "Frame p50 ");
+    	length = Game.appendMillis(text, length, frame.getPercentile(0.5f));
+    	length = Game.appendText(text, length, "ms p99 ");
+    	length = Game.appendMillis(text, length, frame.getPercentile(0.99f));
+    	length = Game.appendText(text, length, "ms");
+    	c.drawText(text, 0, length, x, y, this.mStatsForeground);
+    	y += lineHeight;
+    	
+    	final Histogram input = simulation.getStats().getInput();
+    	length = Game.appendText(text, 0, "Input p50 ");
+    	length = Game.appendMillis(text, length, input.getPercentile(0.5f));
+    	length = Game.appendText(text, length, "ms p99 ");
+    	length = Game.appendMillis(text, length, input.getPercentile(0.99f));
+    	length = Game.appendText(text, length, "ms");
+    	c.drawText(text, 0, length, x, y, this.mStatsForeground);
+    	y += lineHeight;
+    	
+    	length = Game.appendText(text, 0, "Balls ");
+    	length = Game.appendNumber(text, length, simulation.getBallCount());
+    	length = Game.appendText(text, length, " Blocks ");
+    	length = Game.appendNumber(text, length, simulation.getBlocksRemaining());
+    	c.drawText(text, 0, length, x, y, this.mStatsForeground);
+    }
+    
+    /**
+     * Copy a string into a character buffer without allocating.
+     * 
+     * @param buffer Destination buffer.
+     * @param offset Offset at which to start writing.
+     * @param value String to copy.
+     * @return New offset.
+     */
+    private static int appendText(final char[] buffer, final int offset, final String value) {
+    	final int length = Math.min(value.length(), buffer.length - offset);
+    	value.getChars(0, length, buffer, offset);
+    	return offset + length;
+    }
+    
+    /**
+     * Write a non-negative number into a character buffer without allocating.
+     * 
+     * @param buffer Destination buffer.
+     * @param offset Offset at which to start writing.
+     * @param value Number to write.
+     * @return New offset.
+     */
+    private static int appendNumber(final char[] buffer, final int offset, long value) {
+    	if (value < 0) {
+    		value = 0;
+    	}
+    	
+    	int digits = 1;
+    	for (long remaining = value / 10; remaining > 0; remaining /= 10) {
+    		digits += 1;
+    	}
+    	if (offset + digits > buffer.length) {
+    		return offset;
+    	}
+    	
+    	for (int i = offset + digits - 1; i >= offset; i--) {
+    		buffer[i] = (char)('0' + (value % 10));
+    		value /= 10;
+    	}
+    	return offset + digits;
+    }
+    
+    /**
+     * Write a duration in milliseconds with one decimal place into a
+     * character buffer without allocating.
+     * 
+     * @param buffer Destination buffer.
+     * @param offset Offset at which to start writing.
+     * @param nanos Duration in nanoseconds.
+     * @return New offset.
+     */
+    private static int appendMillis(final char[] buffer, final int offset, final long nanos) {
+    	final long tenths = nanos / (FrameStats.NANOSECONDS_IN_MILLISECOND / 10);
+    	int length = Game.appendNumber(buffer, offset, tenths / 10);
+    	length = Game.appendText(buffer, length, ".");
+    	return Game.appendNumber(buffer, length, tenths % 10);
     }
 }
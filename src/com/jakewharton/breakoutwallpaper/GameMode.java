@@ -0,0 +1,19 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Rules deciding how the board changes as blocks are cleared. A mode is
+ * asked once per tick, after every ball has moved and every explosion due
+ * has gone off, so it sees the whole tick's damage at once and can respond
+ * to it in a single pass whatever the number of balls. Modes hold no state
+ * of their own; everything they need is read from and written to the
+ * simulation, which keeps snapshots and replays unaware of them.
+ */
+public interface GameMode {
+	/**
+	 * Update the board for the end of a tick.
+	 *
+	 * @param simulation Simulation being ticked.
+	 * @return Number of changes made to the board, for profiling.
+	 */
+	int update(Simulation simulation);
+}
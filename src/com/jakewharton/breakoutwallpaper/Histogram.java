@@ -0,0 +1,140 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Fixed-size histogram of durations. Recording never allocates so it is safe
+ * to use on every frame.
+ */
+public class Histogram {
+	/**
+	 * Width (in nanoseconds) of a single bucket.
+	 */
+	private static final long BUCKET_WIDTH = 100000;
+
+	/**
+	 * Number of buckets. The last bucket also collects all overflow.
+	 */
+	private static final int BUCKET_COUNT = 500;
+
+
+
+	/**
+	 * Sample counts for each bucket.
+	 */
+	private final int[] mBuckets;
+
+	/**
+	 * Total number of samples recorded.
+	 */
+	private long mCount;
+
+	/**
+	 * Sum (in nanoseconds) of all samples recorded.
+	 */
+	private long mSum;
+
+	/**
+	 * Largest sample (in nanoseconds) recorded.
+	 */
+	private long mMax;
+
+
+
+	/**
+	 * Create a new, empty histogram.
+	 */
+	public Histogram() {
+		this.mBuckets = new int[Histogram.BUCKET_COUNT];
+	}
+
+
+
+	/**
+	 * Record a single sample.
+	 *
+	 * @param nanos Duration in nanoseconds.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+
+		int bucket = (int)Math.min(nanos / Histogram.BUCKET_WIDTH, Histogram.BUCKET_COUNT - 1);
+		this.mBuckets[bucket] += 1;
+		this.mCount += 1;
+		this.mSum += nanos;
+		if (nanos > this.mMax) {
+			this.mMax = nanos;
+		}
+	}
+
+	/**
+	 * Get the total number of samples recorded.
+	 *
+	 * @return Long.
+	 */
+	public long getCount() {
+		return this.mCount;
+	}
+
+	/**
+	 * Get the mean of all samples.
+	 *
+	 * @return Nanoseconds.
+	 */
+	public long getMean() {
+		return (this.mCount == 0) ? 0 : (this.mSum / this.mCount);
+	}
+
+	/**
+	 * Get the sum of all samples.
+	 *
+	 * @return Nanoseconds.
+	 */
+	public long getSum() {
+		return this.mSum;
+	}
+
+	/**
+	 * Get the largest sample.
+	 *
+	 * @return Nanoseconds.
+	 */
+	public long getMax() {
+		return this.mMax;
+	}
+
+	/**
+	 * Get an approximate percentile. Values are reported at the upper edge of
+	 * the bucket they fall in and are capped at the largest sample seen.
+	 *
+	 * @param percentile Percentile between 0 and 1.
+	 * @return Nanoseconds.
+	 */
+	public long getPercentile(final float percentile) {
+		if (this.mCount == 0) {
+			return 0;
+		}
+
+		final long target = (long)Math.ceil(this.mCount * percentile);
+		long seen = 0;
+		for (int i = 0; i < Histogram.BUCKET_COUNT; i++) {
+			seen += this.mBuckets[i];
+			if ((seen >= target) && (seen > 0)) {
+				return Math.min((i + 1) * Histogram.BUCKET_WIDTH, this.mMax);
+			}
+		}
+		return this.mMax;
+	}
+
+	/**
+	 * Discard all recorded samples.
+	 */
+	public void reset() {
+		for (int i = 0; i < Histogram.BUCKET_COUNT; i++) {
+			this.mBuckets[i] = 0;
+		}
+		this.mCount = 0;
+		this.mSum = 0;
+		this.mMax = 0;
+	}
+}
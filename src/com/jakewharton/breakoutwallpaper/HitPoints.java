@@ -0,0 +1,116 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Hits each block on the board can still take, packed two cells to a byte.
+ * Blank and invalid cells hold zero. Keeping the count beside the board's
+ * colors rather than in per-block objects costs half a byte per cell and
+ * lets a hit or a redraw read and write it without allocating.
+ */
+public class HitPoints {
+	/**
+	 * Most hits a block can take.
+	 */
+	/*package*/static final int MAX = 15;
+
+	/**
+	 * Bits holding one cell's value.
+	 */
+	private static final int MASK = 0xf;
+
+
+
+	/**
+	 * Number of cells horizontally.
+	 */
+	private int mCellsWide;
+
+	/**
+	 * Hit points of each cell indexed by row * width + column, even cells in the low nibble.
+	 */
+	private byte[] mPacked;
+
+
+
+	/**
+	 * Create an empty set of hit points.
+	 */
+	public HitPoints() {
+		this.mPacked = new byte[0];
+	}
+
+
+
+	/**
+	 * Size for a new board and set every cell to zero.
+	 *
+	 * @param cellsWide Number of cells horizontally.
+	 * @param cellsTall Number of cells vertically.
+	 */
+	public void resize(final int cellsWide, final int cellsTall) {
+		this.mCellsWide = cellsWide;
+		final int bytes = ((cellsWide * cellsTall) + 1) >> 1;
+		if (this.mPacked.length == bytes) {
+			this.clear();
+		} else {
+			this.mPacked = new byte[bytes];
+		}
+	}
+
+	/**
+	 * Set every cell to zero.
+	 */
+	public void clear() {
+		final byte[] packed = this.mPacked;
+		for (int i = 0; i < packed.length; i++) {
+			packed[i] = 0;
+		}
+	}
+
+	/**
+	 * Get the hits a cell can still take.
+	 *
+	 * @param x Column.
+	 * @param y Row.
+	 * @return Hit points, zero for a cell without a block.
+	 */
+	public int get(final int x, final int y) {
+		final int index = (y * this.mCellsWide) + x;
+		return (this.mPacked[index >> 1] >> ((index & 1) << 2)) & HitPoints.MASK;
+	}
+
+	/**
+	 * Set the hits a cell can take.
+	 *
+	 * @param x Column.
+	 * @param y Row.
+	 * @param hitPoints Hit points between zero and {@link #MAX}.
+	 */
+	public void set(final int x, final int y, final int hitPoints) {
+		final int index = (y * this.mCellsWide) + x;
+		final int shift = (index & 1) << 2;
+		final int packed = this.mPacked[index >> 1] & ~(HitPoints.MASK << shift);
+		this.mPacked[index >> 1] = (byte)(packed | ((hitPoints & HitPoints.MASK) << shift));
+	}
+
+	/**
+	 * Take one hit point from a cell.
+	 *
+	 * @param x Column.
+	 * @param y Row.
+	 * @return Hit points left.
+	 */
+	public int hit(final int x, final int y) {
+		final int remaining = Math.max(0, this.get(x, y) - 1);
+		this.set(x, y, remaining);
+		return remaining;
+	}
+
+	/**
+	 * Get the number of bytes holding the hit points.
+	 *
+	 * @return Bytes.
+	 */
+	public int getBytes() {
+		return this.mPacked.length;
+	}
+}
@@ -0,0 +1,160 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Fixed size queue of timestamped pointer samples passed from the thread
+ * receiving input to the thread ticking the game. It holds no locks: with
+ * one thread offering and one draining, each side only writes its own
+ * position and publishes it through a volatile field once the slots it
+ * covers are written or read. Samples are kept in parallel primitive
+ * arrays so offering one allocates nothing. When the queue is full new
+ * samples are dropped and counted.
+ */
+public class InputQueue {
+	/**
+	 * A pointer went down.
+	 */
+	/*package*/static final int ACTION_DOWN = 0;
+
+	/**
+	 * A pointer which is down moved.
+	 */
+	/*package*/static final int ACTION_MOVE = 1;
+
+	/**
+	 * A pointer went up.
+	 */
+	/*package*/static final int ACTION_UP = 2;
+
+	/**
+	 * The gesture was aborted and every pointer should be forgotten.
+	 */
+	/*package*/static final int ACTION_CANCEL = 3;
+
+	/**
+	 * Number of samples held. Must be a power of two.
+	 */
+	/*package*/static final int CAPACITY = 256;
+
+
+
+	/**
+	 * Action of each sample.
+	 */
+	private final int[] mActions;
+
+	/**
+	 * Pointer ID of each sample.
+	 */
+	private final int[] mPointers;
+
+	/**
+	 * X coordinate of each sample.
+	 */
+	private final float[] mX;
+
+	/**
+	 * Y coordinate of each sample.
+	 */
+	private final float[] mY;
+
+	/**
+	 * {@link System#nanoTime()} at which each sample happened.
+	 */
+	private final long[] mTimes;
+
+	/**
+	 * Number of samples ever offered. Only written by the offering thread.
+	 */
+	private volatile long mWritten;
+
+	/**
+	 * Number of samples ever drained. Only written by the draining thread.
+	 */
+	private volatile long mRead;
+
+	/**
+	 * Number of samples dropped because the queue was full.
+	 */
+	private volatile int mDropped;
+
+
+
+	/**
+	 * Create an empty queue.
+	 */
+	public InputQueue() {
+		this.mActions = new int[InputQueue.CAPACITY];
+		this.mPointers = new int[InputQueue.CAPACITY];
+		this.mX = new float[InputQueue.CAPACITY];
+		this.mY = new float[InputQueue.CAPACITY];
+		this.mTimes = new long[InputQueue.CAPACITY];
+	}
+
+
+
+	/**
+	 * Add a sample. Must only be called from one thread at a time.
+	 *
+	 * @param action Action constant.
+	 * @param pointer Pointer ID.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @param time {@link System#nanoTime()} at which the sample happened.
+	 * @return Whether or not the sample fit.
+	 */
+	public boolean offer(final int action, final int pointer, final float x, final float y, final long time) {
+		final long written = this.mWritten;
+		if (written - this.mRead >= InputQueue.CAPACITY) {
+			this.mDropped += 1;
+			return false;
+		}
+
+		final int slot = (int)(written & (InputQueue.CAPACITY - 1));
+		this.mActions[slot] = action;
+		this.mPointers[slot] = pointer;
+		this.mX[slot] = x;
+		this.mY[slot] = y;
+		this.mTimes[slot] = time;
+		//Publish only once the slot is complete
+		this.mWritten = written + 1;
+		return true;
+	}
+
+	/**
+	 * Hand every sample offered so far to a steering in order, then let it
+	 * act on them. Must only be called from one thread at a time.
+	 *
+	 * @param steering Destination.
+	 * @return Number of samples drained.
+	 */
+	public int drainTo(final TouchSteering steering) {
+		final long read = this.mRead;
+		final long written = this.mWritten;
+		for (long i = read; i < written; i++) {
+			final int slot = (int)(i & (InputQueue.CAPACITY - 1));
+			steering.onInput(this.mActions[slot], this.mPointers[slot], this.mX[slot], this.mY[slot], this.mTimes[slot]);
+		}
+		//Release the slots only once they have been read
+		this.mRead = written;
+		steering.flush();
+		return (int)(written - read);
+	}
+
+	/**
+	 * Get the number of samples waiting to be drained.
+	 *
+	 * @return Samples.
+	 */
+	public int size() {
+		return (int)(this.mWritten - this.mRead);
+	}
+
+	/**
+	 * Get the number of samples dropped because the queue was full.
+	 *
+	 * @return Samples.
+	 */
+	public int getDropped() {
+		return this.mDropped;
+	}
+}
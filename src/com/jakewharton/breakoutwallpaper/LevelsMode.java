@@ -0,0 +1,16 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Level mode. The board is left as it is until every block is cleared, then
+ * refilled with a new level.
+ */
+public class LevelsMode implements GameMode {
+	@Override
+	public int update(final Simulation simulation) {
+		if (simulation.getBlocksRemaining() > 0) {
+			return 0;
+		}
+		simulation.clearLevel();
+		return 1;
+	}
+}
@@ -0,0 +1,871 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * A paddle along the bottom edge of a {@link Simulation}'s game area, moved
+ * by a simple AI to intercept the balls. A ball reaching the bottom edge
+ * over the paddle is sent back up at an angle depending on where it hit,
+ * otherwise it falls past and is respawned by the simulation.
+ *
+ * <p>Each ball's landing point is predicted by following its center along
+ * its vector through the board cells and off the side and top edges until
+ * it either reaches the bottom edge or enters a block. Predictions are
+ * kept between ticks and only made again once they are invalidated: when
+ * the ball's vector changes (which every bounce, steer or collision does),
+ * when the block its path ends at is removed, when a block is added on its
+ * path, or when the board, balls or layout change. Edge bounces jitter the
+ * vector, so the part of a prediction past the first edge is only an
+ * estimate until the ball gets there and is predicted again.</p>
+ */
+public class Paddle {
+	/**
+	 * Width of the paddle as a fraction of the game width.
+	 */
+	/*package*/static final float WIDTH_PERCENT = 0.2f;
+
+	/**
+	 * Distance the paddle moves per tick relative to the ball speed.
+	 */
+	/*package*/static final float SPEED_RATIO = 1.5f;
+
+	/**
+	 * Horizontal part of the vector given to a ball hitting the very end of
+	 * the paddle, relative to its vertical part.
+	 */
+	/*package*/static final float DEFLECTION = 1.5f;
+
+	/**
+	 * Most edge bounces followed by a prediction before it gives up.
+	 */
+	/*package*/static final int MAX_BOUNCES = 4;
+
+	/**
+	 * Coordinates kept per ball for the points along its predicted path:
+	 * the start, each bounce and the end.
+	 */
+	/*package*/static final int POINTS_STRIDE = (Paddle.MAX_BOUNCES + 2) * 2;
+
+	/**
+	 * Landing tick of a ball which is not predicted to land.
+	 */
+	/*package*/static final long NEVER = Long.MAX_VALUE;
+
+	/**
+	 * Most blocks added between two updates which are looked for exactly
+	 * along a path. Beyond this a path is only tested against the tiles
+	 * they were added in.
+	 */
+	/*package*/static final int MAX_ADDED = 16;
+
+	/**
+	 * Base two logarithm of the width and height in cells of a tile tracked in the masks.
+	 */
+	private static final int TILE_SHIFT = 2;
+
+	/**
+	 * Width and height of a tile in cells.
+	 */
+	private static final int TILE_SIZE = 1 << Paddle.TILE_SHIFT;
+
+	/**
+	 * A ball has not reached the bottom edge since the last update.
+	 */
+	private static final byte LANDED_NONE = 0;
+
+	/**
+	 * A ball was sent back up by the paddle since the last update.
+	 */
+	private static final byte LANDED_SAVED = 1;
+
+	/**
+	 * A ball fell past the paddle since the last update.
+	 */
+	private static final byte LANDED_MISSED = 2;
+
+
+
+	/**
+	 * Simulation whose balls are intercepted.
+	 */
+	private final Simulation mSimulation;
+
+	/**
+	 * X coordinate of the center of the paddle.
+	 */
+	private float mX;
+
+	/**
+	 * Half the width (in pixels) of the paddle.
+	 */
+	private float mHalfWidth;
+
+	/**
+	 * Distance (in pixels) the paddle moves per tick.
+	 */
+	private float mSpeed;
+
+	/**
+	 * Whether or not predictions are kept between ticks.
+	 */
+	private boolean mIsCaching;
+
+	/**
+	 * Whether or not each ball has a prediction.
+	 */
+	private boolean[] mIsPredicted;
+
+	/**
+	 * X coordinate of each ball's vector when it was predicted.
+	 */
+	private float[] mVectorX;
+
+	/**
+	 * Y coordinate of each ball's vector when it was predicted.
+	 */
+	private float[] mVectorY;
+
+	/**
+	 * X coordinate at which each ball is predicted to reach the bottom edge.
+	 */
+	private float[] mLandX;
+
+	/**
+	 * Tick on which each ball is predicted to reach the bottom edge, or {@link #NEVER}.
+	 */
+	private long[] mLandTick;
+
+	/**
+	 * Tick by which each ball has passed the end of its predicted path.
+	 */
+	private long[] mEndTick;
+
+	/**
+	 * Cell (row * width + column) of the block each ball's path ends at, or -1.
+	 */
+	private int[] mBlockCell;
+
+	/**
+	 * Points along each ball's predicted path, {@link #POINTS_STRIDE} values per ball.
+	 */
+	private float[] mPoints;
+
+	/**
+	 * Number of points along each ball's predicted path.
+	 */
+	private int[] mPointCounts;
+
+	/**
+	 * Number of tiles of {@link #TILE_SIZE} cells horizontally.
+	 */
+	private int mTilesWide;
+
+	/**
+	 * Number of longs in a mask with one bit per tile.
+	 */
+	private int mMaskWords;
+
+	/**
+	 * Tiles each ball's predicted path passes through, {@link #mMaskWords} values per ball.
+	 */
+	private long[] mMasks;
+
+	/**
+	 * What happened to each ball at the bottom edge since the last update.
+	 */
+	private byte[] mLanded;
+
+	/**
+	 * Blocks added since the last update, as consecutive column and row values.
+	 */
+	private final int[] mAdded;
+
+	/**
+	 * Number of blocks added since the last update, which may exceed {@link #MAX_ADDED}.
+	 */
+	private int mAddedCount;
+
+	/**
+	 * Tiles holding the blocks added since the last update.
+	 */
+	private long[] mAddedMask;
+
+	/**
+	 * Ball being intercepted, or -1.
+	 */
+	private int mTarget;
+
+	/**
+	 * Time (in ticks) along the ray at which the last cast entered a block.
+	 */
+	private float mCastTime;
+
+	/**
+	 * Number of predictions made.
+	 */
+	private long mPredictions;
+
+	/**
+	 * Number of predictions reused from an earlier tick.
+	 */
+	private long mReused;
+
+	/**
+	 * Number of balls sent back up.
+	 */
+	private long mSaves;
+
+	/**
+	 * Number of balls which fell past.
+	 */
+	private long mMisses;
+
+
+
+	/**
+	 * Create a paddle in the middle of the bottom edge.
+	 *
+	 * @param simulation Simulation whose balls are intercepted.
+	 */
+	public Paddle(final Simulation simulation) {
+		this.mSimulation = simulation;
+		this.mIsCaching = true;
+		this.mAdded = new int[Paddle.MAX_ADDED * 2];
+		this.mTarget = -1;
+		this.allocate(0);
+		this.resize(simulation.getGameWidth(), simulation.getBallSpeed());
+	}
+
+
+
+	/**
+	 * Size and center the paddle for a new game area and drop every
+	 * prediction.
+	 *
+	 * @param gameWidth Width (in pixels) of the game area.
+	 * @param ballSpeed Distance (in pixels) every ball moves per tick.
+	 */
+	/*package*/void resize(final int gameWidth, final float ballSpeed) {
+		this.mHalfWidth = gameWidth * Paddle.WIDTH_PERCENT / 2;
+		this.mX = gameWidth / 2.0f;
+		this.setBallSpeed(ballSpeed);
+		this.invalidate();
+	}
+
+	/**
+	 * Match the paddle speed to a new ball speed.
+	 *
+	 * @param ballSpeed Distance (in pixels) every ball moves per tick.
+	 */
+	/*package*/void setBallSpeed(final float ballSpeed) {
+		this.mSpeed = ballSpeed * Paddle.SPEED_RATIO;
+	}
+
+	/**
+	 * Get the X coordinate of the center of the paddle.
+	 *
+	 * @return Pixels.
+	 */
+	public float getX() {
+		return this.mX;
+	}
+
+	/**
+	 * Move the paddle, as when restoring a snapshot. Predictions are kept.
+	 *
+	 * @param x X coordinate of the center.
+	 */
+	/*package*/void setX(final float x) {
+		this.mX = x;
+	}
+
+	/**
+	 * Get half the width of the paddle.
+	 *
+	 * @return Pixels.
+	 */
+	public float getHalfWidth() {
+		return this.mHalfWidth;
+	}
+
+	/**
+	 * Get the ball being intercepted.
+	 *
+	 * @return Ball index, or -1.
+	 */
+	public int getTarget() {
+		return this.mTarget;
+	}
+
+	/**
+	 * Get the number of predictions made.
+	 *
+	 * @return Predictions.
+	 */
+	public long getPredictions() {
+		return this.mPredictions;
+	}
+
+	/**
+	 * Get the number of predictions reused from an earlier tick.
+	 *
+	 * @return Predictions.
+	 */
+	public long getReused() {
+		return this.mReused;
+	}
+
+	/**
+	 * Get the number of balls sent back up.
+	 *
+	 * @return Balls.
+	 */
+	public long getSaves() {
+		return this.mSaves;
+	}
+
+	/**
+	 * Get the number of balls which fell past.
+	 *
+	 * @return Balls.
+	 */
+	public long getMisses() {
+		return this.mMisses;
+	}
+
+	/**
+	 * Set whether or not predictions are kept between ticks. Without them
+	 * every ball is predicted again every tick; this only exists so the two
+	 * can be compared.
+	 *
+	 * @param isCaching Whether or not to keep predictions.
+	 */
+	/*package*/void setCaching(final boolean isCaching) {
+		this.mIsCaching = isCaching;
+	}
+
+	/**
+	 * Determine whether or not a ball at the bottom edge is over the paddle.
+	 *
+	 * @param x X coordinate of the ball.
+	 * @param radius Radius of the ball.
+	 * @return Boolean.
+	 */
+	/*package*/boolean covers(final float x, final float radius) {
+		return Math.abs(x - this.mX) <= this.mHalfWidth + radius;
+	}
+
+	/**
+	 * Get the horizontal part of the vector for a ball leaving the paddle,
+	 * for a vertical part of one.
+	 *
+	 * @param x X coordinate of the ball.
+	 * @param radius Radius of the ball.
+	 * @return Horizontal part of the vector.
+	 */
+	/*package*/float deflect(final float x, final float radius) {
+		final float offset = (x - this.mX) / (this.mHalfWidth + radius);
+		return Math.max(-1, Math.min(offset, 1)) * Paddle.DEFLECTION;
+	}
+
+	/**
+	 * Note that a ball reached the bottom edge. Only touches the ball's own
+	 * slot so balls may land concurrently.
+	 *
+	 * @param ball Ball index.
+	 * @param isSaved Whether or not the paddle sent it back up.
+	 */
+	/*package*/void onLanded(final int ball, final boolean isSaved) {
+		this.mLanded[ball] = isSaved ? Paddle.LANDED_SAVED : Paddle.LANDED_MISSED;
+	}
+
+	/**
+	 * Forget anything kept for a pooled ball slot which was just put in play.
+	 *
+	 * @param ball Ball index.
+	 */
+	/*package*/void onAcquired(final int ball) {
+		if (ball < this.mIsPredicted.length) {
+			this.mIsPredicted[ball] = false;
+			this.mLanded[ball] = Paddle.LANDED_NONE;
+		}
+	}
+
+	/**
+	 * Note that a ball went back to the pool and the last ball in play was
+	 * moved into its slot. Counts what happened to the released ball at the
+	 * bottom edge before it is overwritten.
+	 *
+	 * @param ball Index of the released ball.
+	 * @param moved Index the last ball in play was moved from.
+	 */
+	/*package*/void onReleased(final int ball, final int moved) {
+		if (ball >= this.mIsPredicted.length) {
+			return;
+		}
+		if (this.mLanded[ball] == Paddle.LANDED_SAVED) {
+			this.mSaves += 1;
+		} else if (this.mLanded[ball] == Paddle.LANDED_MISSED) {
+			this.mMisses += 1;
+		}
+		this.mLanded[ball] = this.mLanded[moved];
+		this.mLanded[moved] = Paddle.LANDED_NONE;
+		this.mIsPredicted[ball] = false;
+		this.mIsPredicted[moved] = false;
+		if (this.mTarget == ball) {
+			this.mTarget = -1;
+		} else if (this.mTarget == moved) {
+			this.mTarget = ball;
+		}
+	}
+
+	/**
+	 * Drop every prediction. Must be called when the board, balls or layout
+	 * change.
+	 */
+	/*package*/void invalidate() {
+		for (int i = 0; i < this.mIsPredicted.length; i++) {
+			this.mIsPredicted[i] = false;
+		}
+		this.clearAdded();
+	}
+
+	/**
+	 * Note a newly added block. Predictions whose path crosses its cell are
+	 * dropped on the next update.
+	 *
+	 * @param x Column of the block.
+	 * @param y Row of the block.
+	 */
+	/*package*/void onBlockAdded(final int x, final int y) {
+		if (this.mAddedCount < Paddle.MAX_ADDED) {
+			this.mAdded[this.mAddedCount * 2] = x;
+			this.mAdded[(this.mAddedCount * 2) + 1] = y;
+		}
+		this.mAddedCount += 1;
+		final int tile = this.tile(x, y);
+		if ((tile >> 6) < this.mAddedMask.length) {
+			this.mAddedMask[tile >> 6] |= 1L << tile;
+		}
+	}
+
+	/**
+	 * Drop the predictions made stale by the blocks added since the last
+	 * update. Every other block was already accounted for so only their
+	 * cells need to be looked for. A path which passes through none of
+	 * their tiles is kept without looking further. Otherwise it is tested
+	 * exactly against each of their cells, unless there were too many in
+	 * which case sharing a tile is enough to drop it.
+	 */
+	private void applyAdded() {
+		final int added = this.mAddedCount;
+		if (added == 0) {
+			return;
+		}
+		final boolean isExact = (added <= Paddle.MAX_ADDED);
+
+		final float cellWidth = this.mSimulation.getCellWidth();
+		final float cellHeight = this.mSimulation.getCellHeight();
+		final float[] points = this.mPoints;
+		final long[] masks = this.mMasks;
+		final long[] addedMask = this.mAddedMask;
+		final int words = this.mMaskWords;
+		for (int i = 0; i < this.mIsPredicted.length; i++) {
+			if (!this.mIsPredicted[i]) {
+				continue;
+			}
+
+			long shared = 0;
+			for (int w = 0; w < words; w++) {
+				shared |= masks[(i * words) + w] & addedMask[w];
+			}
+			if (shared == 0) {
+				continue;
+			}
+			if (!isExact) {
+				this.mIsPredicted[i] = false;
+				continue;
+			}
+
+			final int base = i * Paddle.POINTS_STRIDE;
+			final int end = base + ((this.mPointCounts[i] - 1) * 2);
+			for (int n = 0; (n < added) && this.mIsPredicted[i]; n++) {
+				final int tile = this.tile(this.mAdded[n * 2], this.mAdded[(n * 2) + 1]);
+				if ((masks[(i * words) + (tile >> 6)] & (1L << tile)) == 0) {
+					continue;
+				}
+
+				final float left = this.mAdded[n * 2] * cellWidth;
+				final float top = this.mAdded[(n * 2) + 1] * cellHeight;
+				final float right = left + cellWidth;
+				final float bottom = top + cellHeight;
+				for (int p = base; p < end; p += 2) {
+					final float startX = points[p];
+					final float startY = points[p + 1];
+					final float deltaX = points[p + 2] - startX;
+					final float deltaY = points[p + 3] - startY;
+					final float first = Math.max(Paddle.enter(startX, deltaX, left, right), Paddle.enter(startY, deltaY, top, bottom));
+					final float last = Math.min(Paddle.exit(startX, deltaX, left, right), Paddle.exit(startY, deltaY, top, bottom));
+					if ((first <= last) && (first <= 1) && (last >= 0)) {
+						this.mIsPredicted[i] = false;
+						break;
+					}
+				}
+			}
+		}
+		this.clearAdded();
+	}
+
+	/**
+	 * Forget the blocks added since the last update.
+	 */
+	private void clearAdded() {
+		this.mAddedCount = 0;
+		for (int w = 0; w < this.mAddedMask.length; w++) {
+			this.mAddedMask[w] = 0;
+		}
+	}
+
+	/**
+	 * Get the tile holding a cell.
+	 *
+	 * @param x Column.
+	 * @param y Row.
+	 * @return Tile (row * tiles wide + column).
+	 */
+	private int tile(final int x, final int y) {
+		return ((y >> Paddle.TILE_SHIFT) * this.mTilesWide) + (x >> Paddle.TILE_SHIFT);
+	}
+
+	/**
+	 * Bring every ball's prediction up to date and move the paddle towards
+	 * the ball it can reach which lands first. If it can reach none it heads
+	 * for the one which lands first anyway. Called once per tick before the
+	 * balls move.
+	 */
+	/*package*/void update() {
+		final BallStore store = this.mSimulation.getBallStore();
+		final int balls = store.size();
+		final int tilesWide = (this.mSimulation.getCellsWide() + Paddle.TILE_SIZE - 1) >> Paddle.TILE_SHIFT;
+		final int tilesTall = (this.mSimulation.getCellsTall() + Paddle.TILE_SIZE - 1) >> Paddle.TILE_SHIFT;
+		if ((this.mIsPredicted.length != store.capacity()) || (this.mTilesWide != tilesWide) || (this.mMaskWords != ((tilesWide * tilesTall) + 63) >> 6)) {
+			this.allocate(store.capacity());
+		}
+		this.applyAdded();
+
+		final long now = this.mSimulation.getTicks();
+		final float[] vectorX = store.mVectorX;
+		final float[] vectorY = store.mVectorY;
+		int target = -1;
+		long targetTick = Paddle.NEVER;
+		int fallback = -1;
+		long fallbackTick = Paddle.NEVER;
+		for (int i = 0; i < balls; i++) {
+			if (this.mLanded[i] != Paddle.LANDED_NONE) {
+				if (this.mLanded[i] == Paddle.LANDED_SAVED) {
+					this.mSaves += 1;
+				} else {
+					this.mMisses += 1;
+				}
+				this.mLanded[i] = Paddle.LANDED_NONE;
+				this.mIsPredicted[i] = false;
+			}
+
+			if (this.mIsCaching && this.isCurrent(i, now)) {
+				this.mReused += 1;
+			} else {
+				this.predict(i, now);
+			}
+
+			final long land = this.mLandTick[i];
+			if (land == Paddle.NEVER) {
+				continue;
+			}
+			if (land < fallbackTick) {
+				fallback = i;
+				fallbackTick = land;
+			}
+			if (land < targetTick) {
+				final float distance = Math.abs(this.mLandX[i] - this.mX) - this.mHalfWidth;
+				if (distance <= this.mSpeed * Math.max(1, land - now)) {
+					target = i;
+					targetTick = land;
+				}
+			}
+		}
+		if (target < 0) {
+			target = fallback;
+		}
+		this.mTarget = target;
+
+		if (target >= 0) {
+			final float delta = this.mLandX[target] - this.mX;
+			this.mX += Math.max(-this.mSpeed, Math.min(delta, this.mSpeed));
+		}
+		final float gameWidth = this.mSimulation.getGameWidth();
+		if (gameWidth > this.mHalfWidth * 2) {
+			this.mX = Math.max(this.mHalfWidth, Math.min(this.mX, gameWidth - this.mHalfWidth));
+		} else {
+			this.mX = gameWidth / 2;
+		}
+	}
+
+	/**
+	 * Find a ball whose kept prediction differs from one made afresh from
+	 * its current state by more than a tolerance.
+	 *
+	 * @param tolerance Largest allowed difference (in pixels) of landing point.
+	 * @return Ball index, or -1 if every prediction is current.
+	 */
+	/*package*/int findStale(final float tolerance) {
+		this.applyAdded();
+		final long now = this.mSimulation.getTicks();
+		final Paddle fresh = new Paddle(this.mSimulation);
+		fresh.allocate(this.mIsPredicted.length);
+		final int balls = Math.min(this.mIsPredicted.length, this.mSimulation.getBallStore().size());
+		for (int i = 0; i < balls; i++) {
+			if (!this.isCurrent(i, now)) {
+				//Would be predicted again on the next update anyway
+				continue;
+			}
+
+			fresh.predict(i, now);
+			if ((fresh.mLandTick[i] == Paddle.NEVER) != (this.mLandTick[i] == Paddle.NEVER)) {
+				return i;
+			}
+			if ((this.mLandTick[i] != Paddle.NEVER) && (Math.abs(fresh.mLandX[i] - this.mLandX[i]) > tolerance)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Determine whether or not a ball's kept prediction still holds: it has
+	 * not been dropped, the ball's vector is unchanged, the ball has not yet
+	 * reached the end of the path, and any block the path ends at is still
+	 * there. A ball can pass the end without bouncing when it only grazes
+	 * the block.
+	 *
+	 * @param ball Ball index.
+	 * @param now Current tick.
+	 * @return Boolean.
+	 */
+	private boolean isCurrent(final int ball, final long now) {
+		final BallStore store = this.mSimulation.getBallStore();
+		return this.mIsPredicted[ball]
+				&& (store.mVectorX[ball] == this.mVectorX[ball]) && (store.mVectorY[ball] == this.mVectorY[ball])
+				&& (now < this.mEndTick[ball])
+				&& ((this.mBlockCell[ball] < 0) || this.isBlock(this.mBlockCell[ball]));
+	}
+
+	/**
+	 * Create per-ball storage, dropping every prediction.
+	 *
+	 * @param balls Number of balls.
+	 */
+	private void allocate(final int balls) {
+		this.mIsPredicted = new boolean[balls];
+		this.mVectorX = new float[balls];
+		this.mVectorY = new float[balls];
+		this.mLandX = new float[balls];
+		this.mLandTick = new long[balls];
+		this.mEndTick = new long[balls];
+		this.mBlockCell = new int[balls];
+		this.mPoints = new float[balls * Paddle.POINTS_STRIDE];
+		this.mPointCounts = new int[balls];
+		this.mLanded = new byte[balls];
+		this.mTarget = -1;
+
+		this.mTilesWide = (this.mSimulation.getCellsWide() + Paddle.TILE_SIZE - 1) >> Paddle.TILE_SHIFT;
+		final int tilesTall = (this.mSimulation.getCellsTall() + Paddle.TILE_SIZE - 1) >> Paddle.TILE_SHIFT;
+		this.mMaskWords = ((this.mTilesWide * tilesTall) + 63) >> 6;
+		this.mMasks = new long[balls * this.mMaskWords];
+		this.mAddedMask = new long[this.mMaskWords];
+		this.mAddedCount = 0;
+	}
+
+	/**
+	 * Predict where and when a ball reaches the bottom edge by following its
+	 * center along its vector, bouncing off the other edges.
+	 *
+	 * @param ball Ball index.
+	 * @param now Current tick.
+	 */
+	private void predict(final int ball, final long now) {
+		final BallStore store = this.mSimulation.getBallStore();
+		final float gameWidth = this.mSimulation.getGameWidth();
+		final float gameHeight = this.mSimulation.getGameHeight();
+		float x = store.mLocationX[ball];
+		float y = store.mLocationY[ball];
+		float vectorX = store.mVectorX[ball];
+		float vectorY = store.mVectorY[ball];
+
+		this.mPredictions += 1;
+		this.mIsPredicted[ball] = true;
+		this.mVectorX[ball] = vectorX;
+		this.mVectorY[ball] = vectorY;
+		this.mLandTick[ball] = Paddle.NEVER;
+		this.mBlockCell[ball] = -1;
+		final int base = ball * Paddle.POINTS_STRIDE;
+		this.mPoints[base] = x;
+		this.mPoints[base + 1] = y;
+		int points = 1;
+		final int mask = ball * this.mMaskWords;
+		for (int w = mask; w < mask + this.mMaskWords; w++) {
+			this.mMasks[w] = 0;
+		}
+
+		float elapsed = 0;
+		for (int leg = 0; leg <= Paddle.MAX_BOUNCES; leg++) {
+			//Time (in ticks) until the center reaches each edge
+			final float toX = (vectorX > 0) ? (gameWidth - x) / vectorX : (vectorX < 0) ? -x / vectorX : Float.POSITIVE_INFINITY;
+			final float toY = (vectorY > 0) ? (gameHeight - y) / vectorY : (vectorY < 0) ? -y / vectorY : Float.POSITIVE_INFINITY;
+			final float length = Math.max(0, Math.min(toX, toY));
+
+			final int cell = this.cast(x, y, vectorX, vectorY, length, mask);
+			if (cell >= 0) {
+				this.mBlockCell[ball] = cell;
+				this.mEndTick[ball] = now + (long)Math.ceil(elapsed + this.mCastTime);
+				this.mPoints[base + (points * 2)] = x + (vectorX * this.mCastTime);
+				this.mPoints[base + (points * 2) + 1] = y + (vectorY * this.mCastTime);
+				this.mPointCounts[ball] = points + 1;
+				return;
+			}
+
+			x += vectorX * length;
+			y += vectorY * length;
+			elapsed += length;
+			this.mPoints[base + (points * 2)] = x;
+			this.mPoints[base + (points * 2) + 1] = y;
+			points += 1;
+
+			if (toY <= toX) {
+				if (vectorY > 0) {
+					this.mLandX[ball] = Math.max(0, Math.min(x, gameWidth));
+					this.mLandTick[ball] = now + (long)Math.ceil(elapsed);
+					break;
+				}
+				vectorY = -vectorY;
+			}
+			if (toX <= toY) {
+				vectorX = -vectorX;
+			}
+		}
+		this.mEndTick[ball] = now + (long)Math.ceil(elapsed);
+		this.mPointCounts[ball] = points;
+	}
+
+	/**
+	 * Walk the board cells a ray passes through after the one it starts in,
+	 * in order, until one holds a block. Sets {@link #mCastTime} to when the
+	 * ray enters that cell, and marks the tile of every cell walked in a
+	 * mask.
+	 *
+	 * @param x X coordinate of the start.
+	 * @param y Y coordinate of the start.
+	 * @param vectorX X distance covered per unit of time.
+	 * @param vectorY Y distance covered per unit of time.
+	 * @param length Time at which the ray ends.
+	 * @param mask Position in {@link #mMasks} of the mask to mark.
+	 * @return Cell (row * width + column) of the first block, or -1.
+	 */
+	private int cast(final float x, final float y, final float vectorX, final float vectorY, final float length, final int mask) {
+		final Simulation simulation = this.mSimulation;
+		final int cellsWide = simulation.getCellsWide();
+		final int cellsTall = simulation.getCellsTall();
+		final float cellWidth = simulation.getCellWidth();
+		final float cellHeight = simulation.getCellHeight();
+		if ((cellsWide == 0) || (cellsTall == 0) || !(cellWidth > 0) || !(cellHeight > 0)) {
+			return -1;
+		}
+
+		int cellX = Math.max(0, Math.min((int)(x / cellWidth), cellsWide - 1));
+		int cellY = Math.max(0, Math.min((int)(y / cellHeight), cellsTall - 1));
+		final int stepX = (vectorX > 0) ? 1 : -1;
+		final int stepY = (vectorY > 0) ? 1 : -1;
+		final float deltaX = (vectorX != 0) ? cellWidth / Math.abs(vectorX) : Float.POSITIVE_INFINITY;
+		final float deltaY = (vectorY != 0) ? cellHeight / Math.abs(vectorY) : Float.POSITIVE_INFINITY;
+		float nextX = (vectorX != 0) ? ((((vectorX > 0) ? cellX + 1 : cellX) * cellWidth) - x) / vectorX : Float.POSITIVE_INFINITY;
+		float nextY = (vectorY != 0) ? ((((vectorY > 0) ? cellY + 1 : cellY) * cellHeight) - y) / vectorY : Float.POSITIVE_INFINITY;
+		final long[] masks = this.mMasks;
+		int tile = this.tile(cellX, cellY);
+		masks[mask + (tile >> 6)] |= 1L << tile;
+		float time;
+
+		//The starting cell is skipped. A ball whose center is still inside
+		//a block has already bounced off it and is on its way out, and after
+		//an edge bounce the cell was already walked by the previous ray.
+		while (true) {
+			if (nextX < nextY) {
+				if (nextX > length) {
+					return -1;
+				}
+				time = nextX;
+				cellX += stepX;
+				nextX += deltaX;
+			} else {
+				if (nextY > length) {
+					return -1;
+				}
+				time = nextY;
+				cellY += stepY;
+				nextY += deltaY;
+			}
+			if ((cellX < 0) || (cellX >= cellsWide) || (cellY < 0) || (cellY >= cellsTall)) {
+				return -1;
+			}
+			tile = this.tile(cellX, cellY);
+			masks[mask + (tile >> 6)] |= 1L << tile;
+			if (simulation.isBlock(cellX, cellY)) {
+				this.mCastTime = time;
+				return (cellY * cellsWide) + cellX;
+			}
+		}
+	}
+
+	/**
+	 * Determine whether or not a cell holds a block.
+	 *
+	 * @param cell Cell (row * width + column).
+	 * @return Boolean.
+	 */
+	private boolean isBlock(final int cell) {
+		final int cellsWide = this.mSimulation.getCellsWide();
+		return this.mSimulation.isBlock(cell % cellsWide, cell / cellsWide);
+	}
+
+	/**
+	 * Fraction along a segment at which it enters a slab.
+	 *
+	 * @param start Start coordinate.
+	 * @param delta Change in coordinate over the segment.
+	 * @param low Low edge of the slab.
+	 * @param high High edge of the slab.
+	 * @return Fraction, or infinite if it never does.
+	 */
+	private static float enter(final float start, final float delta, final float low, final float high) {
+		if (delta > 0) {
+			return (low - start) / delta;
+		} else if (delta < 0) {
+			return (high - start) / delta;
+		}
+		return ((start >= low) && (start <= high)) ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Fraction along a segment at which it leaves a slab.
+	 *
+	 * @param start Start coordinate.
+	 * @param delta Change in coordinate over the segment.
+	 * @param low Low edge of the slab.
+	 * @param high High edge of the slab.
+	 * @return Fraction, or infinite if it never does.
+	 */
+	private static float exit(final float start, final float delta, final float low, final float high) {
+		if (delta > 0) {
+			return (high - start) / delta;
+		} else if (delta < 0) {
+			return (low - start) / delta;
+		}
+		return ((start >= low) && (start <= high)) ? Float.POSITIVE_INFINITY : Float.NEGATIVE_INFINITY;
+	}
+}
@@ -0,0 +1,123 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Command-line benchmark comparing the paddle's kept predictions with
+ * predicting every ball again every tick. Balls are scattered at random
+ * over the game area heading in random directions. Every few ticks each
+ * kept prediction is also checked against one made afresh, and the run
+ * fails if any was not invalidated when it should have been. Layout
+ * options are the same as {@link SoakRunner}'s.
+ *
+ * <pre>
+ * java -cp out com.jakewharton.breakoutwallpaper.PaddleBenchmark --counts 100,1000,10000 --ticks 2000
+ * </pre>
+ */
+public class PaddleBenchmark {
+	/**
+	 * Largest difference (in pixels) allowed between a kept landing point
+	 * and a fresh one, which only differ by rounding along the path.
+	 */
+	private static final float TOLERANCE = 1;
+
+	/**
+	 * Ticks between checks of the kept predictions.
+	 */
+	private static final int CHECK_EVERY = 50;
+
+
+
+	public static void main(final String[] args) {
+		String counts = "100,1000,10000";
+		long ticks = 2000;
+		int rounds = 3;
+		final String[] layoutArgs = new String[args.length];
+		int layoutCount = 0;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			final String name = args[i];
+			final String value = args[i + 1];
+			if ("--counts".equals(name)) {
+				counts = value;
+			} else if ("--ticks".equals(name)) {
+				ticks = Long.parseLong(value);
+			} else if ("--rounds".equals(name)) {
+				rounds = Integer.parseInt(value);
+			} else {
+				layoutArgs[layoutCount++] = name;
+				layoutArgs[layoutCount++] = value;
+			}
+		}
+		final String[] trimmedArgs = new String[layoutCount];
+		System.arraycopy(layoutArgs, 0, trimmedArgs, 0, layoutCount);
+		final SoakRunner.Config config = SoakRunner.parse(trimmedArgs);
+		config.paddle = true;
+
+		for (final String countValue : counts.split(",")) {
+			config.balls = Integer.parseInt(countValue.trim());
+
+			long bestCached = Long.MAX_VALUE;
+			long bestFresh = Long.MAX_VALUE;
+			double reusedShare = 0;
+			for (int round = 0; round < rounds; round++) {
+				final Simulation cached = PaddleBenchmark.create(config, true);
+				final Simulation fresh = PaddleBenchmark.create(config, false);
+
+				bestCached = Math.min(bestCached, PaddleBenchmark.run(cached, ticks, true));
+				bestFresh = Math.min(bestFresh, PaddleBenchmark.run(fresh, ticks, false));
+				final Paddle paddle = cached.getPaddle();
+				reusedShare = paddle.getReused() / (double)Math.max(1, paddle.getReused() + paddle.getPredictions());
+			}
+
+			System.out.println(config.balls + " balls:"
+					+ " kept " + (bestCached / ticks) + "ns/tick"
+					+ ", fresh " + (bestFresh / ticks) + "ns/tick"
+					+ ", speedup " + String.format("%.2f", bestFresh / (double)bestCached) + "x"
+					+ ", " + String.format("%.1f", 100 * reusedShare) + "% reused");
+		}
+	}
+
+	/**
+	 * Build a simulation with a paddle and scatter its balls at random.
+	 *
+	 * @param config Layout and run configuration.
+	 * @param isCaching Whether or not the paddle keeps its predictions.
+	 * @return Simulation ready to tick.
+	 */
+	private static Simulation create(final SoakRunner.Config config, final boolean isCaching) {
+		final Simulation simulation = config.create();
+		simulation.getPaddle().setCaching(isCaching);
+
+		final FastRandom random = new FastRandom(config.seed);
+		final Ball[] balls = simulation.getBalls();
+		for (int i = 0; i < simulation.getBallCount(); i++) {
+			final Ball ball = balls[i];
+			ball.setLocation(random.nextFloat() * simulation.getGameWidth(), random.nextFloat() * simulation.getGameHeight());
+			ball.setVector(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+		}
+		return simulation;
+	}
+
+	/**
+	 * Tick a simulation, timing only the paddle.
+	 *
+	 * @param simulation Simulation.
+	 * @param ticks Ticks to run.
+	 * @param isChecking Whether or not to check the kept predictions.
+	 * @return Nanoseconds spent updating the paddle.
+	 */
+	private static long run(final Simulation simulation, final long ticks, final boolean isChecking) {
+		final TickProfiler profiler = new TickProfiler();
+		simulation.setProfiler(profiler);
+		final Paddle paddle = simulation.getPaddle();
+		for (long tick = 1; tick <= ticks; tick++) {
+			simulation.tick();
+			if (isChecking && (tick % PaddleBenchmark.CHECK_EVERY == 0)) {
+				final int stale = paddle.findStale(PaddleBenchmark.TOLERANCE);
+				if (stale >= 0) {
+					System.out.println("FAILED: ball " + stale + " kept a stale prediction at tick " + tick);
+					System.exit(1);
+				}
+			}
+		}
+		return profiler.getNanos(TickProfiler.PHASE_PADDLE);
+	}
+}
@@ -0,0 +1,169 @@
+package com.jakewharton.breakoutwallpaper;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Splits the per-ball phase of a {@link Simulation} tick across a fixed set
+ * of threads. The balls are divided into contiguous ranges and the thread
+ * calling {@link #run()} takes the first range itself. Threads meet at a
+ * barrier before and after each tick so nothing is allocated per tick.
+ */
+public class ParallelTicker {
+	/**
+	 * Simulation whose balls are advanced.
+	 */
+	private final Simulation mSimulation;
+
+	/**
+	 * Number of threads, including the calling thread.
+	 */
+	private final int mThreads;
+
+	/**
+	 * Barrier releasing the workers at the start of a tick.
+	 */
+	private final CyclicBarrier mStart;
+
+	/**
+	 * Barrier reached by every thread once its balls have been advanced.
+	 */
+	private final CyclicBarrier mDone;
+
+	/**
+	 * Background workers.
+	 */
+	private final Thread[] mWorkers;
+
+	/**
+	 * Whether or not the workers should keep running.
+	 */
+	private volatile boolean mIsRunning;
+
+	/**
+	 * First failure thrown by a worker during the current tick. Errors are
+	 * kept as well as exceptions so a worker always reaches the barrier.
+	 */
+	private volatile Throwable mFailure;
+
+
+
+	/**
+	 * Create and start the worker threads.
+	 *
+	 * @param simulation Simulation whose balls are advanced.
+	 * @param threads Number of threads, including the calling thread.
+	 */
+	public ParallelTicker(final Simulation simulation, final int threads) {
+		this.mSimulation = simulation;
+		this.mThreads = threads;
+		this.mStart = new CyclicBarrier(threads);
+		this.mDone = new CyclicBarrier(threads);
+		this.mIsRunning = true;
+
+		this.mWorkers = new Thread[threads - 1];
+		for (int i = 0; i < this.mWorkers.length; i++) {
+			final int part = i + 1;
+			this.mWorkers[i] = new Thread("BreakoutTicker-" + part) {
+				@Override
+				public void run() {
+					ParallelTicker.this.work(part);
+				}
+			};
+			this.mWorkers[i].setDaemon(true);
+			this.mWorkers[i].start();
+		}
+	}
+
+
+
+	/**
+	 * Get the number of threads, including the calling thread.
+	 *
+	 * @return Threads.
+	 */
+	public int getThreads() {
+		return this.mThreads;
+	}
+
+	/**
+	 * Advance every ball one step, returning once all threads are done.
+	 */
+	public void run() {
+		ParallelTicker.await(this.mStart);
+		try {
+			this.advance(0);
+		} finally {
+			ParallelTicker.await(this.mDone);
+		}
+
+		final Throwable failure = this.mFailure;
+		if (failure != null) {
+			this.mFailure = null;
+			throw new IllegalStateException("Worker failed while ticking", failure);
+		}
+	}
+
+	/**
+	 * Stop the worker threads. The ticker cannot be used afterwards.
+	 */
+	public void shutdown() {
+		this.mIsRunning = false;
+		for (final Thread worker : this.mWorkers) {
+			worker.interrupt();
+		}
+	}
+
+	/**
+	 * Worker loop.
+	 *
+	 * @param part Index of this worker's range of balls.
+	 */
+	private void work(final int part) {
+		while (this.mIsRunning) {
+			try {
+				this.mStart.await();
+				try {
+					this.advance(part);
+				} catch (final Throwable e) {
+					if (this.mFailure == null) {
+						this.mFailure = e;
+					}
+				}
+				this.mDone.await();
+			} catch (final InterruptedException e) {
+				return;
+			} catch (final BrokenBarrierException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Advance one contiguous range of balls.
+	 *
+	 * @param part Index of the range.
+	 */
+	private void advance(final int part) {
+		final int balls = this.mSimulation.getBallCount();
+		final int from = (int)(((long)balls * part) / this.mThreads);
+		final int to = (int)(((long)balls * (part + 1)) / this.mThreads);
+		this.mSimulation.advanceBalls(from, to, null);
+	}
+
+	/**
+	 * Wait on a barrier from the calling thread.
+	 *
+	 * @param barrier Barrier.
+	 */
+	private static void await(final CyclicBarrier barrier) {
+		try {
+			barrier.await();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while ticking", e);
+		} catch (final BrokenBarrierException e) {
+			throw new IllegalStateException("Ticker was shut down", e);
+		}
+	}
+}
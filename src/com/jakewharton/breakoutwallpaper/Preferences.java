@@ -334,7 +334,7 @@ public class Preferences extends PreferenceActivity implements SharedPreferences
 		//Only enabled endless regen percentage when on endless game mode
 		final String gameMode = resources.getString(R.string.settings_game_mode_key);
 		if (all || key.equals(gameMode)) {
-			final boolean enabled = (preferences.getInt(gameMode, resources.getInteger(R.integer.game_mode_default)) == Game.MODE_ENDLESS);
+			final boolean enabled = (preferences.getInt(gameMode, resources.getInteger(R.integer.game_mode_default)) == Simulation.MODE_ENDLESS);
 			this.findPreference(resources.getString(R.string.settings_game_endlessregen_key)).setEnabled(enabled);
 		}
 		
@@ -477,6 +477,17 @@ public class Preferences extends PreferenceActivity implements SharedPreferences
 		editor.remove(resources.getString(R.string.settings_game_usercontrol_key));
 		//ball count
 		editor.remove(resources.getString(R.string.settings_game_ballcount_key));
+		//block hits
+		editor.remove(resources.getString(R.string.settings_game_blockhits_key));
+		editor.remove(resources.getString(R.string.settings_game_blockhitsperlevel_key));
+		//explosive blocks
+		editor.remove(resources.getString(R.string.settings_game_explosive_key));
+		//multiball power-ups
+		editor.remove(resources.getString(R.string.settings_game_powerups_key));
+		//ball collisions
+		editor.remove(resources.getString(R.string.settings_game_ballcollisions_key));
+		//paddle
+		editor.remove(resources.getString(R.string.settings_game_paddle_key));
 		
 		editor.commit();
     }
@@ -490,6 +501,10 @@ public class Preferences extends PreferenceActivity implements SharedPreferences
 
 		//fps
 		editor.remove(resources.getString(R.string.settings_display_fps_key));
+		//show stats
+		editor.remove(resources.getString(R.string.settings_display_showstats_key));
+		//animate blocks
+		editor.remove(resources.getString(R.string.settings_display_animate_key));
 		//icon rows
 		editor.remove(resources.getString(R.string.settings_display_iconrows_key));
 		//icon cols
@@ -0,0 +1,134 @@
+package com.jakewharton.breakoutwallpaper;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Command-line benchmark comparing a single static {@link Random} shared by
+ * every simulation (as the game used to do) against a {@link FastRandom}
+ * owned by each simulation. Both are measured inside the real tick loop
+ * with one simulation per thread, so contention on the shared instance
+ * shows up as it would with several engines ticking at once.
+ *
+ * <pre>
+ * java -cp out com.jakewharton.breakoutwallpaper.RandomBenchmark --threads 4 --ticks 2000000
+ * </pre>
+ */
+public class RandomBenchmark {
+	/**
+	 * Generator which forwards to one static {@link Random}, reproducing the
+	 * old shared instance behind the {@link FastRandom} API.
+	 */
+	private static class SharedRandom extends FastRandom {
+		/**
+		 * Instance shared by every simulation.
+		 */
+		private static final Random RANDOM = new Random();
+
+		SharedRandom() {
+			super(0);
+		}
+
+		@Override
+		public long nextLong() {
+			return SharedRandom.RANDOM.nextLong();
+		}
+
+		@Override
+		public int nextInt(final int bound) {
+			return SharedRandom.RANDOM.nextInt(bound);
+		}
+
+		@Override
+		public float nextFloat() {
+			return SharedRandom.RANDOM.nextFloat();
+		}
+
+		@Override
+		public FastRandom split() {
+			return new SharedRandom();
+		}
+	}
+
+
+
+	public static void main(final String[] args) throws InterruptedException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		long ticks = 2000000;
+		int rounds = 3;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			final String name = args[i];
+			final String value = args[i + 1];
+			if ("--threads".equals(name)) {
+				threads = Integer.parseInt(value);
+			} else if ("--ticks".equals(name)) {
+				ticks = Long.parseLong(value);
+			} else if ("--rounds".equals(name)) {
+				rounds = Integer.parseInt(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + name);
+			}
+		}
+
+		final int[] threadCounts = (threads > 1) ? new int[] { 1, threads } : new int[] { 1 };
+		System.out.println("Ticks per thread: " + ticks + ", rounds: " + rounds);
+		for (int round = 1; round <= rounds; round++) {
+			//Alternate which goes first so neither always benefits from a warmer JIT
+			final boolean sharedFirst = (round % 2) == 1;
+			for (int variant = 0; variant < 2; variant++) {
+				final boolean shared = (variant == 0) == sharedFirst;
+				final String name = shared ? "shared java.util.Random" : "per-simulation FastRandom";
+				for (final int count : threadCounts) {
+					final long rate = RandomBenchmark.run(shared, count, ticks);
+					System.out.println("Round " + round + ", " + name + ", " + count + " thread(s): " + rate + " ticks/s");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tick one simulation per thread and measure the combined throughput.
+	 *
+	 * @param shared Whether to use the shared static generator.
+	 * @param threads Number of threads.
+	 * @param ticks Ticks per thread.
+	 * @return Total ticks per second.
+	 * @throws InterruptedException If interrupted while waiting for the threads.
+	 */
+	private static long run(final boolean shared, final int threads, final long ticks) throws InterruptedException {
+		final SoakRunner.Config config = new SoakRunner.Config();
+		final FastRandom seeds = new FastRandom(config.seed);
+		final Simulation[] simulations = new Simulation[threads];
+		for (int i = 0; i < threads; i++) {
+			final FastRandom random = shared ? new SharedRandom() : seeds.split();
+			simulations[i] = config.populate(new Simulation(config.seed, random));
+		}
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			final Simulation simulation = simulations[i];
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (long tick = 0; tick < ticks; tick++) {
+							simulation.tick();
+						}
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		final long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		final long elapsed = System.nanoTime() - begin;
+		return (threads * ticks * FrameStats.NANOSECONDS_IN_SECOND) / Math.max(1, elapsed);
+	}
+}
@@ -0,0 +1,302 @@
+package com.jakewharton.breakoutwallpaper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Records everything needed to reproduce a {@link Simulation} exactly: the
+ * seed, a snapshot of the full simulation state, and every external input
+ * (preference changes, resizes, resets and touches) stamped with the tick
+ * on which it was applied. The session can be written to a compact binary
+ * file and played back headlessly by {@link SessionReplayer}.
+ */
+public class SessionRecorder {
+	/**
+	 * Layout changed. Rows, columns, row spacing, column spacing, widget value count, widget values.
+	 */
+	/*package*/static final int EVENT_LAYOUT = 0;
+
+	/**
+	 * Ball count changed. Count.
+	 */
+	/*package*/static final int EVENT_BALL_COUNT = 1;
+
+	/**
+	 * Mode changed. Mode.
+	 */
+	/*package*/static final int EVENT_MODE = 2;
+
+	/**
+	 * Regeneration percentage changed. Percent (float).
+	 */
+	/*package*/static final int EVENT_REGEN = 3;
+
+	/**
+	 * Block color changed. Index, color.
+	 */
+	/*package*/static final int EVENT_BLOCK_COLOR = 4;
+
+	/**
+	 * Game area resized. Width, height.
+	 */
+	/*package*/static final int EVENT_RESIZE = 5;
+
+	/**
+	 * Level reset by the user.
+	 */
+	/*package*/static final int EVENT_NEW_LEVEL = 6;
+
+	/**
+	 * User touch. X, Y (floats).
+	 */
+	/*package*/static final int EVENT_TOUCH = 7;
+
+	/**
+	 * Ball speed changed. Speed (float).
+	 */
+	/*package*/static final int EVENT_BALL_SPEED = 8;
+
+	/**
+	 * Ball collisions enabled or disabled. Enabled (byte, 1 or 0).
+	 */
+	/*package*/static final int EVENT_BALL_COLLISIONS = 9;
+
+	/**
+	 * User steered every ball near a touch. X, Y, radius (floats).
+	 */
+	/*package*/static final int EVENT_STEER = 10;
+
+	/**
+	 * User dragged a ball towards a touch. Ball (int), X, Y (floats).
+	 */
+	/*package*/static final int EVENT_STEER_BALL = 11;
+
+	/**
+	 * User flung a ball. Ball (int), vector X, vector Y (floats).
+	 */
+	/*package*/static final int EVENT_FLING_BALL = 12;
+
+	/**
+	 * Paddle enabled or disabled. Enabled (byte, 1 or 0).
+	 */
+	/*package*/static final int EVENT_PADDLE = 13;
+
+	/**
+	 * Block hits changed. Hits on the first level (int), hits added per level (int).
+	 */
+	/*package*/static final int EVENT_BLOCK_HITS = 14;
+
+	/**
+	 * Explosive block chance changed. Fraction (float).
+	 */
+	/*package*/static final int EVENT_EXPLOSIVES = 15;
+
+	/**
+	 * Power-up block chance changed. Fraction (float).
+	 */
+	/*package*/static final int EVENT_POWER_UPS = 16;
+
+	/**
+	 * Magic number written at the start of a session file ("BWSS").
+	 */
+	/*package*/static final int FILE_MAGIC = 0x42575353;
+
+	/**
+	 * Version of the session file format.
+	 */
+	/*package*/static final int FILE_VERSION = 11;
+
+	/**
+	 * Size (in bytes) after which the simulation starts a fresh session.
+	 */
+	/*package*/static final int MAX_BYTES = 256 * 1024;
+
+	/**
+	 * Initial size (in bytes) of the buffer.
+	 */
+	private static final int INITIAL_BYTES = 16 * 1024;
+
+
+
+	/**
+	 * Seed the simulation was reseeded with when the session began.
+	 */
+	private final long mSeed;
+
+	/**
+	 * Simulation tick on which the session began.
+	 */
+	private final long mStartTick;
+
+	/**
+	 * Snapshot followed by events, big-endian.
+	 */
+	private byte[] mData;
+
+	/**
+	 * Number of bytes used in the buffer.
+	 */
+	private int mSize;
+
+	/**
+	 * Number of events recorded.
+	 */
+	private int mEvents;
+
+
+
+	/**
+	 * Create a new, empty session.
+	 *
+	 * @param seed Seed the simulation is reseeded with.
+	 * @param startTick Simulation tick on which the session begins.
+	 */
+	public SessionRecorder(final long seed, final long startTick) {
+		this.mSeed = seed;
+		this.mStartTick = startTick;
+		this.mData = new byte[SessionRecorder.INITIAL_BYTES];
+	}
+
+
+
+	/**
+	 * Get the seed the session began with.
+	 *
+	 * @return Seed.
+	 */
+	public long getSeed() {
+		return this.mSeed;
+	}
+
+	/**
+	 * Get the simulation tick on which the session began.
+	 *
+	 * @return Tick.
+	 */
+	public long getStartTick() {
+		return this.mStartTick;
+	}
+
+	/**
+	 * Get the number of bytes recorded.
+	 *
+	 * @return Bytes.
+	 */
+	public int getSize() {
+		return this.mSize;
+	}
+
+	/**
+	 * Get the number of events recorded.
+	 *
+	 * @return Events.
+	 */
+	public int getEvents() {
+		return this.mEvents;
+	}
+
+	/**
+	 * Whether or not the session has grown large enough that a fresh one should be started.
+	 *
+	 * @return Boolean.
+	 */
+	public boolean isFull() {
+		return this.mSize >= SessionRecorder.MAX_BYTES;
+	}
+
+	/**
+	 * Begin an event. The event arguments must be written immediately after.
+	 *
+	 * @param tick Simulation tick on which the event is applied.
+	 * @param event Event constant.
+	 */
+	public void event(final long tick, final int event) {
+		this.writeInt((int)(tick - this.mStartTick));
+		this.writeByte(event);
+		this.mEvents += 1;
+	}
+
+	/**
+	 * Append a byte.
+	 *
+	 * @param value Value.
+	 */
+	public void writeByte(final int value) {
+		this.ensure(1);
+		this.mData[this.mSize] = (byte)value;
+		this.mSize += 1;
+	}
+
+	/**
+	 * Append an integer.
+	 *
+	 * @param value Value.
+	 */
+	public void writeInt(final int value) {
+		this.ensure(4);
+		this.mData[this.mSize] = (byte)(value >>> 24);
+		this.mData[this.mSize + 1] = (byte)(value >>> 16);
+		this.mData[this.mSize + 2] = (byte)(value >>> 8);
+		this.mData[this.mSize + 3] = (byte)value;
+		this.mSize += 4;
+	}
+
+	/**
+	 * Append a long.
+	 *
+	 * @param value Value.
+	 */
+	public void writeLong(final long value) {
+		this.writeInt((int)(value >>> 32));
+		this.writeInt((int)value);
+	}
+
+	/**
+	 * Append a float with its exact bits.
+	 *
+	 * @param value Value.
+	 */
+	public void writeFloat(final float value) {
+		this.writeInt(Float.floatToRawIntBits(value));
+	}
+
+	/**
+	 * Grow the buffer if needed.
+	 *
+	 * @param bytes Number of bytes about to be written.
+	 */
+	private void ensure(final int bytes) {
+		if (this.mSize + bytes > this.mData.length) {
+			final byte[] data = new byte[Math.max(this.mData.length * 2, this.mSize + bytes)];
+			System.arraycopy(this.mData, 0, data, 0, this.mSize);
+			this.mData = data;
+		}
+	}
+
+	/**
+	 * Persist the session so it can be replayed.
+	 *
+	 * @param file Destination.
+	 * @param ticks Simulation tick at which the session ends.
+	 * @param checksum State checksum of the simulation at that tick.
+	 * @throws IOException If the file could not be written.
+	 */
+	public void writeTo(final File file, final long ticks, final long checksum) throws IOException {
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(SessionRecorder.FILE_MAGIC);
+			out.writeInt(SessionRecorder.FILE_VERSION);
+			out.writeLong(this.mSeed);
+			out.writeLong(ticks - this.mStartTick);
+			out.writeLong(checksum);
+			out.writeInt(this.mEvents);
+			out.writeInt(this.mSize);
+			out.write(this.mData, 0, this.mSize);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package com.jakewharton.breakoutwallpaper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Command-line runner which plays back a session written by
+ * {@link SessionRecorder} tick-for-tick on a headless {@link Simulation} and
+ * verifies that it ends in exactly the same state as it did on the device.
+ * Replaying a session several times turns it into a benchmark input.
+ *
+ * <pre>
+ * java -cp out com.jakewharton.breakoutwallpaper.SessionReplayer session-0.bin --repeat 10
+ * </pre>
+ */
+public class SessionReplayer {
+	/**
+	 * A session read from disk.
+	 */
+	/*package*/static class Session {
+		long seed;
+		long ticks;
+		long checksum;
+		int events;
+		byte[] data;
+	}
+
+
+
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: SessionReplayer <file> [--repeat count]");
+			System.exit(2);
+		}
+		int repeat = 1;
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			if ("--repeat".equals(args[i])) {
+				repeat = Integer.parseInt(args[i + 1]);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		final Session session = SessionReplayer.read(args[0]);
+		System.out.println("Session seed " + session.seed + ", " + session.ticks + " ticks, " + session.events + " events, " + session.data.length + " bytes");
+
+		boolean matched = true;
+		for (int i = 0; i < repeat; i++) {
+			final Simulation simulation = new Simulation(session.seed);
+			final long start = System.nanoTime();
+			SessionReplayer.replay(session, simulation);
+			final long elapsed = System.nanoTime() - start;
+
+			final Histogram ticks = simulation.getStats().getTick();
+			final long checksum = simulation.checksum();
+			System.out.println("Run " + (i + 1) + ": " + (elapsed / FrameStats.NANOSECONDS_IN_MILLISECOND) + "ms"
+					+ ", " + ((session.ticks * FrameStats.NANOSECONDS_IN_SECOND) / Math.max(1, elapsed)) + " ticks/s"
+					+ ", tick mean " + ticks.getMean() + "ns, p99 " + ticks.getPercentile(0.99f) + "ns, max " + ticks.getMax() + "ns"
+					+ ", checksum " + Long.toHexString(checksum));
+			if (checksum != session.checksum) {
+				matched = false;
+			}
+		}
+
+		if (!matched) {
+			System.out.println("DIVERGED: expected checksum " + Long.toHexString(session.checksum));
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+
+	/**
+	 * Read a session file.
+	 *
+	 * @param path File path.
+	 * @return Session.
+	 * @throws IOException If the file could not be read or is not a session.
+	 */
+	/*package*/static Session read(final String path) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+		try {
+			if (in.readInt() != SessionRecorder.FILE_MAGIC) {
+				throw new IOException("Not a session file: " + path);
+			}
+			final int version = in.readInt();
+			if (version != SessionRecorder.FILE_VERSION) {
+				throw new IOException("Unsupported session version " + version);
+			}
+
+			final Session session = new Session();
+			session.seed = in.readLong();
+			session.ticks = in.readLong();
+			session.checksum = in.readLong();
+			session.events = in.readInt();
+			session.data = new byte[in.readInt()];
+			in.readFully(session.data);
+			return session;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Restore the session snapshot into a simulation and run it to the end
+	 * of the session, applying each event on the tick it was recorded.
+	 *
+	 * @param session Session.
+	 * @param simulation Simulation to replay into.
+	 * @throws IOException If the session data is malformed.
+	 */
+	/*package*/static void replay(final Session session, final Simulation simulation) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(session.data));
+		simulation.readSnapshot(session.seed, in);
+		final long startTick = simulation.getTicks();
+
+		for (int i = 0; i < session.events; i++) {
+			final long tick = startTick + in.readInt();
+			final int event = in.readByte();
+			while (simulation.getTicks() < tick) {
+				simulation.tick();
+			}
+
+			switch (event) {
+				case SessionRecorder.EVENT_LAYOUT:
+					final int iconRows = in.readInt();
+					final int iconCols = in.readInt();
+					final int rowSpacing = in.readInt();
+					final int colSpacing = in.readInt();
+					final int[] widgets = new int[in.readInt()];
+					for (int j = 0; j < widgets.length; j++) {
+						widgets[j] = in.readInt();
+					}
+					simulation.setLayout(iconRows, iconCols, rowSpacing, colSpacing, widgets);
+					break;
+
+				case SessionRecorder.EVENT_BALL_COUNT:
+					simulation.setBallCount(in.readInt());
+					break;
+
+				case SessionRecorder.EVENT_MODE:
+					simulation.setMode(in.readInt());
+					break;
+
+				case SessionRecorder.EVENT_REGEN:
+					simulation.setRegenPercent(in.readFloat());
+					break;
+
+				case SessionRecorder.EVENT_BLOCK_COLOR:
+					final int index = in.readInt();
+					simulation.setBlockColor(index, in.readInt());
+					break;
+
+				case SessionRecorder.EVENT_RESIZE:
+					final int width = in.readInt();
+					simulation.resize(width, in.readInt());
+					break;
+
+				case SessionRecorder.EVENT_NEW_LEVEL:
+					simulation.newLevel();
+					break;
+
+				case SessionRecorder.EVENT_TOUCH:
+					final float x = in.readFloat();
+					simulation.setTouch(x, in.readFloat());
+					break;
+
+				case SessionRecorder.EVENT_BALL_SPEED:
+					simulation.setBallSpeed(in.readFloat());
+					break;
+
+				case SessionRecorder.EVENT_BALL_COLLISIONS:
+					simulation.setBallCollisions(in.readByte() != 0);
+					break;
+
+				case SessionRecorder.EVENT_STEER:
+					final float steerX = in.readFloat();
+					final float steerY = in.readFloat();
+					simulation.steerWithin(steerX, steerY, in.readFloat());
+					break;
+
+				case SessionRecorder.EVENT_STEER_BALL:
+					final int steered = in.readInt();
+					final float towardX = in.readFloat();
+					simulation.steerBall(steered, towardX, in.readFloat());
+					break;
+
+				case SessionRecorder.EVENT_FLING_BALL:
+					final int flung = in.readInt();
+					final float vectorX = in.readFloat();
+					simulation.flingBall(flung, vectorX, in.readFloat());
+					break;
+
+				case SessionRecorder.EVENT_PADDLE:
+					simulation.setPaddle(in.readByte() != 0);
+					break;
+
+				case SessionRecorder.EVENT_BLOCK_HITS:
+					simulation.setBlockHits(in.readInt(), in.readInt());
+					break;
+
+				case SessionRecorder.EVENT_EXPLOSIVES:
+					simulation.setExplosivePercent(in.readFloat());
+					break;
+
+				case SessionRecorder.EVENT_POWER_UPS:
+					simulation.setPowerUpPercent(in.readFloat());
+					break;
+
+				default:
+					throw new IOException("Unknown session event " + event);
+			}
+		}
+
+		while (simulation.getTicks() < startTick + session.ticks) {
+			simulation.tick();
+		}
+	}
+}
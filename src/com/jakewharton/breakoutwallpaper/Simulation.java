@@ -0,0 +1,2518 @@
+package com.jakewharton.breakoutwallpaper;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * The board, balls and rules of the game. This has no dependencies on the
+ * Android framework so it can also be run headless on a desktop JVM.
+ */
+public class Simulation {
+	/**
+	 * Cell value for a blank space.
+	 */
+	/*package*/static final int CELL_BLANK = 0;
+
+	/**
+	 * Block cells between icon rows.
+	 */
+	/*package*/static final int CELLS_BETWEEN_ROW = 2;
+
+	/**
+	 * Block cells between icon columns.
+	 */
+	/*package*/static final int CELLS_BETWEEN_COLUMN = 1;
+
+	/**
+	 * Endless mode.
+	 */
+	/*package*/static final int MODE_ENDLESS = 0;
+
+	/**
+	 * Level mode.
+	 */
+	/*package*/static final int MODE_LEVELS = 1;
+
+	/**
+	 * Descending mode. The blocks move down a row at a time and a new row
+	 * appears at the top.
+	 */
+	/*package*/static final int MODE_DESCENDING = 2;
+
+	/**
+	 * Rules for each mode, indexed by mode constant.
+	 */
+	private static final GameMode[] GAME_MODES = {
+		new EndlessMode(),
+		new LevelsMode(),
+		new DescendingMode(),
+	};
+
+	/**
+	 * Number of block colors.
+	 */
+	/*package*/static final int BLOCK_COLORS = 3;
+
+	/**
+	 * Allowed relative deviation of a ball's speed before it is considered invalid.
+	 */
+	private static final float SPEED_TOLERANCE = 0.001f;
+
+	/**
+	 * Most blocks a single ball can hit in one tick.
+	 */
+	private static final int MAX_HITS_PER_BALL = 3;
+
+	/**
+	 * Distance in cells, horizontally and vertically, an explosion clears around its block.
+	 */
+	/*package*/static final int EXPLOSION_RADIUS = 1;
+
+	/**
+	 * Most explosions set off in one tick. The rest of a chain waits for the following ticks.
+	 */
+	/*package*/static final int MAX_EXPLOSIONS_PER_TICK = 64;
+
+	/**
+	 * Most extra balls power-ups can have in play at once, on top of the ball count.
+	 */
+	/*package*/static final int MAX_EXTRA_BALLS = 32;
+
+	/**
+	 * Extra balls split off the hitting ball by a power-up.
+	 */
+	/*package*/static final int SPLIT_BALLS = 2;
+
+	/**
+	 * Ticks an extra ball stays in play before it is returned to the pool.
+	 */
+	/*package*/static final int EXTRA_BALL_TICKS = 600;
+
+	/**
+	 * Cosine of the angle between a split ball and the ball it split from.
+	 */
+	private static final float SPLIT_COS = (float)StrictMath.cos(Math.PI / 8);
+
+	/**
+	 * Sine of the angle between a split ball and the ball it split from.
+	 */
+	private static final float SPLIT_SIN = (float)StrictMath.sin(Math.PI / 8);
+
+
+
+	/**
+	 * Random number generator owned by this simulation.
+	 */
+	private final FastRandom mRandom;
+
+	/**
+	 * Seed the random number generator was last seeded with.
+	 */
+	private long mSeed;
+
+	/**
+	 * Number of ticks run since creation.
+	 */
+	private long mTicks;
+
+	/**
+	 * Session recording external inputs, or null if not recording.
+	 */
+	private SessionRecorder mSession;
+
+	/**
+	 * Number of cells on the board horizontally.
+	 */
+	private int mCellsWide;
+
+	/**
+	 * Number of cells on the board vertically.
+	 */
+	private int mCellsTall;
+
+	/**
+	 * Number of cells horizontally between the columns.
+	 */
+	private int mCellColumnSpacing;
+
+	/**
+	 * Number of cells vertically between the rows.
+	 */
+	private int mCellRowSpacing;
+
+	/**
+	 * Number of icon rows on the launcher.
+	 */
+	private int mIconRows;
+
+	/**
+	 * Number of icon columns on the launcher.
+	 */
+	private int mIconCols;
+
+	/**
+	 * Widget locations in icons as consecutive left, top, right, bottom values.
+	 */
+	private int[] mWidgets;
+
+	/**
+	 * Width (in pixels) of a single cell.
+	 */
+	private float mCellWidth;
+
+	/**
+	 * Height (in pixels) of a single cell.
+	 */
+	private float mCellHeight;
+
+	/**
+	 * Width (in pixels) of the game board.
+	 */
+	private int mGameWidth;
+
+	/**
+	 * Height (in pixels) of the game board.
+	 */
+	private int mGameHeight;
+
+	/**
+	 * Radius (in pixels) of every ball.
+	 */
+	private float mBallRadius;
+
+	/**
+	 * Distance (in pixels) every ball moves per tick.
+	 */
+	private float mBallSpeed;
+
+	/**
+	 * 2-dimensional array of the board's cells. Rows form a ring starting
+	 * at {@link #mRowBase} so the blocks can move down without copying.
+	 *
+	 * zero == blank
+	 * non-zero == block and represents its color
+	 */
+	private int[][] mBoard;
+
+	/**
+	 * Row of {@link #mBoard} holding the top row of the screen.
+	 */
+	private int mRowBase;
+
+	/**
+	 * Whether or not each cell is under an icon or widget, indexed by row of
+	 * the screen then column. Unlike the board this does not move, and the
+	 * board always holds a blank under a covered cell.
+	 */
+	private boolean[][] mIsCovered;
+
+	/**
+	 * Runs of covered cells along a row whose cells above are not covered,
+	 * the only places a block moving down can move under an icon. Each is
+	 * three consecutive values: row, first column and column past the end.
+	 */
+	private int[] mCoveredEdges;
+
+	/**
+	 * Scratch space for the blank cells, as row of the screen times width
+	 * plus column, which regeneration picks from.
+	 */
+	private int[] mBlankCells;
+
+	/**
+	 * Number of times the rows moved down.
+	 */
+	private long mDescended;
+
+	/**
+	 * Hits each block can still take.
+	 */
+	private final HitPoints mHitPoints;
+
+	/**
+	 * Explosive blocks and the explosions waiting to go off.
+	 */
+	private final Explosives mExplosives;
+
+	/**
+	 * Chance of each new block being explosive.
+	 */
+	private float mExplosivePercent;
+
+	/**
+	 * Most explosions set off in one tick.
+	 */
+	private int mExplosionsPerTick;
+
+	/**
+	 * Balls, including the pooled slots past those in play. Enough said.
+	 */
+	private Ball[] mBalls;
+
+	/**
+	 * Number of balls always in play. Slots past these hold extra balls from power-ups.
+	 */
+	private int mBallCount;
+
+	/**
+	 * Tick each extra ball was put in play.
+	 */
+	private long[] mSpawnTicks;
+
+	/**
+	 * Whether or not each extra ball fell past the paddle this tick.
+	 */
+	private boolean[] mIsLost;
+
+	/**
+	 * Balls which broke a power-up block this tick, split once the tick is over.
+	 */
+	private final int[] mSplits;
+
+	/**
+	 * Number of balls in {@link #mSplits}.
+	 */
+	private int mSplitCount;
+
+	/**
+	 * Chance of a destroyed block splitting the ball which broke it.
+	 */
+	private float mPowerUpPercent;
+
+	/**
+	 * Primitive storage behind the balls.
+	 */
+	private BallStore mBallStore;
+
+	/**
+	 * Board cells each ball will be tested against this tick, {@link BallStore#PROBES_STRIDE} values per ball.
+	 */
+	private int[] mProbes;
+
+	/**
+	 * Random stream of each ball, so balls can be advanced in any order.
+	 */
+	private FastRandom[] mBallRandoms;
+
+	/**
+	 * Cells (row * width + column) hit by each ball this tick, {@link #MAX_HITS_PER_BALL} slots per ball.
+	 */
+	private int[] mHits;
+
+	/**
+	 * Number of cells hit by each ball this tick.
+	 */
+	private int[] mHitCounts;
+
+	/**
+	 * Worker threads advancing balls in parallel, or null to advance them on the calling thread.
+	 */
+	private ParallelTicker mTicker;
+
+	/**
+	 * Grid finding the balls touching one another or near a touch.
+	 */
+	private final BallGrid mBallGrid;
+
+	/**
+	 * Tick whose ball locations {@link #mBallGrid} holds, or -1 if it is out of date.
+	 */
+	private long mBallGridTick;
+
+	/**
+	 * Whether or not balls bounce off one another.
+	 */
+	private boolean mIsBallCollisions;
+
+	/**
+	 * Paddle along the bottom edge, or null if balls bounce off the bottom edge itself.
+	 */
+	private Paddle mPaddle;
+
+	/**
+	 * Colors for blocks.
+	 */
+	private final int[] mBlockColors;
+
+	/**
+	 * Hits each block takes on the first level.
+	 */
+	private int mBlockHits;
+
+	/**
+	 * Hits added to each block for every level cleared.
+	 */
+	private int mBlockHitsPerLevel;
+
+	/**
+	 * Number of blocks remaining in the game.
+	 */
+	private int mBlocksRemaining;
+
+	/**
+	 * Total blocks in a level.
+	 */
+	private int mBlocksTotal;
+
+	/**
+	 * Gameplay mode.
+	 */
+	private int mMode;
+
+	/**
+	 * Rules for {@link #mMode}, or null for a mode which never changes the board.
+	 */
+	private GameMode mGameMode;
+
+	/**
+	 * Percentage at which to regenerate blocks.
+	 */
+	private float mRegenPercent;
+
+	/**
+	 * Number of levels cleared by the balls.
+	 */
+	private long mLevelsCleared;
+
+	/**
+	 * Number of blocks regenerated in endless mode.
+	 */
+	private long mRegenerated;
+
+	/**
+	 * Number of blocks destroyed by the balls.
+	 */
+	private long mBlocksDestroyed;
+
+	/**
+	 * Number of ticks in which at least one ball hit a block.
+	 */
+	private long mCollisionTicks;
+
+	/**
+	 * Number of explosive blocks which have gone off.
+	 */
+	private long mExplosions;
+
+	/**
+	 * Number of extra balls put in play by power-ups.
+	 */
+	private long mSpawned;
+
+	/**
+	 * Number of extra balls returned to the pool.
+	 */
+	private long mDespawned;
+
+	/**
+	 * Timing statistics.
+	 */
+	private final FrameStats mStats;
+
+	/**
+	 * Trace section recorder.
+	 */
+	private final Tracer mTracer;
+
+	/**
+	 * Always-on binary event recorder.
+	 */
+	private final FlightRecorder mRecorder;
+
+	/**
+	 * Tick phase profiler, or null when profiling is disabled.
+	 */
+	private TickProfiler mProfiler;
+
+	/**
+	 * Animation of blocks appearing, or null when nothing is drawn.
+	 */
+	private BlockEffects mEffects;
+
+
+
+	/**
+	 * Create a new simulation with an unpredictable seed.
+	 */
+	public Simulation() {
+		this(System.nanoTime());
+	}
+
+	/**
+	 * Create a new simulation with a fixed seed. Given the same seed and the
+	 * same sequence of calls the simulation will always produce the same result.
+	 *
+	 * @param seed Random seed.
+	 */
+	public Simulation(final long seed) {
+		this(seed, new FastRandom(seed));
+	}
+
+	/**
+	 * Create a new simulation with a specific random number generator.
+	 *
+	 * @param seed Seed the generator was created with.
+	 * @param random Random number generator.
+	 */
+	/*package*/Simulation(final long seed, final FastRandom random) {
+		this.mRandom = random;
+		this.mSeed = seed;
+		this.mBlockColors = new int[Simulation.BLOCK_COLORS];
+		this.mWidgets = new int[0];
+		this.mBoard = new int[0][0];
+		this.mIsCovered = new boolean[0][0];
+		this.mCoveredEdges = new int[0];
+		this.mBlankCells = new int[0];
+		this.mHitPoints = new HitPoints();
+		this.mExplosives = new Explosives();
+		this.mExplosionsPerTick = Simulation.MAX_EXPLOSIONS_PER_TICK;
+		this.mBlockHits = 1;
+		this.mGameMode = Simulation.getGameMode(this.mMode);
+		this.mBallGrid = new BallGrid();
+		this.mBallGridTick = -1;
+		this.mBallSpeed = Ball.SPEED;
+		this.mSplits = new int[Simulation.MAX_EXTRA_BALLS];
+		this.allocateBalls(0);
+
+		this.mStats = new FrameStats();
+		this.mTracer = new Tracer();
+		this.mRecorder = new FlightRecorder();
+	}
+
+
+
+	/**
+	 * Set the launcher layout the board is built around. The board is not
+	 * populated until {@link #newLevel()} is called.
+	 *
+	 * @param iconRows Number of icon rows.
+	 * @param iconCols Number of icon columns.
+	 * @param rowSpacing Number of cells in an icon row.
+	 * @param colSpacing Number of cells in an icon column.
+	 * @param widgets Widget locations in icons as consecutive left, top, right, bottom values.
+	 */
+	public void setLayout(final int iconRows, final int iconCols, final int rowSpacing, final int colSpacing, final int[] widgets) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_LAYOUT);
+			session.writeInt(iconRows);
+			session.writeInt(iconCols);
+			session.writeInt(rowSpacing);
+			session.writeInt(colSpacing);
+			session.writeInt(widgets.length);
+			for (final int widget : widgets) {
+				session.writeInt(widget);
+			}
+		}
+
+		this.mIconRows = iconRows;
+		this.mIconCols = iconCols;
+		this.mCellRowSpacing = rowSpacing;
+		this.mCellColumnSpacing = colSpacing;
+		this.mWidgets = widgets;
+
+		this.mCellsWide = (this.mIconCols * (this.mCellColumnSpacing + Simulation.CELLS_BETWEEN_COLUMN)) + Simulation.CELLS_BETWEEN_COLUMN;
+		this.mCellsTall = (this.mIconRows * (this.mCellRowSpacing + Simulation.CELLS_BETWEEN_ROW)) + Simulation.CELLS_BETWEEN_ROW;
+
+		//Create playing board
+		this.mBoard = new int[this.mCellsTall][this.mCellsWide];
+		this.mBlankCells = new int[this.mCellsTall * this.mCellsWide];
+		this.mRowBase = 0;
+		this.mHitPoints.resize(this.mCellsWide, this.mCellsTall);
+		this.mExplosives.resize(this.mCellsWide, this.mCellsTall);
+		if (this.mEffects != null) {
+			this.mEffects.resize(this.mCellsWide, this.mCellsTall);
+		}
+		this.coverIcons();
+		this.invalidatePaddle();
+	}
+
+	/**
+	 * Mark the cells under icons and widgets and find the top edges of the
+	 * covered areas.
+	 */
+	private void coverIcons() {
+		final int iconCellsWidth = this.mCellColumnSpacing + Simulation.CELLS_BETWEEN_COLUMN;
+		final int iconCellsHeight = this.mCellRowSpacing + Simulation.CELLS_BETWEEN_ROW;
+		this.mIsCovered = new boolean[this.mCellsTall][this.mCellsWide];
+		for (int y = 0; y < this.mCellsTall; y++) {
+			for (int x = 0; x < this.mCellsWide; x++) {
+				final int dx = x % iconCellsWidth;
+				final int dy = y % iconCellsHeight;
+				this.mIsCovered[y][x] = (dx >= Simulation.CELLS_BETWEEN_COLUMN) && (dy >= Simulation.CELLS_BETWEEN_ROW);
+			}
+		}
+		for (int i = 0; i + 3 < this.mWidgets.length; i += 4) {
+			final int left = (this.mWidgets[i] * iconCellsWidth) + Simulation.CELLS_BETWEEN_COLUMN;
+			final int top = (this.mWidgets[i + 1] * iconCellsHeight) + Simulation.CELLS_BETWEEN_ROW;
+			final int right = (this.mWidgets[i + 2] * iconCellsWidth) + Simulation.CELLS_BETWEEN_COLUMN + this.mCellColumnSpacing - 1;
+			final int bottom = (this.mWidgets[i + 3] * iconCellsHeight) + Simulation.CELLS_BETWEEN_ROW + this.mCellRowSpacing - 1;
+			for (int y = top; y <= bottom; y++) {
+				for (int x = left; x <= right; x++) {
+					this.mIsCovered[y][x] = true;
+				}
+			}
+		}
+
+		int edges = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			for (int y = 0; y < this.mCellsTall; y++) {
+				int start = -1;
+				for (int x = 0; x <= this.mCellsWide; x++) {
+					final boolean isEdge = (x < this.mCellsWide) && this.mIsCovered[y][x] && ((y == 0) || !this.mIsCovered[y - 1][x]);
+					if (isEdge && (start < 0)) {
+						start = x;
+					} else if (!isEdge && (start >= 0)) {
+						if (pass == 1) {
+							this.mCoveredEdges[edges] = y;
+							this.mCoveredEdges[edges + 1] = start;
+							this.mCoveredEdges[edges + 2] = x;
+						}
+						edges += 3;
+						start = -1;
+					}
+				}
+			}
+			if (pass == 0) {
+				this.mCoveredEdges = new int[edges];
+				edges = 0;
+			}
+		}
+	}
+
+	/**
+	 * Set the number of balls. Balls are not positioned until the next
+	 * {@link #resize(int, int)}.
+	 *
+	 * @param count Number of balls.
+	 */
+	public void setBallCount(final int count) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_BALL_COUNT);
+			session.writeInt(count);
+		}
+
+		this.allocateBalls(count);
+		this.invalidatePaddle();
+	}
+
+	/**
+	 * Create new balls along with their random streams and hit slots, and a
+	 * pool of {@link #MAX_EXTRA_BALLS} more for power-ups to put in play.
+	 * Pooled balls are reseeded from the ball they split from when put in
+	 * play, so they draw nothing from the simulation's generator here.
+	 *
+	 * @param count Number of balls.
+	 */
+	private void allocateBalls(final int count) {
+		final int capacity = count + Simulation.MAX_EXTRA_BALLS;
+		this.mBallStore = new BallStore(count, capacity);
+		this.mBallCount = count;
+		this.mBalls = new Ball[capacity];
+		this.mBallRandoms = new FastRandom[capacity];
+		for (int i = 0; i < capacity; i++) {
+			this.mBalls[i] = new Ball(this.mBallStore, i);
+			this.mBalls[i].setSpeed(this.mBallSpeed);
+			this.mBalls[i].setRadius(this.mBallRadius);
+			this.mBallRandoms[i] = (i < count) ? this.mRandom.split() : new FastRandom(0);
+		}
+		this.mSpawnTicks = new long[capacity];
+		this.mIsLost = new boolean[capacity];
+		this.mSplitCount = 0;
+		this.mProbes = new int[capacity * BallStore.PROBES_STRIDE];
+		this.mBallGridTick = -1;
+		this.mHits = new int[capacity * Simulation.MAX_HITS_PER_BALL];
+		this.mHitCounts = new int[capacity];
+	}
+
+	/**
+	 * Set the chance of a destroyed block holding a multiball power-up. The
+	 * ball which breaks it splits into {@link #SPLIT_BALLS} more, taken from
+	 * a pool of {@link #MAX_EXTRA_BALLS}. Extra balls go back to the pool
+	 * after {@link #EXTRA_BALL_TICKS}, when they fall past the paddle, or on
+	 * a resize.
+	 *
+	 * @param percent Fraction between 0 and 1.
+	 */
+	public void setPowerUpPercent(final float percent) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_POWER_UPS);
+			session.writeFloat(percent);
+		}
+
+		this.mPowerUpPercent = percent;
+	}
+
+	/**
+	 * Get the number of balls in play, including extra balls from power-ups.
+	 *
+	 * @return Balls.
+	 */
+	public int getBallCount() {
+		return this.mBallStore.size();
+	}
+
+	/**
+	 * Get the number of extra balls put in play by power-ups.
+	 *
+	 * @return Balls.
+	 */
+	public long getSpawned() {
+		return this.mSpawned;
+	}
+
+	/**
+	 * Get the number of extra balls returned to the pool.
+	 *
+	 * @return Balls.
+	 */
+	public long getDespawned() {
+		return this.mDespawned;
+	}
+
+	/**
+	 * Set the distance every ball moves per tick.
+	 *
+	 * @param speed Pixels per tick.
+	 */
+	public void setBallSpeed(final float speed) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_BALL_SPEED);
+			session.writeFloat(speed);
+		}
+
+		this.mBallSpeed = speed;
+		for (final Ball ball : this.mBalls) {
+			ball.setSpeed(speed);
+		}
+		if (this.mPaddle != null) {
+			this.mPaddle.setBallSpeed(speed);
+		}
+	}
+
+	/**
+	 * Get the distance every ball moves per tick.
+	 *
+	 * @return Pixels per tick.
+	 */
+	public float getBallSpeed() {
+		return this.mBallSpeed;
+	}
+
+	/**
+	 * Set the number of threads used to advance the balls each tick. The
+	 * result of every tick is the same regardless of the number of threads.
+	 *
+	 * @param threads Number of threads, including the one calling {@link #tick()}.
+	 */
+	public void setParallelism(final int threads) {
+		if (this.mTicker != null) {
+			this.mTicker.shutdown();
+			this.mTicker = null;
+		}
+		if (threads > 1) {
+			this.mTicker = new ParallelTicker(this, threads);
+		}
+	}
+
+	/**
+	 * Get the number of threads used to advance the balls each tick.
+	 *
+	 * @return Threads.
+	 */
+	public int getParallelism() {
+		return (this.mTicker != null) ? this.mTicker.getThreads() : 1;
+	}
+
+	/**
+	 * Set whether balls bounce off one another. Touching balls are found
+	 * with a {@link BallGrid} every tick and bounced elastically according
+	 * to their radius and mass, after which each keeps its own speed.
+	 *
+	 * @param isBallCollisions Whether or not balls collide.
+	 */
+	public void setBallCollisions(final boolean isBallCollisions) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_BALL_COLLISIONS);
+			session.writeByte(isBallCollisions ? 1 : 0);
+		}
+
+		this.mIsBallCollisions = isBallCollisions;
+	}
+
+	/**
+	 * Get whether balls bounce off one another.
+	 *
+	 * @return Boolean.
+	 */
+	public boolean isBallCollisions() {
+		return this.mIsBallCollisions;
+	}
+
+	/**
+	 * Set whether a paddle guards the bottom edge. The paddle is moved by
+	 * an AI (see {@link Paddle}), and a ball reaching the bottom edge
+	 * anywhere else falls past and is respawned at a random icon.
+	 *
+	 * @param isPaddle Whether or not there is a paddle.
+	 */
+	public void setPaddle(final boolean isPaddle) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_PADDLE);
+			session.writeByte(isPaddle ? 1 : 0);
+		}
+
+		if (isPaddle == (this.mPaddle != null)) {
+			return;
+		}
+		this.mPaddle = isPaddle ? new Paddle(this) : null;
+	}
+
+	/**
+	 * Get the paddle guarding the bottom edge.
+	 *
+	 * @return Paddle, or null if there is none.
+	 */
+	public Paddle getPaddle() {
+		return this.mPaddle;
+	}
+
+	/**
+	 * Set the gameplay mode.
+	 *
+	 * @param mode Mode constant.
+	 */
+	public void setMode(final int mode) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_MODE);
+			session.writeInt(mode);
+		}
+
+		this.mMode = mode;
+		this.mGameMode = Simulation.getGameMode(mode);
+	}
+
+	/**
+	 * Get the gameplay mode.
+	 *
+	 * @return Mode constant.
+	 */
+	public int getMode() {
+		return this.mMode;
+	}
+
+	/**
+	 * Get the rules for a gameplay mode.
+	 *
+	 * @param mode Mode constant.
+	 * @return Rules, or null for an unknown mode.
+	 */
+	private static GameMode getGameMode(final int mode) {
+		if ((mode < 0) || (mode >= Simulation.GAME_MODES.length)) {
+			return null;
+		}
+		return Simulation.GAME_MODES[mode];
+	}
+
+	/**
+	 * Set the fraction of blocks remaining at which endless mode regenerates blocks.
+	 *
+	 * @param percent Fraction between 0 and 1. Values outside are clamped.
+	 */
+	public void setRegenPercent(final float percent) {
+		final float clamped = Math.max(0, Math.min(percent, 1));
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_REGEN);
+			session.writeFloat(clamped);
+		}
+
+		this.mRegenPercent = clamped;
+	}
+
+	/**
+	 * Get the fraction of blocks remaining at which endless mode regenerates blocks.
+	 *
+	 * @return Fraction between 0 and 1.
+	 */
+	public float getRegenPercent() {
+		return this.mRegenPercent;
+	}
+
+	/**
+	 * Set one of the block colors.
+	 *
+	 * @param index Color index.
+	 * @param color Color value.
+	 */
+	public void setBlockColor(final int index, final int color) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_BLOCK_COLOR);
+			session.writeInt(index);
+			session.writeInt(color);
+		}
+
+		this.mBlockColors[index] = color;
+	}
+
+	/**
+	 * Set how many hits blocks take. Blocks already on the board keep their
+	 * hit points; the new values apply from the next level or regenerated
+	 * block.
+	 *
+	 * @param hits Hits each block takes on the first level.
+	 * @param perLevel Hits added to each block for every level cleared.
+	 */
+	public void setBlockHits(final int hits, final int perLevel) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_BLOCK_HITS);
+			session.writeInt(hits);
+			session.writeInt(perLevel);
+		}
+
+		this.mBlockHits = Math.max(1, Math.min(hits, HitPoints.MAX));
+		this.mBlockHitsPerLevel = Math.max(0, Math.min(perLevel, HitPoints.MAX));
+	}
+
+	/**
+	 * Get the hits each new block takes on the current level.
+	 *
+	 * @return Hits between 1 and {@link HitPoints#MAX}.
+	 */
+	public int getLevelHits() {
+		return (int)Math.min(HitPoints.MAX, this.mBlockHits + (this.mBlockHitsPerLevel * this.mLevelsCleared));
+	}
+
+	/**
+	 * Set the chance of each new block being explosive. An explosive block
+	 * destroyed by a ball or another explosion clears every block within
+	 * {@link #EXPLOSION_RADIUS} cells of it. Blocks already on the board are
+	 * unchanged; the new value applies from the next level or regenerated
+	 * block.
+	 *
+	 * @param percent Fraction between 0 and 1.
+	 */
+	public void setExplosivePercent(final float percent) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_EXPLOSIVES);
+			session.writeFloat(percent);
+		}
+
+		this.mExplosivePercent = percent;
+	}
+
+	/**
+	 * Set the most explosions set off in one tick.
+	 *
+	 * @param explosions Explosions.
+	 */
+	/*package*/void setExplosionsPerTick(final int explosions) {
+		this.mExplosionsPerTick = explosions;
+	}
+
+	/**
+	 * Determine whether or not a cell holds an explosive block.
+	 *
+	 * @param x Column.
+	 * @param y Row.
+	 * @return Boolean.
+	 */
+	/*package*/boolean isExplosive(final int x, final int y) {
+		return this.mExplosives.isExplosive(x, this.row(y));
+	}
+
+	/**
+	 * Get the hits a cell can still take.
+	 *
+	 * @param x Column.
+	 * @param y Row.
+	 * @return Hit points, zero for a cell without a block.
+	 */
+	/*package*/int getHitPoints(final int x, final int y) {
+		return this.mHitPoints.get(x, this.row(y));
+	}
+
+	/**
+	 * Get how far a cell's block has grown in.
+	 *
+	 * @param x Column.
+	 * @param y Row.
+	 * @return Fraction between 0 and 1, 1 if it is not animating.
+	 */
+	/*package*/float getGrowth(final int x, final int y) {
+		if (this.mEffects == null) {
+			return 1;
+		}
+		return this.mEffects.getGrowth(x, this.row(y), y);
+	}
+
+	/**
+	 * Get one of the block colors.
+	 *
+	 * @param index Color index.
+	 * @return Color value.
+	 */
+	public int getBlockColor(final int index) {
+		return this.mBlockColors[index];
+	}
+
+	/**
+	 * Get the number of cells on the board horizontally.
+	 *
+	 * @return Cells.
+	 */
+	public int getCellsWide() {
+		return this.mCellsWide;
+	}
+
+	/**
+	 * Get the number of cells on the board vertically.
+	 *
+	 * @return Cells.
+	 */
+	public int getCellsTall() {
+		return this.mCellsTall;
+	}
+
+	/**
+	 * Get the width of a cell.
+	 *
+	 * @return Cell width.
+	 */
+	public float getCellWidth() {
+		return this.mCellWidth;
+	}
+
+	/**
+	 * Get the height of a cell.
+	 *
+	 * @return Cell height.
+	 */
+	public float getCellHeight() {
+		return this.mCellHeight;
+	}
+
+	/**
+	 * Get the width of the game board.
+	 *
+	 * @return Pixels.
+	 */
+	public int getGameWidth() {
+		return this.mGameWidth;
+	}
+
+	/**
+	 * Get the height of the game board.
+	 *
+	 * @return Pixels.
+	 */
+	public int getGameHeight() {
+		return this.mGameHeight;
+	}
+
+	/**
+	 * Get the radius of the balls.
+	 *
+	 * @return Pixels.
+	 */
+	public float getBallRadius() {
+		return this.mBallRadius;
+	}
+
+	/**
+	 * Override the radius of the balls. The radius is normally derived from
+	 * the cell size in {@link #resize(int, int)}.
+	 *
+	 * @param radius Pixels.
+	 */
+	/*package*/void setBallRadius(final float radius) {
+		this.mBallRadius = radius;
+		for (final Ball ball : this.mBalls) {
+			ball.setRadius(radius);
+		}
+	}
+
+	/**
+	 * Get the balls. Only the first {@link #getBallCount()} are in play; the
+	 * rest are pooled.
+	 *
+	 * @return Balls.
+	 */
+	/*package*/Ball[] getBalls() {
+		return this.mBalls;
+	}
+
+	/**
+	 * Get the storage behind the balls.
+	 *
+	 * @return Storage.
+	 */
+	/*package*/BallStore getBallStore() {
+		return this.mBallStore;
+	}
+
+	/**
+	 * Get the cells of one row of the screen, indexed by column.
+	 *
+	 * @param y Row.
+	 * @return Cells.
+	 */
+	/*package*/int[] getRow(final int y) {
+		return this.mBoard[this.row(y)];
+	}
+
+	/**
+	 * Get the number of times the rows moved down.
+	 *
+	 * @return Rows.
+	 */
+	public long getDescended() {
+		return this.mDescended;
+	}
+
+	/**
+	 * Find the row of the board ring holding a row of the screen.
+	 *
+	 * @param y Row of the screen.
+	 * @return Row of {@link #mBoard}.
+	 */
+	private int row(final int y) {
+		final int row = y + this.mRowBase;
+		return (row < this.mCellsTall) ? row : row - this.mCellsTall;
+	}
+
+	/**
+	 * Remove a block from the board.
+	 *
+	 * @param x Column.
+	 * @param y Row.
+	 */
+	/*package*/void clearBlock(final int x, final int y) {
+		final int row = this.row(y);
+		this.mBoard[row][x] = Simulation.CELL_BLANK;
+		this.mHitPoints.set(x, row, 0);
+		this.mExplosives.setExplosive(x, row, false);
+		this.mBlocksRemaining -= 1;
+	}
+
+	/**
+	 * Remove a block destroyed in play, queueing its explosion if it was
+	 * explosive.
+	 *
+	 * @param x Column.
+	 * @param y Row.
+	 */
+	/*package*/void destroyBlock(final int x, final int y) {
+		final int row = this.row(y);
+		if (this.mExplosives.isExplosive(x, row)) {
+			this.mExplosives.enqueue(x, row);
+		}
+		this.clearBlock(x, y);
+		this.mBlocksDestroyed += 1;
+	}
+
+	/**
+	 * Get the number of blocks remaining.
+	 *
+	 * @return Blocks.
+	 */
+	public int getBlocksRemaining() {
+		return this.mBlocksRemaining;
+	}
+
+	/**
+	 * Get the number of blocks in a full level.
+	 *
+	 * @return Blocks.
+	 */
+	public int getBlocksTotal() {
+		return this.mBlocksTotal;
+	}
+
+	/**
+	 * Get the number of levels cleared by the balls.
+	 *
+	 * @return Levels.
+	 */
+	public long getLevelsCleared() {
+		return this.mLevelsCleared;
+	}
+
+	/**
+	 * Get the number of blocks regenerated in endless mode.
+	 *
+	 * @return Blocks.
+	 */
+	public long getRegenerated() {
+		return this.mRegenerated;
+	}
+
+	/**
+	 * Get the number of blocks destroyed by the balls.
+	 *
+	 * @return Blocks.
+	 */
+	public long getBlocksDestroyed() {
+		return this.mBlocksDestroyed;
+	}
+
+	/**
+	 * Get the number of ticks in which at least one ball hit a block.
+	 *
+	 * @return Ticks.
+	 */
+	public long getCollisionTicks() {
+		return this.mCollisionTicks;
+	}
+
+	/**
+	 * Get the number of explosive blocks which have gone off.
+	 *
+	 * @return Explosions.
+	 */
+	public long getExplosions() {
+		return this.mExplosions;
+	}
+
+	/**
+	 * Get the number of explosions waiting for a following tick.
+	 *
+	 * @return Explosions.
+	 */
+	public int getPendingExplosions() {
+		return this.mExplosives.size();
+	}
+
+	/**
+	 * Get the timing statistics.
+	 *
+	 * @return Statistics.
+	 */
+	public FrameStats getStats() {
+		return this.mStats;
+	}
+
+	/**
+	 * Get the trace section recorder.
+	 *
+	 * @return Tracer.
+	 */
+	public Tracer getTracer() {
+		return this.mTracer;
+	}
+
+	/**
+	 * Get the always-on event recorder.
+	 *
+	 * @return Recorder.
+	 */
+	public FlightRecorder getRecorder() {
+		return this.mRecorder;
+	}
+
+	/**
+	 * Get the tick phase profiler.
+	 *
+	 * @return Profiler, or null if profiling is disabled.
+	 */
+	public TickProfiler getProfiler() {
+		return this.mProfiler;
+	}
+
+	/**
+	 * Enable or disable tick phase profiling.
+	 *
+	 * @param profiler Profiler to record into, or null to disable.
+	 */
+	public void setProfiler(final TickProfiler profiler) {
+		this.mProfiler = profiler;
+	}
+
+	/**
+	 * Get the animation of blocks appearing.
+	 *
+	 * @return Effects, or null if blocks appear at once.
+	 */
+	public BlockEffects getEffects() {
+		return this.mEffects;
+	}
+
+	/**
+	 * Enable or disable the animation of blocks appearing. Only what is drawn
+	 * depends on it, so it is neither recorded in sessions nor part of the
+	 * checksum.
+	 *
+	 * @param effects Effects to animate into, or null to disable.
+	 */
+	public void setEffects(final BlockEffects effects) {
+		this.mEffects = effects;
+		if (effects != null) {
+			effects.resize(this.mCellsWide, this.mCellsTall);
+		}
+	}
+
+	/**
+	 * Get the seed the random number generator was last seeded with.
+	 *
+	 * @return Seed.
+	 */
+	public long getSeed() {
+		return this.mSeed;
+	}
+
+	/**
+	 * Get the number of ticks run since creation.
+	 *
+	 * @return Ticks.
+	 */
+	public long getTicks() {
+		return this.mTicks;
+	}
+
+	/**
+	 * Get the session recording external inputs.
+	 *
+	 * @return Session, or null if not recording.
+	 */
+	public SessionRecorder getSession() {
+		return this.mSession;
+	}
+
+	/**
+	 * Begin recording a new session. The random number generator is reseeded
+	 * and the full simulation state is snapshotted so that the session can be
+	 * replayed from this point on. Sessions which grow too large are replaced
+	 * by a fresh one automatically, seeded from the random number generator
+	 * so that the whole run still follows from the first seed.
+	 *
+	 * @param seed Seed to continue with.
+	 * @return Session.
+	 */
+	public SessionRecorder startSession(final long seed) {
+		this.mRandom.setSeed(seed);
+		this.mSeed = seed;
+
+		//Predictions are not part of the snapshot so both sides start without any
+		this.invalidatePaddle();
+		final SessionRecorder session = new SessionRecorder(seed, this.mTicks);
+		this.writeSnapshot(session);
+		this.mSession = session;
+		return session;
+	}
+
+	/**
+	 * Stop recording the current session.
+	 */
+	public void stopSession() {
+		this.mSession = null;
+	}
+
+	/**
+	 * Write the full simulation state.
+	 *
+	 * @param session Destination.
+	 */
+	private void writeSnapshot(final SessionRecorder session) {
+		session.writeLong(this.mTicks);
+		session.writeInt(this.mIconRows);
+		session.writeInt(this.mIconCols);
+		session.writeInt(this.mCellRowSpacing);
+		session.writeInt(this.mCellColumnSpacing);
+		session.writeInt(this.mWidgets.length);
+		for (final int widget : this.mWidgets) {
+			session.writeInt(widget);
+		}
+		session.writeInt(this.mGameWidth);
+		session.writeInt(this.mGameHeight);
+		session.writeFloat(this.mCellWidth);
+		session.writeFloat(this.mCellHeight);
+		session.writeFloat(this.mBallRadius);
+		session.writeFloat(this.mBallSpeed);
+		session.writeInt(this.mMode);
+		session.writeFloat(this.mRegenPercent);
+		session.writeByte(this.mIsBallCollisions ? 1 : 0);
+		session.writeByte((this.mPaddle != null) ? 1 : 0);
+		session.writeFloat((this.mPaddle != null) ? this.mPaddle.getX() : 0);
+		session.writeInt(this.mBlockHits);
+		session.writeInt(this.mBlockHitsPerLevel);
+		session.writeFloat(this.mExplosivePercent);
+		session.writeFloat(this.mPowerUpPercent);
+		for (final int color : this.mBlockColors) {
+			session.writeInt(color);
+		}
+		session.writeInt(this.mBlocksRemaining);
+		session.writeInt(this.mBlocksTotal);
+		session.writeLong(this.mLevelsCleared);
+		session.writeLong(this.mRegenerated);
+		session.writeLong(this.mBlocksDestroyed);
+		session.writeLong(this.mCollisionTicks);
+		session.writeLong(this.mExplosions);
+		session.writeLong(this.mDescended);
+		session.writeLong(this.mSpawned);
+		session.writeLong(this.mDespawned);
+		session.writeInt(this.mBallCount);
+		session.writeInt(this.mBallStore.size());
+		for (int i = 0; i < this.mBallStore.size(); i++) {
+			final Ball ball = this.mBalls[i];
+			session.writeFloat(ball.getLocationX());
+			session.writeFloat(ball.getLocationY());
+			session.writeFloat(ball.getVectorX());
+			session.writeFloat(ball.getVectorY());
+			session.writeFloat(ball.getRadius());
+			session.writeFloat(ball.getMass());
+			session.writeLong(this.mBallRandoms[i].getState());
+			session.writeLong(this.mSpawnTicks[i]);
+		}
+		//Written from the top row of the screen so a restored ring starts at zero
+		for (int y = 0; y < this.mCellsTall; y++) {
+			final int row = this.row(y);
+			for (int x = 0; x < this.mCellsWide; x++) {
+				session.writeInt(this.mBoard[row][x]);
+				session.writeByte(this.mHitPoints.get(x, row));
+				session.writeByte(this.mExplosives.isExplosive(x, row) ? 1 : 0);
+			}
+		}
+		final Explosives explosives = this.mExplosives;
+		session.writeInt(explosives.size());
+		for (int i = 0; i < explosives.size(); i++) {
+			final int cell = explosives.peek(i);
+			final int y = (cell / this.mCellsWide) - this.mRowBase;
+			session.writeInt((((y < 0) ? y + this.mCellsTall : y) * this.mCellsWide) + (cell % this.mCellsWide));
+		}
+	}
+
+	/**
+	 * Restore the full simulation state written at the start of a session
+	 * and reseed with the session seed.
+	 *
+	 * @param seed Session seed.
+	 * @param in Source.
+	 * @throws IOException If the snapshot could not be read.
+	 */
+	/*package*/void readSnapshot(final long seed, final DataInputStream in) throws IOException {
+		this.mTicks = in.readLong();
+		final int iconRows = in.readInt();
+		final int iconCols = in.readInt();
+		final int rowSpacing = in.readInt();
+		final int colSpacing = in.readInt();
+		final int[] widgets = new int[in.readInt()];
+		for (int i = 0; i < widgets.length; i++) {
+			widgets[i] = in.readInt();
+		}
+		this.setLayout(iconRows, iconCols, rowSpacing, colSpacing, widgets);
+		this.mGameWidth = in.readInt();
+		this.mGameHeight = in.readInt();
+		this.mCellWidth = in.readFloat();
+		this.mCellHeight = in.readFloat();
+		this.mBallRadius = in.readFloat();
+		this.mBallSpeed = in.readFloat();
+		this.mMode = in.readInt();
+		this.mGameMode = Simulation.getGameMode(this.mMode);
+		this.mRegenPercent = in.readFloat();
+		this.mIsBallCollisions = (in.readByte() != 0);
+		this.mPaddle = (in.readByte() != 0) ? new Paddle(this) : null;
+		final float paddleX = in.readFloat();
+		if (this.mPaddle != null) {
+			this.mPaddle.setX(paddleX);
+		}
+		this.mBlockHits = in.readInt();
+		this.mBlockHitsPerLevel = in.readInt();
+		this.mExplosivePercent = in.readFloat();
+		this.mPowerUpPercent = in.readFloat();
+		for (int i = 0; i < this.mBlockColors.length; i++) {
+			this.mBlockColors[i] = in.readInt();
+		}
+		this.mBlocksRemaining = in.readInt();
+		this.mBlocksTotal = in.readInt();
+		this.mLevelsCleared = in.readLong();
+		this.mRegenerated = in.readLong();
+		this.mBlocksDestroyed = in.readLong();
+		this.mCollisionTicks = in.readLong();
+		this.mExplosions = in.readLong();
+		this.mDescended = in.readLong();
+		this.mSpawned = in.readLong();
+		this.mDespawned = in.readLong();
+		this.allocateBalls(in.readInt());
+		final int balls = in.readInt();
+		for (int i = 0; i < balls; i++) {
+			if (i >= this.mBallCount) {
+				this.mBallStore.acquire();
+			}
+			this.mBalls[i].restore(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+			this.mBalls[i].setRadius(in.readFloat());
+			this.mBalls[i].setMass(in.readFloat());
+			this.mBallRandoms[i].setSeed(in.readLong());
+			this.mSpawnTicks[i] = in.readLong();
+		}
+		for (int y = 0; y < this.mCellsTall; y++) {
+			for (int x = 0; x < this.mCellsWide; x++) {
+				this.mBoard[y][x] = in.readInt();
+				this.mHitPoints.set(x, y, in.readByte());
+				this.mExplosives.setExplosive(x, y, in.readByte() != 0);
+			}
+		}
+		final int pending = in.readInt();
+		for (int i = 0; i < pending; i++) {
+			final int cell = in.readInt();
+			this.mExplosives.enqueue(cell % this.mCellsWide, cell / this.mCellsWide);
+		}
+
+		//Reseed last since creating the balls draws from the generator
+		this.mRandom.setSeed(seed);
+		this.mSeed = seed;
+	}
+
+	/**
+	 * Compute a checksum of the board and balls. Two simulations which have
+	 * stayed in step will always have the same checksum.
+	 *
+	 * @return Checksum.
+	 */
+	public long checksum() {
+		long hash = this.mBlocksRemaining;
+		hash = (hash * 31) + this.mLevelsCleared;
+		hash = (hash * 31) + this.mRegenerated;
+		if (this.mPaddle != null) {
+			hash = (hash * 31) + Float.floatToRawIntBits(this.mPaddle.getX());
+		}
+		for (int i = 0; i < this.mBallStore.size(); i++) {
+			final Ball ball = this.mBalls[i];
+			hash = (hash * 31) + Float.floatToRawIntBits(ball.getLocationX());
+			hash = (hash * 31) + Float.floatToRawIntBits(ball.getLocationY());
+			hash = (hash * 31) + Float.floatToRawIntBits(ball.getVectorX());
+			hash = (hash * 31) + Float.floatToRawIntBits(ball.getVectorY());
+		}
+		for (int y = 0; y < this.mCellsTall; y++) {
+			final int row = this.row(y);
+			for (int x = 0; x < this.mCellsWide; x++) {
+				hash = (hash * 31) + this.mBoard[row][x];
+				hash = (hash * 31) + this.mHitPoints.get(x, row);
+				hash = (hash * 31) + (this.mExplosives.isExplosive(x, row) ? 1 : 0);
+			}
+		}
+		hash = (hash * 31) + this.mExplosives.size();
+		return hash;
+	}
+
+	/**
+	 * Determine whether or not a position is a valid cell.
+	 *
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return Boolean.
+	 */
+	/*package*/boolean isCell(final int x, final int y) {
+		return (x >= 0) && (x < this.mCellsWide)
+			&& (y >= 0) && (y < this.mCellsTall)
+			&& !this.mIsCovered[y][x];
+	}
+
+	/**
+	 * Determine whether or not a position contains a block.
+	 *
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return Boolean.
+	 */
+	/*package*/boolean isBlock(final int x, final int y) {
+		return this.isCell(x, y) && (this.mBoard[this.row(y)][x] != Simulation.CELL_BLANK);
+	}
+
+	/**
+	 * Count the blocks on the board from scratch.
+	 *
+	 * @return Blocks.
+	 */
+	public int countBlocks() {
+		int blocks = 0;
+		for (final int[] row : this.mBoard) {
+			for (final int cell : row) {
+				if (cell != Simulation.CELL_BLANK) {
+					blocks += 1;
+				}
+			}
+		}
+		return blocks;
+	}
+
+	/**
+	 * Check that the simulation is in a consistent state: the remaining block
+	 * count and hit points match the board, and every ball
+	 * has a finite vector of the correct speed and is inside the game area
+	 * (allowing for one step of overshoot at the edges).
+	 *
+	 * @return Description of the first violation found, or null if consistent.
+	 */
+	public String checkInvariants() {
+		final int blocks = this.countBlocks();
+		if (blocks != this.mBlocksRemaining) {
+			return "Blocks remaining is " + this.mBlocksRemaining + " but board has " + blocks;
+		}
+		for (int y = 0; y < this.mCellsTall; y++) {
+			final int row = this.row(y);
+			for (int x = 0; x < this.mCellsWide; x++) {
+				final int hitPoints = this.mHitPoints.get(x, row);
+				if (this.isBlock(x, y) ? (hitPoints == 0) : (hitPoints != 0)) {
+					return "Cell (" + x + ", " + y + ") has " + hitPoints + " hit points";
+				}
+				if (!this.isBlock(x, y) && this.mExplosives.isExplosive(x, row)) {
+					return "Cell (" + x + ", " + y + ") is explosive without a block";
+				}
+				if (this.mIsCovered[y][x] && (this.mBoard[row][x] != Simulation.CELL_BLANK)) {
+					return "Cell (" + x + ", " + y + ") has a block under an icon";
+				}
+			}
+		}
+
+		final BallStore store = this.mBallStore;
+		if ((store.size() < this.mBallCount) || (store.size() > this.mBallCount + Simulation.MAX_EXTRA_BALLS)) {
+			return "Ball count " + store.size() + " is outside " + this.mBallCount + " to " + (this.mBallCount + Simulation.MAX_EXTRA_BALLS);
+		}
+		for (int i = this.mBallCount; i < store.size(); i++) {
+			if (this.mTicks - this.mSpawnTicks[i] > Simulation.EXTRA_BALL_TICKS) {
+				return "Extra ball " + i + " outlived its " + Simulation.EXTRA_BALL_TICKS + " ticks";
+			}
+		}
+
+		final float slop = this.mBallSpeed + this.mBallRadius;
+		for (int i = 0; i < store.size(); i++) {
+			final Ball ball = this.mBalls[i];
+			final float x = ball.getLocationX();
+			final float y = ball.getLocationY();
+			if (Float.isNaN(x) || Float.isNaN(y) || Float.isNaN(ball.getVectorX()) || Float.isNaN(ball.getVectorY())) {
+				return "Ball " + i + " is NaN at (" + x + ", " + y + ") moving (" + ball.getVectorX() + ", " + ball.getVectorY() + ")";
+			}
+			final float speed = (float)Math.sqrt((ball.getVectorX() * ball.getVectorX()) + (ball.getVectorY() * ball.getVectorY()));
+			if (Math.abs(speed - this.mBallSpeed) > this.mBallSpeed * Simulation.SPEED_TOLERANCE) {
+				return "Ball " + i + " has speed " + speed + " moving (" + ball.getVectorX() + ", " + ball.getVectorY() + ")";
+			}
+			if ((x < -slop) || (x > this.mGameWidth + slop) || (y < -slop) || (y > this.mGameHeight + slop)) {
+				return "Ball " + i + " escaped to (" + x + ", " + y + ") of " + this.mGameWidth + "x" + this.mGameHeight;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Manipulate a ball direction based on a user touch. The ball nearest
+	 * the touch heads towards it.
+	 *
+	 * @param x X coordinate of touch.
+	 * @param y Y coordinate of touch.
+	 */
+	public void setTouch(final float x, final float y) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_TOUCH);
+			session.writeFloat(x);
+			session.writeFloat(y);
+		}
+
+		final int closest = this.findNearestBall(x, y);
+		if (closest >= 0) {
+			this.steer(closest, x, y);
+		}
+		this.mRecorder.record(FlightRecorder.EVENT_TOUCH, (long)x, (long)y);
+	}
+
+	/**
+	 * Find the ball nearest a point.
+	 *
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return Ball index or -1 if there are no balls.
+	 */
+	public int findNearestBall(final float x, final float y) {
+		return this.getBallGrid().findNearest(this.mBallStore, x, y);
+	}
+
+	/**
+	 * Point a single ball at a user touch, as when dragging it.
+	 *
+	 * @param ball Ball index. Ignored if there is no longer such a ball.
+	 * @param x X coordinate of touch.
+	 * @param y Y coordinate of touch.
+	 */
+	public void steerBall(final int ball, final float x, final float y) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_STEER_BALL);
+			session.writeInt(ball);
+			session.writeFloat(x);
+			session.writeFloat(y);
+		}
+
+		if ((ball >= 0) && (ball < this.mBallStore.size())) {
+			this.steer(ball, x, y);
+		}
+	}
+
+	/**
+	 * Send a single ball in the direction of a user fling. Its speed does
+	 * not change.
+	 *
+	 * @param ball Ball index. Ignored if there is no longer such a ball.
+	 * @param vectorX Horizontal fling velocity.
+	 * @param vectorY Vertical fling velocity.
+	 */
+	public void flingBall(final int ball, final float vectorX, final float vectorY) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_FLING_BALL);
+			session.writeInt(ball);
+			session.writeFloat(vectorX);
+			session.writeFloat(vectorY);
+		}
+
+		if ((ball >= 0) && (ball < this.mBallStore.size())) {
+			this.mBalls[ball].setVector(vectorX, vectorY);
+		}
+		this.mRecorder.record(FlightRecorder.EVENT_FLING, ball, (long)Math.sqrt(((double)vectorX * vectorX) + ((double)vectorY * vectorY)));
+	}
+
+	/**
+	 * Manipulate the direction of every ball within a distance of a user
+	 * touch. Each heads towards the touch.
+	 *
+	 * @param x X coordinate of touch.
+	 * @param y Y coordinate of touch.
+	 * @param radius Distance from the touch.
+	 */
+	public void steerWithin(final float x, final float y, final float radius) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_STEER);
+			session.writeFloat(x);
+			session.writeFloat(y);
+			session.writeFloat(radius);
+		}
+
+		final BallGrid grid = this.getBallGrid();
+		final int found = grid.findWithin(this.mBallStore, x, y, radius);
+		final int[] balls = grid.getFound();
+		for (int n = 0; n < found; n++) {
+			this.steer(balls[n], x, y);
+		}
+		this.mRecorder.record(FlightRecorder.EVENT_STEER, found, (long)radius);
+	}
+
+	/**
+	 * Point a ball at a location.
+	 *
+	 * @param ball Ball index.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 */
+	private void steer(final int ball, final float x, final float y) {
+		final Ball steered = this.mBalls[ball];
+		steered.setVector(x - steered.getLocationX(), y - steered.getLocationY());
+	}
+
+	/**
+	 * Get the grid holding every ball at its current location, sorting the
+	 * balls into it first unless that was already done this tick. Changing
+	 * a ball's vector does not move it so a grid stays valid for any number
+	 * of touches between two ticks.
+	 *
+	 * @return Grid.
+	 */
+	private BallGrid getBallGrid() {
+		if (this.mBallGridTick != this.mTicks) {
+			this.mBallGrid.rebuild(this.mBallStore, this.mGameWidth, this.mGameHeight);
+			this.mBallGridTick = this.mTicks;
+		}
+		return this.mBallGrid;
+	}
+
+	/**
+	 * Reset the game state to that of first initialization.
+	 */
+	public void newLevel() {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_NEW_LEVEL);
+		}
+
+		this.populateLevel();
+	}
+
+	/**
+	 * Count the level as cleared and fill the board with a fresh one.
+	 */
+	/*package*/void clearLevel() {
+		this.mLevelsCleared += 1;
+		this.populateLevel();
+	}
+
+	/**
+	 * Place blocks in random blank cells. The blank cells are gathered in
+	 * one pass and the blocks placed in the first of them after a partial
+	 * shuffle, so the cost does not grow as the board fills up.
+	 *
+	 * @param count Number of blocks to place.
+	 * @return Number of blocks placed, less than the count if there were not
+	 * enough blank cells.
+	 */
+	/*package*/int regenerate(final int count) {
+		final int[] blanks = this.mBlankCells;
+		int available = 0;
+		for (int y = 0; y < this.mCellsTall; y++) {
+			final int[] cells = this.mBoard[this.row(y)];
+			final boolean[] covered = this.mIsCovered[y];
+			for (int x = 0; x < this.mCellsWide; x++) {
+				if (!covered[x] && (cells[x] == Simulation.CELL_BLANK)) {
+					blanks[available] = (y * this.mCellsWide) + x;
+					available += 1;
+				}
+			}
+		}
+
+		final int placed = Math.min(count, available);
+		if (placed < count) {
+			this.mRecorder.anomaly(FlightRecorder.EVENT_REGEN_SHORT, count, available);
+		}
+
+		final int colors = this.mBlockColors.length;
+		final int hits = this.getLevelHits();
+		for (int i = 0; i < placed; i++) {
+			//Partial Fisher-Yates shuffle: swap a random remaining cell into place
+			final int pick = i + this.mRandom.nextInt(available - i);
+			final int cell = blanks[pick];
+			blanks[pick] = blanks[i];
+			blanks[i] = cell;
+
+			final int x = cell % this.mCellsWide;
+			final int y = cell / this.mCellsWide;
+			final int row = this.row(y);
+			this.mBoard[row][x] = this.mBlockColors[(x + y) % colors];
+			this.mHitPoints.set(x, row, hits);
+			if ((this.mExplosivePercent > 0) && (this.mRandom.nextFloat() < this.mExplosivePercent)) {
+				this.mExplosives.setExplosive(x, row, true);
+			}
+			if (this.mPaddle != null) {
+				this.mPaddle.onBlockAdded(x, y);
+			}
+			if (this.mEffects != null) {
+				this.mEffects.add(x, row);
+			}
+		}
+		this.mBlocksRemaining += placed;
+		this.mRegenerated += placed;
+
+		if (this.mProfiler != null) {
+			this.mProfiler.onRegen(placed, this.mCellsWide * this.mCellsTall);
+		}
+		return placed;
+	}
+
+	/**
+	 * Fill the board with a fresh set of blocks.
+	 */
+	private void populateLevel() {
+		this.mTracer.begin(Tracer.SECTION_NEW_LEVEL);
+		final long start = System.nanoTime();
+
+		//Initialize board
+		final int iconCellsWidth = this.mCellColumnSpacing + Simulation.CELLS_BETWEEN_COLUMN;
+		final int iconCellsHeight = this.mCellRowSpacing + Simulation.CELLS_BETWEEN_ROW;
+		final int colors = this.mBlockColors.length;
+		final int hits = this.getLevelHits();
+		this.mExplosives.clear();
+		this.mRowBase = 0;
+		for (int y = 0; y < this.mCellsTall; y++) {
+			for (int x = 0; x < this.mCellsWide; x++) {
+				final int dx = x % iconCellsWidth;
+				final int dy = y % iconCellsHeight;
+				if ((dx < Simulation.CELLS_BETWEEN_COLUMN) || (dy < Simulation.CELLS_BETWEEN_ROW)) {
+					this.mBoard[y][x] = this.mBlockColors[(x + y) % colors];
+					this.mHitPoints.set(x, y, hits);
+					if ((this.mExplosivePercent > 0) && (this.mRandom.nextFloat() < this.mExplosivePercent)) {
+						this.mExplosives.setExplosive(x, y, true);
+					}
+				} else {
+					this.mBoard[y][x] = Simulation.CELL_BLANK;
+					this.mHitPoints.set(x, y, 0);
+				}
+			}
+		}
+
+		//Remove board under widgets
+		for (int i = 0; i + 3 < this.mWidgets.length; i += 4) {
+			final int left = (this.mWidgets[i] * iconCellsWidth) + Simulation.CELLS_BETWEEN_COLUMN;
+			final int top = (this.mWidgets[i + 1] * iconCellsHeight) + Simulation.CELLS_BETWEEN_ROW;
+			final int right = (this.mWidgets[i + 2] * iconCellsWidth) + Simulation.CELLS_BETWEEN_COLUMN + this.mCellColumnSpacing - 1;
+			final int bottom = (this.mWidgets[i + 3] * iconCellsHeight) + Simulation.CELLS_BETWEEN_ROW + this.mCellRowSpacing - 1;
+			for (int y = top; y <= bottom; y++) {
+				for (int x = left; x <= right; x++) {
+					this.mBoard[y][x] = Simulation.CELL_BLANK;
+					this.mHitPoints.set(x, y, 0);
+					this.mExplosives.setExplosive(x, y, false);
+				}
+			}
+		}
+
+		//Count blocks
+		this.mBlocksRemaining = this.countBlocks();
+		this.mBlocksTotal = this.mBlocksRemaining;
+		this.invalidatePaddle();
+		if (this.mEffects != null) {
+			this.mEffects.startSweep();
+		}
+
+		this.mStats.getNewLevel().record(System.nanoTime() - start);
+		this.mRecorder.record(FlightRecorder.EVENT_NEW_LEVEL, this.mBlocksTotal, this.mWidgets.length / 4);
+		this.mTracer.end(Tracer.SECTION_NEW_LEVEL);
+	}
+
+	/**
+	 * Move every block down a row and fill a new row at the top. The bottom
+	 * row of the ring becomes the top one, so no rows are copied. Blocks
+	 * moving off the bottom are dropped, as are explosions waiting there.
+	 * Icons and widgets stay put on the screen, so blocks moving under one
+	 * are dropped too. Only the top edge of each covered area can receive
+	 * one, so a step costs one pass over the new row and those edges rather
+	 * than over the board.
+	 */
+	/*package*/void descend() {
+		final int cellsWide = this.mCellsWide;
+		final int cellsTall = this.mCellsTall;
+		if (cellsTall == 0) {
+			return;
+		}
+
+		//Drop the bottom row and reuse it as the top row
+		final int bottom = this.row(cellsTall - 1);
+		final int[] top = this.mBoard[bottom];
+		for (int x = 0; x < cellsWide; x++) {
+			if (top[x] != Simulation.CELL_BLANK) {
+				this.mBlocksRemaining -= 1;
+			}
+		}
+		this.mExplosives.dropRow(bottom);
+		if (this.mEffects != null) {
+			this.mEffects.dropRow(bottom);
+		}
+		this.mRowBase = bottom;
+		this.mDescended += 1;
+
+		//Fill it, continuing the diagonal color stripes of a new level
+		final int[] blockColors = this.mBlockColors;
+		final int hits = this.getLevelHits();
+		final boolean isExplosives = (this.mExplosivePercent > 0);
+		int color = (int)((blockColors.length - (this.mDescended % blockColors.length)) % blockColors.length);
+		for (int x = 0; x < cellsWide; x++) {
+			top[x] = blockColors[color];
+			color = (color + 1 < blockColors.length) ? color + 1 : 0;
+			this.mHitPoints.set(x, bottom, hits);
+			this.mExplosives.setExplosive(x, bottom, isExplosives && (this.mRandom.nextFloat() < this.mExplosivePercent));
+		}
+		this.mBlocksRemaining += cellsWide;
+
+		//Drop blocks which moved under an icon
+		final int[] edges = this.mCoveredEdges;
+		for (int i = 0; i < edges.length; i += 3) {
+			final int row = this.row(edges[i]);
+			final int[] cells = this.mBoard[row];
+			for (int x = edges[i + 1], end = edges[i + 2]; x < end; x++) {
+				if (cells[x] != Simulation.CELL_BLANK) {
+					cells[x] = Simulation.CELL_BLANK;
+					this.mHitPoints.set(x, row, 0);
+					this.mExplosives.setExplosive(x, row, false);
+					this.mBlocksRemaining -= 1;
+				}
+			}
+		}
+
+		this.invalidatePaddle();
+		this.mRecorder.record(FlightRecorder.EVENT_DESCEND, this.mRowBase, this.mBlocksRemaining);
+	}
+
+	/**
+	 * Resize the game board and reset all balls according to a new game area.
+	 *
+	 * @param gameWidth New width (in pixels) of the game area.
+	 * @param gameHeight New height (in pixels) of the game area.
+	 */
+	public void resize(final int gameWidth, final int gameHeight) {
+		final SessionRecorder session = this.mSession;
+		if (session != null) {
+			session.event(this.mTicks, SessionRecorder.EVENT_RESIZE);
+			session.writeInt(gameWidth);
+			session.writeInt(gameHeight);
+		}
+
+		this.releaseExtraBalls();
+		this.mGameWidth = gameWidth;
+		this.mGameHeight = gameHeight;
+
+		this.mBallGridTick = -1;
+
+		//Update cell size
+		this.mCellWidth = this.mGameWidth / (this.mCellsWide * 1.0f);
+		this.mCellHeight = this.mGameHeight / (this.mCellsTall * 1.0f);
+
+		//Set ball radius
+		this.mBallRadius = ((this.mCellWidth < this.mCellHeight) ? this.mCellWidth : this.mCellHeight) * Ball.SIZE_PERCENTAGE / 2;
+		for (final Ball ball : this.mBalls) {
+			ball.setRadius(this.mBallRadius);
+		}
+
+		//Position balls
+		if (this.mBallCount > 0) {
+			this.placeBallAtIcon(this.mBalls[0], 0, 0);
+			this.mBalls[0].setVector(0, -1);
+		}
+		if (this.mBallCount > 1) {
+			this.placeBallAtIcon(this.mBalls[1], this.mIconCols - 1, this.mIconRows - 1);
+			this.mBalls[1].setVector(0, 1);
+		}
+		if (this.mBallCount > 2) {
+			this.placeBallAtIcon(this.mBalls[2], this.mIconCols - 1, 0);
+			this.mBalls[2].setVector(1, 0);
+		}
+		if (this.mBallCount > 3) {
+			this.placeBallAtIcon(this.mBalls[3], 0, this.mIconRows - 1);
+			this.mBalls[3].setVector(-1, 0);
+		}
+
+		if (this.mPaddle != null) {
+			this.mPaddle.resize(this.mGameWidth, this.mBallSpeed);
+		}
+
+		this.mRecorder.record(FlightRecorder.EVENT_RESIZE, this.mGameWidth, this.mGameHeight);
+	}
+
+	/**
+	 * Drop every paddle prediction. Must be called when the board or
+	 * layout change other than by adding a single block.
+	 */
+	private void invalidatePaddle() {
+		if (this.mPaddle != null) {
+			this.mPaddle.invalidate();
+		}
+	}
+
+	/**
+	 * Move a ball to the center of an icon position.
+	 *
+	 * @param ball Ball to move.
+	 * @param x Icon column.
+	 * @param y Icon row.
+	 */
+	private void placeBallAtIcon(final Ball ball, final int x, final int y) {
+		ball.setLocation(
+				((this.mCellColumnSpacing * x) + (Simulation.CELLS_BETWEEN_COLUMN * (x + 1)) + (this.mCellColumnSpacing / 2.0f)) * this.mCellWidth,
+				((this.mCellRowSpacing * y) + (Simulation.CELLS_BETWEEN_ROW * (y + 1)) + (this.mCellRowSpacing / 2.0f)) * this.mCellHeight
+		);
+	}
+
+	/**
+	 * Iterate all entities one step. Balls are first moved and bounced
+	 * against the board as it stood at the start of the tick, then the
+	 * blocks they hit are removed in ball order. A block hit by two balls in
+	 * the same tick bounces both and is removed once. Because no ball sees
+	 * another's changes during the first phase it can be split across
+	 * threads (see {@link #setParallelism(int)}) without changing the result.
+	 */
+	public void tick() {
+		this.mTracer.begin(Tracer.SECTION_TICK);
+		final long start = System.nanoTime();
+		final TickProfiler profiler = this.mProfiler;
+		final boolean isExtraBalls = (this.mBallStore.size() > this.mBallCount);
+		final int balls = this.mBallStore.size();
+
+		if (this.mPaddle != null) {
+			final long paddleStart = (profiler != null) ? System.nanoTime() : 0;
+			this.mPaddle.update();
+			if (profiler != null) {
+				profiler.lap(TickProfiler.PHASE_PADDLE, paddleStart, balls);
+			}
+		}
+
+		if (this.mTicker != null) {
+			this.mTicker.run();
+		} else {
+			this.advanceBalls(0, balls, profiler);
+		}
+		long mark = (profiler != null) ? System.nanoTime() : 0;
+
+		if (this.mIsBallCollisions) {
+			this.collideBalls();
+		}
+
+		//Take a hit point from each hit block in ball order, removing those left with none
+		boolean isAnyHit = false;
+		for (int i = 0; i < balls; i++) {
+			final int hits = this.mHitCounts[i];
+			for (int j = 0; j < hits; j++) {
+				final int cell = this.mHits[(i * Simulation.MAX_HITS_PER_BALL) + j];
+				final int x = cell % this.mCellsWide;
+				final int y = cell / this.mCellsWide;
+				if (this.isBlock(x, y) && (this.mHitPoints.hit(x, this.row(y)) == 0)) {
+					this.destroyBlock(x, y);
+					if ((this.mPowerUpPercent > 0) && (this.mRandom.nextFloat() < this.mPowerUpPercent) && (this.mSplitCount < this.mSplits.length)) {
+						this.mSplits[this.mSplitCount] = i;
+						this.mSplitCount += 1;
+					}
+				}
+			}
+			if (hits > 0) {
+				isAnyHit = true;
+			}
+			if (profiler != null) {
+				profiler.onHits(hits);
+			}
+		}
+		if (isAnyHit) {
+			this.mCollisionTicks += 1;
+		}
+
+		if (profiler != null) {
+			mark = profiler.lap(TickProfiler.PHASE_COLLISION, mark, 0);
+		}
+
+		if (this.mExplosives.size() > 0) {
+			final int explosions = this.explode();
+			if (profiler != null) {
+				mark = profiler.lap(TickProfiler.PHASE_EXPLODE, mark, explosions);
+			}
+		}
+
+		final GameMode mode = this.mGameMode;
+		if (mode != null) {
+			final int changes = mode.update(this);
+			if (profiler != null) {
+				mark = profiler.lap(TickProfiler.PHASE_MODE, mark, changes);
+			}
+		}
+
+		//Whatever the mode, a board without blocks is never left empty
+		if (this.mBlocksRemaining <= 0) {
+			this.clearLevel();
+		}
+
+		if (profiler != null) {
+			profiler.lap(TickProfiler.PHASE_MODE, mark, 0);
+			profiler.onTick();
+		}
+
+		if (this.mEffects != null) {
+			this.mEffects.tick();
+		}
+		this.mTicks += 1;
+		if ((this.mSplitCount > 0) || isExtraBalls) {
+			this.updateExtraBalls();
+		}
+
+		this.mStats.getTick().record(System.nanoTime() - start);
+		this.mTracer.end(Tracer.SECTION_TICK);
+
+		//Roll over outside the timed tick, seeded from the run itself so it stays reproducible
+		if ((this.mSession != null) && this.mSession.isFull()) {
+			this.startSession(this.mRandom.nextLong());
+		}
+	}
+
+	/**
+	 * Move a range of balls one step and bounce them off the screen edges
+	 * and blocks. The board is only read, and each ball only touches its own
+	 * state, random stream and hit slots, so disjoint ranges may be advanced
+	 * concurrently. Movement and probe cell lookup run as bulk passes over
+	 * the ball storage; bounces, which branch, run per ball.
+	 *
+	 * @param from First ball index (inclusive).
+	 * @param to Last ball index (exclusive).
+	 * @param profiler Profiler to record phases into, or null.
+	 */
+	/*package*/void advanceBalls(final int from, final int to, final TickProfiler profiler) {
+		long mark = (profiler != null) ? System.nanoTime() : 0;
+
+		this.mBallStore.integrate(from, to);
+
+		if (profiler != null) {
+			mark = profiler.lap(TickProfiler.PHASE_INTEGRATE, mark, to - from);
+		}
+
+		//Test screen edges, pulling the ball back on to the screen so a
+		//block bounce in the same tick cannot carry it further out
+		final Paddle paddle = this.mPaddle;
+		for (int i = from; i < to; i++) {
+			final Ball ball = this.mBalls[i];
+			final FastRandom random = this.mBallRandoms[i];
+			if (ball.getLocationX() <= 0) {
+				ball.setLocation(0, ball.getLocationY());
+				ball.setVector(Math.abs(ball.getVectorX()), ball.getVectorY() + random.nextFloat());
+			} else if (ball.getLocationX() >= this.mGameWidth) {
+				ball.setLocation(this.mGameWidth, ball.getLocationY());
+				ball.setVector(-Math.abs(ball.getVectorX()), ball.getVectorY() + random.nextFloat());
+			}
+			if (ball.getLocationY() <= 0) {
+				ball.setLocation(ball.getLocationX(), 0);
+				ball.setVector(ball.getVectorX() + random.nextFloat(), Math.abs(ball.getVectorY()));
+			} else if (ball.getLocationY() >= this.mGameHeight) {
+				if (paddle == null) {
+					ball.setLocation(ball.getLocationX(), this.mGameHeight);
+					ball.setVector(ball.getVectorX() + random.nextFloat(), -Math.abs(ball.getVectorY()));
+				} else if (paddle.covers(ball.getLocationX(), this.mBallRadius)) {
+					ball.setLocation(ball.getLocationX(), this.mGameHeight);
+					ball.setVector(paddle.deflect(ball.getLocationX(), this.mBallRadius), -1);
+					paddle.onLanded(i, true);
+				} else {
+					//Fell past the paddle so start again from a random icon
+					this.placeBallAtIcon(ball, random.nextInt(Math.max(1, this.mIconCols)), random.nextInt(Math.max(1, this.mIconRows)));
+					ball.setVector(random.nextFloat() - 0.5f, -1);
+					paddle.onLanded(i, false);
+					if (i >= this.mBallCount) {
+						this.mIsLost[i] = true;
+					}
+				}
+			}
+		}
+
+		if (profiler != null) {
+			mark = profiler.lap(TickProfiler.PHASE_WALLS, mark, to - from);
+		}
+
+		//Test blocks
+		final int[] probes = this.mProbes;
+		final int base = from * BallStore.PROBES_STRIDE;
+		this.mBallStore.probeCells(from, to, this.mBallRadius, this.mCellWidth, this.mCellHeight, probes, base);
+		for (int i = from; i < to; i++) {
+			this.mHitCounts[i] = this.collide(i, probes, i * BallStore.PROBES_STRIDE);
+		}
+
+		if (profiler != null) {
+			profiler.lap(TickProfiler.PHASE_COLLISION, mark, (to - from) * 3);
+		}
+	}
+
+	/**
+	 * Find which of a ball's probe cells hold a block its circle actually
+	 * touches, record them as hits and bounce the ball once off all of them
+	 * together. Each contact's normal points from the closest point on the
+	 * block's rectangle to the ball's center, so a flat run of blocks acts as
+	 * one flat surface and only a true corner deflects at an angle. The
+	 * ball is reflected about the sum of the normals, and only if it is
+	 * moving into that surface. A block already hit by this ball during the
+	 * tick is ignored.
+	 *
+	 * @param ball Index of the ball.
+	 * @param probes Probe cells, as written by {@link BallStore#probeCells(int, int, float, float, float, int[], int)}.
+	 * @param index Position in the probes of the ball's first value.
+	 * @return Number of hits recorded for the ball this tick.
+	 */
+	/*package*/int collide(final int ball, final int[] probes, final int index) {
+		final BallStore store = this.mBallStore;
+		final float x = store.mLocationX[ball];
+		final float y = store.mLocationY[ball];
+		final double radiusSquared = Simulation.square(this.mBallRadius);
+		final int base = ball * Simulation.MAX_HITS_PER_BALL;
+		int hits = 0;
+		float normalX = 0;
+		float normalY = 0;
+
+		for (int probe = index; probe < index + BallStore.PROBES_STRIDE; probe += 2) {
+			final int blockX = probes[probe];
+			final int blockY = probes[probe + 1];
+			if (!this.isBlock(blockX, blockY)) {
+				continue;
+			}
+			final int cell = (blockY * this.mCellsWide) + blockX;
+			if (this.isHit(base, hits, cell)) {
+				continue;
+			}
+
+			//Closest point on the block to the ball's center
+			final float left = blockX * this.mCellWidth;
+			final float top = blockY * this.mCellHeight;
+			final float right = left + this.mCellWidth;
+			final float bottom = top + this.mCellHeight;
+			final float closestX = Math.max(left, Math.min(x, right));
+			final float closestY = Math.max(top, Math.min(y, bottom));
+			final float deltaX = x - closestX;
+			final float deltaY = y - closestY;
+			final double distanceSquared = Simulation.square(deltaX) + Simulation.square(deltaY);
+			if (distanceSquared > radiusSquared) {
+				//Only the ball's bounding box reaches the block
+				continue;
+			}
+
+			if ((deltaX == 0) && (deltaY != 0)) {
+				//Face contacts need no square root
+				normalY += (deltaY > 0) ? 1 : -1;
+			} else if ((deltaY == 0) && (deltaX != 0)) {
+				normalX += (deltaX > 0) ? 1 : -1;
+			} else if (distanceSquared > 0) {
+				final float distance = (float)Math.sqrt(distanceSquared);
+				normalX += deltaX / distance;
+				normalY += deltaY / distance;
+			} else {
+				//Center is inside the block so push out through the nearest side
+				final float toLeft = x - left;
+				final float toRight = right - x;
+				final float toTop = y - top;
+				final float toBottom = bottom - y;
+				final float nearest = Math.min(Math.min(toLeft, toRight), Math.min(toTop, toBottom));
+				if (nearest == toLeft) {
+					normalX -= 1;
+				} else if (nearest == toRight) {
+					normalX += 1;
+				} else if (nearest == toTop) {
+					normalY -= 1;
+				} else {
+					normalY += 1;
+				}
+			}
+
+			this.mHits[base + hits] = cell;
+			hits += 1;
+		}
+
+		if (hits > 0) {
+			final double normalLength = Math.sqrt(Simulation.square(normalX) + Simulation.square(normalY));
+			if (normalLength > 0) {
+				final float unitX = (float)(normalX / normalLength);
+				final float unitY = (float)(normalY / normalLength);
+				final float vectorX = store.mVectorX[ball];
+				final float vectorY = store.mVectorY[ball];
+				final float dotProduct = (vectorX * unitX) + (vectorY * unitY);
+				if (dotProduct < 0) {
+					this.mBalls[ball].setVector(vectorX - (2 * dotProduct * unitX), vectorY - (2 * dotProduct * unitY));
+				}
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Split the balls which broke power-up blocks and return extra balls
+	 * to the pool once they have been in play for {@link #EXTRA_BALL_TICKS}
+	 * or fell past the paddle. Runs between ticks, as a change to the balls
+	 * in play invalidates the ball grid.
+	 */
+	private void updateExtraBalls() {
+		final BallStore store = this.mBallStore;
+		final int before = store.size();
+		final long spawned = this.mSpawned;
+		if (this.mSplitCount > 0) {
+			for (int n = 0; n < this.mSplitCount; n++) {
+				this.split(this.mSplits[n]);
+			}
+			this.mSplitCount = 0;
+		}
+
+		//Released slots are filled from the end, which has already been checked
+		for (int i = store.size() - 1; i >= this.mBallCount; i--) {
+			if (this.mIsLost[i] || (this.mTicks - this.mSpawnTicks[i] >= Simulation.EXTRA_BALL_TICKS)) {
+				this.releaseBall(i);
+			}
+		}
+
+		if ((store.size() != before) || (this.mSpawned != spawned)) {
+			this.mBallGridTick = -1;
+		}
+	}
+
+	/**
+	 * Put up to {@link #SPLIT_BALLS} extra balls in play at a ball's
+	 * location, heading either side of it.
+	 *
+	 * @param parent Index of the ball to split.
+	 */
+	private void split(final int parent) {
+		final BallStore store = this.mBallStore;
+		final float vectorX = store.mVectorX[parent];
+		final float vectorY = store.mVectorY[parent];
+		for (int n = 0; n < Simulation.SPLIT_BALLS; n++) {
+			final int slot = store.acquire();
+			if (slot < 0) {
+				return;
+			}
+			//Alternate turning left and right
+			final float sin = ((n & 1) == 0) ? Simulation.SPLIT_SIN : -Simulation.SPLIT_SIN;
+			final Ball ball = this.mBalls[slot];
+			ball.setSpeed(store.mSpeed[parent]);
+			ball.setRadius(store.mRadius[parent]);
+			ball.setMass(store.mMass[parent]);
+			ball.restore(store.mLocationX[parent], store.mLocationY[parent],
+					(vectorX * Simulation.SPLIT_COS) - (vectorY * sin), (vectorX * sin) + (vectorY * Simulation.SPLIT_COS));
+			this.mBallRandoms[slot].setSeed(this.mBallRandoms[parent].nextLong());
+			this.mSpawnTicks[slot] = this.mTicks;
+			this.mIsLost[slot] = false;
+			if (this.mPaddle != null) {
+				this.mPaddle.onAcquired(slot);
+			}
+			this.mSpawned += 1;
+		}
+	}
+
+	/**
+	 * Return an extra ball to the pool, moving the last ball in play and
+	 * everything kept for it into its slot.
+	 *
+	 * @param ball Index of the ball.
+	 */
+	private void releaseBall(final int ball) {
+		final int moved = this.mBallStore.release(ball);
+		if (moved != ball) {
+			final FastRandom random = this.mBallRandoms[ball];
+			this.mBallRandoms[ball] = this.mBallRandoms[moved];
+			this.mBallRandoms[moved] = random;
+			this.mSpawnTicks[ball] = this.mSpawnTicks[moved];
+			this.mIsLost[ball] = this.mIsLost[moved];
+		}
+		if (this.mPaddle != null) {
+			this.mPaddle.onReleased(ball, moved);
+		}
+		this.mDespawned += 1;
+	}
+
+	/**
+	 * Return every extra ball to the pool.
+	 */
+	private void releaseExtraBalls() {
+		for (int i = this.mBallStore.size() - 1; i >= this.mBallCount; i--) {
+			this.releaseBall(i);
+		}
+		this.mSplitCount = 0;
+	}
+
+	/**
+	 * Set off waiting explosions, oldest first, up to the limit for one tick.
+	 * Each clears every block within {@link #EXPLOSION_RADIUS} cells of its
+	 * own whatever their hit points, and explosive blocks among them join the
+	 * back of the queue, so a chain spreads outward one ring at a time and
+	 * carries on over the following ticks once the limit is reached.
+	 *
+	 * @return Number of explosions set off.
+	 */
+	private int explode() {
+		final Explosives explosives = this.mExplosives;
+		final int radius = Simulation.EXPLOSION_RADIUS;
+		int explosions = 0;
+		while ((explosions < this.mExplosionsPerTick) && (explosives.size() > 0)) {
+			final int cell = explosives.poll();
+			final int centerX = cell % this.mCellsWide;
+			final int row = (cell / this.mCellsWide) - this.mRowBase;
+			final int centerY = (row < 0) ? row + this.mCellsTall : row;
+			final int top = Math.max(0, centerY - radius);
+			final int bottom = Math.min(this.mCellsTall - 1, centerY + radius);
+			final int left = Math.max(0, centerX - radius);
+			final int right = Math.min(this.mCellsWide - 1, centerX + radius);
+			for (int y = top; y <= bottom; y++) {
+				for (int x = left; x <= right; x++) {
+					if (this.isBlock(x, y)) {
+						this.destroyBlock(x, y);
+					}
+				}
+			}
+			explosions += 1;
+		}
+		this.mExplosions += explosions;
+		return explosions;
+	}
+
+	/**
+	 * Bounce every pair of touching balls off one another, in the order the
+	 * grid finds them. Each pair which is moving together receives the
+	 * impulse of an elastic collision along the line between their centers,
+	 * shared according to their masses. Balls then keep their own speed, as
+	 * every ball in the game moves at a constant speed, so only the
+	 * directions come from the collision.
+	 */
+	private void collideBalls() {
+		final BallStore store = this.mBallStore;
+		final int contacts = this.mBallGrid.findContacts(store, this.mGameWidth, this.mGameHeight);
+		final int[] pairs = this.mBallGrid.getContacts();
+		//Bounces change vectors only, so the grid stays valid for touches until the next tick
+		this.mBallGridTick = this.mTicks + 1;
+		for (int n = 0; n < contacts * 2; n += 2) {
+			final int first = pairs[n];
+			final int second = pairs[n + 1];
+			final float deltaX = store.mLocationX[second] - store.mLocationX[first];
+			final float deltaY = store.mLocationY[second] - store.mLocationY[first];
+			final double distance = Math.sqrt(Simulation.square(deltaX) + Simulation.square(deltaY));
+			if (!(distance > 0)) {
+				//Balls on top of one another have no line between them to bounce along
+				continue;
+			}
+			final float normalX = (float)(deltaX / distance);
+			final float normalY = (float)(deltaY / distance);
+
+			final float approach = ((store.mVectorX[second] - store.mVectorX[first]) * normalX)
+					+ ((store.mVectorY[second] - store.mVectorY[first]) * normalY);
+			if (approach >= 0) {
+				//Already moving apart
+				continue;
+			}
+
+			final float inverseFirst = 1 / store.mMass[first];
+			final float inverseSecond = 1 / store.mMass[second];
+			final float impulse = (-2 * approach) / (inverseFirst + inverseSecond);
+			this.push(first, -impulse * inverseFirst, normalX, normalY);
+			this.push(second, impulse * inverseSecond, normalX, normalY);
+		}
+	}
+
+	/**
+	 * Change a ball's vector by an impulse along a unit normal. A ball
+	 * brought to a stop instead reflects about the normal, since a stopped
+	 * ball has no direction to keep its speed in.
+	 *
+	 * @param ball Ball index.
+	 * @param amount Change in velocity along the normal.
+	 * @param normalX X coordinate of the unit normal.
+	 * @param normalY Y coordinate of the unit normal.
+	 */
+	private void push(final int ball, final float amount, final float normalX, final float normalY) {
+		final BallStore store = this.mBallStore;
+		final float vectorX = store.mVectorX[ball];
+		final float vectorY = store.mVectorY[ball];
+		final float newVectorX = vectorX + (amount * normalX);
+		final float newVectorY = vectorY + (amount * normalY);
+		final double stopped = Simulation.square(store.mSpeed[ball] * Simulation.SPEED_TOLERANCE);
+		if (Simulation.square(newVectorX) + Simulation.square(newVectorY) > stopped) {
+			this.mBalls[ball].setVector(newVectorX, newVectorY);
+		} else {
+			final float dotProduct = (vectorX * normalX) + (vectorY * normalY);
+			this.mBalls[ball].setVector(vectorX - (2 * dotProduct * normalX), vectorY - (2 * dotProduct * normalY));
+		}
+	}
+
+	/**
+	 * Determine whether or not a cell is among a ball's hits this tick.
+	 *
+	 * @param base Position of the ball's first hit slot.
+	 * @param hits Number of hits recorded for the ball this tick.
+	 * @param cell Cell (row * width + column).
+	 * @return Boolean.
+	 */
+	private boolean isHit(final int base, final int hits, final int cell) {
+		for (int i = 0; i < hits; i++) {
+			if (this.mHits[base + i] == cell) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Square a value exactly. Unlike {@link Math#pow(double, double)} this
+	 * gives the same result on every platform which keeps replays in step.
+	 *
+	 * @param value Value.
+	 * @return Square.
+	 */
+	private static double square(final float value) {
+		return (double)value * value;
+	}
+}
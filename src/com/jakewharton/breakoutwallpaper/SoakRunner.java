@@ -0,0 +1,230 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Command-line runner which drives a headless {@link Simulation} for a large
+ * number of ticks with a fixed seed while periodically checking invariants.
+ * Useful for spotting leaks and degradation that would only show up after
+ * days of running as a wallpaper.
+ *
+ * <pre>
+ * java -cp out com.jakewharton.breakoutwallpaper.SoakRunner --ticks 50000000 --seed 42 --mode 0
+ * </pre>
+ */
+public class SoakRunner {
+	/**
+	 * Number of bytes in a megabyte.
+	 */
+	private static final long BYTES_IN_MEGABYTE = 1024 * 1024;
+
+
+
+	/**
+	 * Layout and run configuration parsed from the command line.
+	 */
+	/*package*/static class Config {
+		int iconRows = 4;
+		int iconCols = 4;
+		int rowSpacing = 15;
+		int colSpacing = 6;
+		int[] widgets = new int[0];
+		int balls = 4;
+		int mode = Simulation.MODE_ENDLESS;
+		int regen = 45;
+		int width = 490;
+		int height = 744;
+		long ticks = 10000000;
+		long seed = 0;
+		long checkEvery = 10000;
+		int threads = 1;
+		boolean ballCollisions = false;
+		boolean paddle = false;
+		int blockHits = 1;
+		int blockHitsPerLevel = 0;
+		int explosive = 0;
+		int powerUps = 0;
+		boolean effects = false;
+
+		/**
+		 * Build and populate a simulation from this configuration.
+		 *
+		 * @return Simulation ready to tick.
+		 */
+		Simulation create() {
+			return this.populate(new Simulation(this.seed));
+		}
+
+		/**
+		 * Populate an existing simulation from this configuration.
+		 *
+		 * @param simulation Freshly created simulation.
+		 * @return Simulation ready to tick.
+		 */
+		Simulation populate(final Simulation simulation) {
+			simulation.setLayout(this.iconRows, this.iconCols, this.rowSpacing, this.colSpacing, this.widgets);
+			simulation.setBallCount(this.balls);
+			simulation.setMode(this.mode);
+			simulation.setRegenPercent(this.regen / 100.0f);
+			for (int i = 0; i < Simulation.BLOCK_COLORS; i++) {
+				//Any distinct values other than blank and invalid
+				simulation.setBlockColor(i, 0xff000000 | (i + 2));
+			}
+			simulation.setBlockHits(this.blockHits, this.blockHitsPerLevel);
+			simulation.setExplosivePercent(this.explosive / 100.0f);
+			simulation.setPowerUpPercent(this.powerUps / 100.0f);
+			simulation.setEffects(this.effects ? new BlockEffects() : null);
+			simulation.resize(this.width, this.height);
+			simulation.newLevel();
+			simulation.setParallelism(this.threads);
+			simulation.setBallCollisions(this.ballCollisions);
+			simulation.setPaddle(this.paddle);
+			return simulation;
+		}
+	}
+
+
+
+	public static void main(final String[] args) {
+		final Config config = SoakRunner.parse(args);
+		final Simulation simulation = config.create();
+		final Runtime runtime = Runtime.getRuntime();
+
+		System.out.println("Board " + simulation.getCellsWide() + "x" + simulation.getCellsTall()
+				+ ", " + config.balls + " balls, mode " + config.mode
+				+ ", " + config.ticks + " ticks, seed " + config.seed + ", " + config.threads + " thread(s)"
+				+ (config.ballCollisions ? ", ball collisions" : "")
+				+ (config.paddle ? ", paddle" : "")
+				+ ((config.blockHits > 1) || (config.blockHitsPerLevel > 0) ? ", " + config.blockHits + "+" + config.blockHitsPerLevel + " hits per block" : "")
+				+ ((config.explosive > 0) ? ", " + config.explosive + "% explosive" : "")
+				+ ((config.powerUps > 0) ? ", " + config.powerUps + "% power-ups" : "")
+				+ (config.effects ? ", block effects" : ""));
+
+		long peakHeap = 0;
+		final long start = System.nanoTime();
+		for (long tick = 1; tick <= config.ticks; tick++) {
+			simulation.tick();
+
+			if ((tick % config.checkEvery == 0) || (tick == config.ticks)) {
+				final String violation = simulation.checkInvariants();
+				if (violation != null) {
+					System.out.println("FAILED at tick " + tick + ": " + violation);
+					System.exit(1);
+				}
+
+				final long used = runtime.totalMemory() - runtime.freeMemory();
+				if (used > peakHeap) {
+					peakHeap = used;
+				}
+			}
+		}
+		final long elapsed = System.nanoTime() - start;
+
+		final Histogram ticks = simulation.getStats().getTick();
+		System.out.println("Elapsed: " + (elapsed / FrameStats.NANOSECONDS_IN_MILLISECOND) + "ms");
+		System.out.println("Ticks/second: " + ((config.ticks * FrameStats.NANOSECONDS_IN_SECOND) / Math.max(1, elapsed)));
+		System.out.println("Tick mean: " + ticks.getMean() + "ns, max: " + ticks.getMax() + "ns");
+		System.out.println("Levels cleared: " + simulation.getLevelsCleared());
+		System.out.println("Blocks regenerated: " + simulation.getRegenerated());
+		System.out.println("Blocks destroyed: " + simulation.getBlocksDestroyed());
+		System.out.println("Explosions: " + simulation.getExplosions());
+		System.out.println("Rows descended: " + simulation.getDescended());
+		System.out.println("Extra balls: " + simulation.getSpawned() + " spawned, " + simulation.getDespawned() + " despawned, " + (simulation.getBallCount() - config.balls) + " in play");
+		System.out.println("Peak heap: " + (peakHeap / SoakRunner.BYTES_IN_MEGABYTE) + "MB");
+		System.out.println("Anomalies: " + simulation.getRecorder().getAnomalies());
+		final Paddle paddle = simulation.getPaddle();
+		if (paddle != null) {
+			System.out.println("Paddle saves: " + paddle.getSaves() + ", misses: " + paddle.getMisses()
+					+ ", predictions: " + paddle.getPredictions() + " (" + paddle.getReused() + " reused)");
+		}
+		final BlockEffects effects = simulation.getEffects();
+		if (effects != null) {
+			System.out.println("Block effects: " + effects.getStarted() + " started, " + effects.getDropped() + " appeared at once, peak " + effects.getPeak() + "/" + BlockEffects.CAPACITY);
+		}
+		System.out.println("Checksum: " + Long.toHexString(simulation.checksum()));
+		System.out.println("OK");
+	}
+
+	/**
+	 * Parse {@code --name value} pairs into a configuration.
+	 *
+	 * @param args Command-line arguments.
+	 * @return Configuration.
+	 */
+	/*package*/static Config parse(final String[] args) {
+		final Config config = new Config();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			final String name = args[i];
+			final String value = args[i + 1];
+			if ("--rows".equals(name)) {
+				config.iconRows = Integer.parseInt(value);
+			} else if ("--cols".equals(name)) {
+				config.iconCols = Integer.parseInt(value);
+			} else if ("--rowspacing".equals(name)) {
+				config.rowSpacing = Integer.parseInt(value);
+			} else if ("--colspacing".equals(name)) {
+				config.colSpacing = Integer.parseInt(value);
+			} else if ("--widgets".equals(name)) {
+				config.widgets = SoakRunner.parseWidgets(value);
+			} else if ("--balls".equals(name)) {
+				config.balls = Integer.parseInt(value);
+			} else if ("--mode".equals(name)) {
+				config.mode = Integer.parseInt(value);
+			} else if ("--regen".equals(name)) {
+				config.regen = Integer.parseInt(value);
+			} else if ("--width".equals(name)) {
+				config.width = Integer.parseInt(value);
+			} else if ("--height".equals(name)) {
+				config.height = Integer.parseInt(value);
+			} else if ("--ticks".equals(name)) {
+				config.ticks = Long.parseLong(value);
+			} else if ("--seed".equals(name)) {
+				config.seed = Long.parseLong(value);
+			} else if ("--check".equals(name)) {
+				config.checkEvery = Long.parseLong(value);
+			} else if ("--threads".equals(name)) {
+				config.threads = Integer.parseInt(value);
+			} else if ("--ballcollisions".equals(name)) {
+				config.ballCollisions = Boolean.parseBoolean(value);
+			} else if ("--paddle".equals(name)) {
+				config.paddle = Boolean.parseBoolean(value);
+			} else if ("--hits".equals(name)) {
+				config.blockHits = Integer.parseInt(value);
+			} else if ("--hitsperlevel".equals(name)) {
+				config.blockHitsPerLevel = Integer.parseInt(value);
+			} else if ("--explosive".equals(name)) {
+				config.explosive = Integer.parseInt(value);
+			} else if ("--powerups".equals(name)) {
+				config.powerUps = Integer.parseInt(value);
+			} else if ("--effects".equals(name)) {
+				config.effects = Boolean.parseBoolean(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + name);
+			}
+		}
+		return config;
+	}
+
+	/**
+	 * Parse widget locations in the form {@code left,top,right,bottom;...}.
+	 *
+	 * @param value Widget locations.
+	 * @return Consecutive left, top, right, bottom values.
+	 */
+	private static int[] parseWidgets(final String value) {
+		if (value.length() == 0) {
+			return new int[0];
+		}
+
+		final String[] widgets = value.split(";");
+		final int[] locations = new int[widgets.length * 4];
+		for (int i = 0; i < widgets.length; i++) {
+			final String[] edges = widgets[i].split(",");
+			if (edges.length != 4) {
+				throw new IllegalArgumentException("Invalid widget location " + widgets[i]);
+			}
+			for (int j = 0; j < 4; j++) {
+				locations[(i * 4) + j] = Integer.parseInt(edges[j].trim());
+			}
+		}
+		return locations;
+	}
+}
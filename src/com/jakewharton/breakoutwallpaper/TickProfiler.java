@@ -0,0 +1,224 @@
+package com.jakewharton.breakoutwallpaper;
+
+import java.io.PrintWriter;
+
+/**
+ * Opt-in profiler which attributes time spent in {@link Game#tick()} to its
+ * individual phases.
+ */
+public class TickProfiler {
+	/**
+	 * Ball position integration.
+	 */
+	/*package*/static final int PHASE_INTEGRATE = 0;
+
+	/**
+	 * Bouncing off of the game edges.
+	 */
+	/*package*/static final int PHASE_WALLS = 1;
+
+	/**
+	 * Block collision probes.
+	 */
+	/*package*/static final int PHASE_COLLISION = 2;
+
+	/**
+	 * Game mode handling (regeneration and new levels).
+	 */
+	/*package*/static final int PHASE_MODE = 3;
+
+	/**
+	 * Paddle predictions and movement.
+	 */
+	/*package*/static final int PHASE_PADDLE = 4;
+
+	/**
+	 * Explosions of explosive blocks.
+	 */
+	/*package*/static final int PHASE_EXPLODE = 5;
+
+	/**
+	 * Number of phases.
+	 */
+	private static final int PHASE_COUNT = 6;
+
+	/**
+	 * Human-readable phase names.
+	 */
+	private static final String[] PHASE_NAMES = { "integrate", "walls", "collision", "mode", "paddle", "explode" };
+
+
+
+	/**
+	 * Nanoseconds spent in each phase.
+	 */
+	private final long[] mNanos;
+
+	/**
+	 * Number of calls attributed to each phase.
+	 */
+	private final long[] mCalls;
+
+	/**
+	 * Number of ticks profiled.
+	 */
+	private long mTicks;
+
+	/**
+	 * Number of block collision probes which hit a block.
+	 */
+	private long mHits;
+
+	/**
+	 * Number of blocks regenerated in endless mode.
+	 */
+	private long mRegenBlocks;
+
+	/**
+	 * Number of cells scanned for blank ones while regenerating blocks.
+	 */
+	private long mRegenScanned;
+
+	/**
+	 * Largest number of blocks regenerated in a single batch.
+	 */
+	private int mRegenBatchMax;
+
+
+
+	/**
+	 * Create a new, empty profiler.
+	 */
+	public TickProfiler() {
+		this.mNanos = new long[TickProfiler.PHASE_COUNT];
+		this.mCalls = new long[TickProfiler.PHASE_COUNT];
+	}
+
+
+
+	/**
+	 * Attribute the time since the last mark to a phase.
+	 *
+	 * @param phase Phase constant.
+	 * @param since Previous mark from {@link System#nanoTime()}.
+	 * @param calls Number of calls to attribute.
+	 * @return New mark.
+	 */
+	public long lap(final int phase, final long since, final int calls) {
+		final long now = System.nanoTime();
+		this.mNanos[phase] += now - since;
+		this.mCalls[phase] += calls;
+		return now;
+	}
+
+	/**
+	 * Mark the completion of a tick.
+	 */
+	public void onTick() {
+		this.mTicks += 1;
+	}
+
+	/**
+	 * Record block collision probe hits.
+	 *
+	 * @param hits Number of hits.
+	 */
+	public void onHits(final int hits) {
+		this.mHits += hits;
+	}
+
+	/**
+	 * Record a batch of block regeneration.
+	 *
+	 * @param blocks Number of blocks placed.
+	 * @param scanned Number of cells scanned for blank ones.
+	 */
+	public void onRegen(final int blocks, final int scanned) {
+		this.mRegenBlocks += blocks;
+		this.mRegenScanned += scanned;
+		if (blocks > this.mRegenBatchMax) {
+			this.mRegenBatchMax = blocks;
+		}
+	}
+
+	/**
+	 * Get the nanoseconds spent in a phase.
+	 *
+	 * @param phase Phase constant.
+	 * @return Nanoseconds.
+	 */
+	public long getNanos(final int phase) {
+		return this.mNanos[phase];
+	}
+
+	/**
+	 * Get the number of calls attributed to a phase.
+	 *
+	 * @param phase Phase constant.
+	 * @return Calls.
+	 */
+	public long getCalls(final int phase) {
+		return this.mCalls[phase];
+	}
+
+	/**
+	 * Get the number of ticks profiled.
+	 *
+	 * @return Ticks.
+	 */
+	public long getTicks() {
+		return this.mTicks;
+	}
+
+	/**
+	 * Get the number of cells scanned for blank ones while regenerating blocks.
+	 *
+	 * @return Cells.
+	 */
+	public long getRegenScanned() {
+		return this.mRegenScanned;
+	}
+
+	/**
+	 * Discard all recorded data.
+	 */
+	public void reset() {
+		for (int i = 0; i < TickProfiler.PHASE_COUNT; i++) {
+			this.mNanos[i] = 0;
+			this.mCalls[i] = 0;
+		}
+		this.mTicks = 0;
+		this.mHits = 0;
+		this.mRegenBlocks = 0;
+		this.mRegenScanned = 0;
+		this.mRegenBatchMax = 0;
+	}
+
+	/**
+	 * Print the per-phase breakdown in a human-readable form.
+	 *
+	 * @param prefix Prefix for each line.
+	 * @param writer Destination.
+	 */
+	public void dump(final String prefix, final PrintWriter writer) {
+		long total = 0;
+		for (int i = 0; i < TickProfiler.PHASE_COUNT; i++) {
+			total += this.mNanos[i];
+		}
+
+		writer.println(prefix + "ticks=" + this.mTicks + " totalNanos=" + total);
+		for (int i = 0; i < TickProfiler.PHASE_COUNT; i++) {
+			final long nanos = this.mNanos[i];
+			final long calls = this.mCalls[i];
+			writer.println(prefix + TickProfiler.PHASE_NAMES[i]
+					+ ": nanos=" + nanos
+					+ " calls=" + calls
+					+ " nanosPerCall=" + ((calls == 0) ? 0 : (nanos / calls))
+					+ " share=" + ((total == 0) ? 0 : ((nanos * 100) / total)) + "%");
+		}
+		writer.println(prefix + "hits=" + this.mHits
+				+ " regenBlocks=" + this.mRegenBlocks
+				+ " regenScanned=" + this.mRegenScanned
+				+ " regenBatchMax=" + this.mRegenBatchMax);
+	}
+}
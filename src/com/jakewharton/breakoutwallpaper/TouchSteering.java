@@ -0,0 +1,426 @@
+package com.jakewharton.breakoutwallpaper;
+
+/**
+ * Turns the pointer samples drained from an {@link InputQueue} into changes
+ * to a {@link Simulation}. Every pointer grabs the ball nearest where it went
+ * down so several balls can be steered at once. A pointer which moves
+ * further than the touch slop drags its ball towards it, only the latest
+ * position of each pointer being applied once per drain. Lifting a dragging
+ * pointer quickly flings its ball in the direction it was moving, measured
+ * over its recent samples. A long press which does not move steers every
+ * ball near it and two taps in quick succession start a new level.
+ */
+public class TouchSteering {
+	/**
+	 * Highest pointer ID tracked plus one.
+	 */
+	/*package*/static final int MAX_POINTERS = 10;
+
+	/**
+	 * Recent samples kept per pointer to measure fling velocity. Must be a
+	 * power of two.
+	 */
+	/*package*/static final int SAMPLES = 16;
+
+	/**
+	 * Maximum time (in nanoseconds) between taps that will reset the game.
+	 */
+	/*package*/static final long RESET_THRESHOLD = 100 * FrameStats.NANOSECONDS_IN_MILLISECOND;
+
+	/**
+	 * Period (in nanoseconds) before a pointer lifts over which its fling
+	 * velocity is measured.
+	 */
+	/*package*/static final long FLING_WINDOW = 100 * FrameStats.NANOSECONDS_IN_MILLISECOND;
+
+
+
+	/**
+	 * Simulation being steered.
+	 */
+	private final Simulation mSimulation;
+
+	/**
+	 * Whether or not pointers steer balls.
+	 */
+	private boolean mIsControllable;
+
+	/**
+	 * Time (in nanoseconds) a pointer must stay down without moving to steer
+	 * every ball near it.
+	 */
+	private long mLongPress;
+
+	/**
+	 * Distance (in pixels) a pointer must move before it is dragging.
+	 */
+	private float mSlop;
+
+	/**
+	 * Speed (in pixels per second) a dragging pointer must be moving when
+	 * lifted to fling its ball.
+	 */
+	private float mFlingVelocity;
+
+	/**
+	 * Distance (in pixels) from a long press within which balls are steered.
+	 */
+	private float mSteerRadius;
+
+	/**
+	 * Whether or not each pointer is down.
+	 */
+	private final boolean[] mIsDown;
+
+	/**
+	 * Ball grabbed by each pointer, or -1.
+	 */
+	private final int[] mBall;
+
+	/**
+	 * X coordinate at which each pointer went down.
+	 */
+	private final float[] mDownX;
+
+	/**
+	 * Y coordinate at which each pointer went down.
+	 */
+	private final float[] mDownY;
+
+	/**
+	 * Time at which each pointer went down.
+	 */
+	private final long[] mDownTime;
+
+	/**
+	 * Whether or not each pointer has moved further than the touch slop.
+	 */
+	private final boolean[] mIsDragging;
+
+	/**
+	 * Whether or not each pointer has moved since its ball was last steered.
+	 */
+	private final boolean[] mIsMoved;
+
+	/**
+	 * Latest X coordinate of each pointer.
+	 */
+	private final float[] mX;
+
+	/**
+	 * Latest Y coordinate of each pointer.
+	 */
+	private final float[] mY;
+
+	/**
+	 * X coordinates of the recent samples of each pointer.
+	 */
+	private final float[] mSampleX;
+
+	/**
+	 * Y coordinates of the recent samples of each pointer.
+	 */
+	private final float[] mSampleY;
+
+	/**
+	 * Times of the recent samples of each pointer.
+	 */
+	private final long[] mSampleTime;
+
+	/**
+	 * Number of samples ever added for each pointer since it went down.
+	 */
+	private final int[] mSampleCount;
+
+	/**
+	 * Number of pointers down.
+	 */
+	private int mDownCount;
+
+	/**
+	 * Time at which the last gesture began, or zero.
+	 */
+	private long mLastTap;
+
+	/**
+	 * Whether or not samples have been applied since the last posted frame.
+	 */
+	private boolean mIsPending;
+
+	/**
+	 * Time of the oldest sample applied since the last posted frame.
+	 */
+	private long mPendingTime;
+
+
+
+	/**
+	 * Create a steering for a simulation.
+	 *
+	 * @param simulation Simulation.
+	 */
+	public TouchSteering(final Simulation simulation) {
+		this.mSimulation = simulation;
+		this.mIsDown = new boolean[TouchSteering.MAX_POINTERS];
+		this.mBall = new int[TouchSteering.MAX_POINTERS];
+		this.mDownX = new float[TouchSteering.MAX_POINTERS];
+		this.mDownY = new float[TouchSteering.MAX_POINTERS];
+		this.mDownTime = new long[TouchSteering.MAX_POINTERS];
+		this.mIsDragging = new boolean[TouchSteering.MAX_POINTERS];
+		this.mIsMoved = new boolean[TouchSteering.MAX_POINTERS];
+		this.mX = new float[TouchSteering.MAX_POINTERS];
+		this.mY = new float[TouchSteering.MAX_POINTERS];
+		this.mSampleX = new float[TouchSteering.MAX_POINTERS * TouchSteering.SAMPLES];
+		this.mSampleY = new float[TouchSteering.MAX_POINTERS * TouchSteering.SAMPLES];
+		this.mSampleTime = new long[TouchSteering.MAX_POINTERS * TouchSteering.SAMPLES];
+		this.mSampleCount = new int[TouchSteering.MAX_POINTERS];
+		this.mLongPress = Long.MAX_VALUE;
+		this.mFlingVelocity = Float.POSITIVE_INFINITY;
+	}
+
+
+
+	/**
+	 * Set whether or not pointers steer balls. Resetting the level with two
+	 * taps only works while they do.
+	 *
+	 * @param isControllable Whether or not pointers steer balls.
+	 */
+	public void setControllable(final boolean isControllable) {
+		this.mIsControllable = isControllable;
+	}
+
+	/**
+	 * Set the time a pointer must stay down without moving to steer every
+	 * ball near it.
+	 *
+	 * @param nanos Nanoseconds.
+	 */
+	public void setLongPress(final long nanos) {
+		this.mLongPress = nanos;
+	}
+
+	/**
+	 * Set the distance a pointer must move before it is dragging.
+	 *
+	 * @param slop Pixels.
+	 */
+	public void setSlop(final float slop) {
+		this.mSlop = slop;
+	}
+
+	/**
+	 * Set the speed a dragging pointer must be moving when lifted to fling
+	 * its ball.
+	 *
+	 * @param velocity Pixels per second.
+	 */
+	public void setFlingVelocity(final float velocity) {
+		this.mFlingVelocity = velocity;
+	}
+
+	/**
+	 * Set the distance from a long press within which balls are steered.
+	 *
+	 * @param radius Pixels.
+	 */
+	public void setSteerRadius(final float radius) {
+		this.mSteerRadius = radius;
+	}
+
+	/**
+	 * Get the number of pointers down.
+	 *
+	 * @return Pointers.
+	 */
+	public int getDownCount() {
+		return this.mDownCount;
+	}
+
+	/**
+	 * Act on a single pointer sample.
+	 *
+	 * @param action {@link InputQueue} action constant.
+	 * @param pointer Pointer ID. Ignored if not below {@link #MAX_POINTERS}.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @param time {@link System#nanoTime()} at which the sample happened.
+	 */
+	public void onInput(final int action, final int pointer, final float x, final float y, final long time) {
+		if (!this.mIsPending || (time < this.mPendingTime)) {
+			this.mIsPending = true;
+			this.mPendingTime = time;
+		}
+
+		if (action == InputQueue.ACTION_CANCEL) {
+			this.release();
+			return;
+		}
+		if ((pointer < 0) || (pointer >= TouchSteering.MAX_POINTERS)) {
+			return;
+		}
+
+		switch (action) {
+			case InputQueue.ACTION_DOWN:
+				this.onDown(pointer, x, y, time);
+				break;
+
+			case InputQueue.ACTION_MOVE:
+				if (this.mIsDown[pointer]) {
+					this.addSample(pointer, x, y, time);
+					if (!this.mIsDragging[pointer]) {
+						final float deltaX = x - this.mDownX[pointer];
+						final float deltaY = y - this.mDownY[pointer];
+						this.mIsDragging[pointer] = ((deltaX * deltaX) + (deltaY * deltaY) > this.mSlop * this.mSlop);
+					}
+					this.mIsMoved[pointer] = this.mIsDragging[pointer];
+				}
+				break;
+
+			case InputQueue.ACTION_UP:
+				if (this.mIsDown[pointer]) {
+					this.addSample(pointer, x, y, time);
+					this.onUp(pointer, x, y, time);
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Steer the ball of every pointer which moved towards its latest
+	 * position. Called once all the samples available have been passed to
+	 * {@link #onInput(int, int, float, float, long)}.
+	 */
+	public void flush() {
+		for (int pointer = 0; pointer < TouchSteering.MAX_POINTERS; pointer++) {
+			if (this.mIsMoved[pointer]) {
+				this.mIsMoved[pointer] = false;
+				this.mSimulation.steerBall(this.mBall[pointer], this.mX[pointer], this.mY[pointer]);
+			}
+		}
+	}
+
+	/**
+	 * Record the latency of the samples applied since the last frame, now
+	 * that a frame showing them has been posted.
+	 *
+	 * @param now Current {@link System#nanoTime()}.
+	 */
+	public void onFramePosted(final long now) {
+		if (this.mIsPending) {
+			this.mIsPending = false;
+			this.mSimulation.getStats().getInput().record(now - this.mPendingTime);
+		}
+	}
+
+	/**
+	 * Handle a pointer going down.
+	 *
+	 * @param pointer Pointer ID.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @param time Time.
+	 */
+	private void onDown(final int pointer, final float x, final float y, final long time) {
+		if (this.mDownCount == 0) {
+			if ((this.mLastTap != 0) && (time - this.mLastTap < TouchSteering.RESET_THRESHOLD)) {
+				this.mSimulation.getRecorder().record(FlightRecorder.EVENT_RESET, 0, 0);
+				this.mSimulation.newLevel();
+				this.mLastTap = 0;
+				return;
+			}
+			if (this.mIsControllable) {
+				this.mLastTap = time;
+			}
+		}
+		if (!this.mIsControllable || this.mIsDown[pointer]) {
+			return;
+		}
+
+		this.mIsDown[pointer] = true;
+		this.mDownCount += 1;
+		this.mDownX[pointer] = x;
+		this.mDownY[pointer] = y;
+		this.mDownTime[pointer] = time;
+		this.mIsDragging[pointer] = false;
+		this.mIsMoved[pointer] = false;
+		this.mSampleCount[pointer] = 0;
+		this.addSample(pointer, x, y, time);
+
+		this.mSimulation.setTouch(x, y);
+		this.mBall[pointer] = this.mSimulation.findNearestBall(x, y);
+	}
+
+	/**
+	 * Handle a pointer going up.
+	 *
+	 * @param pointer Pointer ID.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @param time Time.
+	 */
+	private void onUp(final int pointer, final float x, final float y, final long time) {
+		final int ball = this.mBall[pointer];
+		if (this.mIsDragging[pointer]) {
+			//Measure from the oldest sample still inside the window
+			final int base = pointer * TouchSteering.SAMPLES;
+			final int newest = this.mSampleCount[pointer] - 1;
+			final int limit = Math.max(0, this.mSampleCount[pointer] - TouchSteering.SAMPLES);
+			int oldest = newest;
+			while ((oldest > limit) && (time - this.mSampleTime[base + ((oldest - 1) & (TouchSteering.SAMPLES - 1))] <= TouchSteering.FLING_WINDOW)) {
+				oldest -= 1;
+			}
+			final int slot = base + (oldest & (TouchSteering.SAMPLES - 1));
+			final long elapsed = time - this.mSampleTime[slot];
+
+			boolean isFling = false;
+			if (elapsed > 0) {
+				final float seconds = elapsed / (float)FrameStats.NANOSECONDS_IN_SECOND;
+				final float velocityX = (x - this.mSampleX[slot]) / seconds;
+				final float velocityY = (y - this.mSampleY[slot]) / seconds;
+				if ((velocityX * velocityX) + (velocityY * velocityY) >= this.mFlingVelocity * this.mFlingVelocity) {
+					this.mSimulation.flingBall(ball, velocityX, velocityY);
+					isFling = true;
+				}
+			}
+			if (!isFling && this.mIsMoved[pointer]) {
+				this.mSimulation.steerBall(ball, x, y);
+			}
+		} else if (time - this.mDownTime[pointer] >= this.mLongPress) {
+			this.mSimulation.steerWithin(x, y, this.mSteerRadius);
+		}
+
+		this.mIsDown[pointer] = false;
+		this.mIsMoved[pointer] = false;
+		this.mDownCount -= 1;
+	}
+
+	/**
+	 * Remember a sample of a pointer, forgetting its oldest once full.
+	 *
+	 * @param pointer Pointer ID.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @param time Time.
+	 */
+	private void addSample(final int pointer, final float x, final float y, final long time) {
+		final int slot = (pointer * TouchSteering.SAMPLES) + (this.mSampleCount[pointer] & (TouchSteering.SAMPLES - 1));
+		this.mSampleX[slot] = x;
+		this.mSampleY[slot] = y;
+		this.mSampleTime[slot] = time;
+		this.mSampleCount[pointer] += 1;
+		this.mX[pointer] = x;
+		this.mY[pointer] = y;
+	}
+
+	/**
+	 * Forget every pointer without acting on it.
+	 */
+	private void release() {
+		for (int pointer = 0; pointer < TouchSteering.MAX_POINTERS; pointer++) {
+			this.mIsDown[pointer] = false;
+			this.mIsMoved[pointer] = false;
+		}
+		this.mDownCount = 0;
+	}
+}
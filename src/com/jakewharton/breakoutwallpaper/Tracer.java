@@ -0,0 +1,277 @@
+package com.jakewharton.breakoutwallpaper;
+
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+
+/**
+ * Named trace sections recorded into a fixed-size ring buffer. When running
+ * on a device which has {@code android.os.Trace} the sections are forwarded
+ * to it as well so they line up with system traces.
+ */
+public class Tracer {
+	/**
+	 * Tag used for logging.
+	 */
+	private static final String TAG = "BreakoutWallpaper.Tracer";
+
+	/**
+	 * Engine frame advance.
+	 */
+	/*package*/static final int SECTION_FRAME = 0;
+
+	/**
+	 * Game simulation step.
+	 */
+	/*package*/static final int SECTION_TICK = 1;
+
+	/**
+	 * Game rendering.
+	 */
+	/*package*/static final int SECTION_DRAW = 2;
+
+	/**
+	 * Waiting on the surface for a canvas.
+	 */
+	/*package*/static final int SECTION_LOCK = 3;
+
+	/**
+	 * Posting the canvas back to the surface.
+	 */
+	/*package*/static final int SECTION_POST = 4;
+
+	/**
+	 * Game resize.
+	 */
+	/*package*/static final int SECTION_RESIZE = 5;
+
+	/**
+	 * Board reset.
+	 */
+	/*package*/static final int SECTION_NEW_LEVEL = 6;
+
+	/**
+	 * Section names as they appear in traces.
+	 */
+	private static final String[] SECTION_NAMES = {
+		"BreakEngine.newFrame", "Game.tick", "Game.draw", "lockCanvas", "unlockCanvasAndPost", "Game.performResize", "Game.newLevel"
+	};
+
+	/**
+	 * Number of events held by the ring buffer.
+	 */
+	private static final int CAPACITY = 4096;
+
+	/**
+	 * Event flag marking the end of a section.
+	 */
+	private static final int FLAG_END = 0x100;
+
+	/**
+	 * {@code android.os.Trace.beginSection(String)}, if available.
+	 */
+	private static final Method TRACE_BEGIN;
+
+	/**
+	 * {@code android.os.Trace.endSection()}, if available.
+	 */
+	private static final Method TRACE_END;
+
+	/**
+	 * {@code android.util.Log.w(String, String, Throwable)}, if available.
+	 */
+	private static final Method LOG_WARN;
+
+	/**
+	 * Empty argument array for {@link #TRACE_END}, so ending a section does not allocate one.
+	 */
+	private static final Object[] NO_ARGS = new Object[0];
+
+	static {
+		Method begin = null;
+		Method end = null;
+		try {
+			final Class<?> trace = Class.forName("android.os.Trace");
+			begin = trace.getMethod("beginSection", String.class);
+			end = trace.getMethod("endSection");
+		} catch (final Exception e) {
+			//Older platform or not running on a device
+			begin = null;
+			end = null;
+		}
+		TRACE_BEGIN = begin;
+		TRACE_END = end;
+
+		//Looked up like the tracer so the class still builds and runs off the device
+		Method warn = null;
+		try {
+			warn = Class.forName("android.util.Log").getMethod("w", String.class, String.class, Throwable.class);
+		} catch (final Exception e) {
+			warn = null;
+		}
+		LOG_WARN = warn;
+	}
+
+
+
+	/**
+	 * Timestamps (from {@link System#nanoTime()}) of each event.
+	 */
+	private final long[] mTimes;
+
+	/**
+	 * Section and begin/end flag of each event.
+	 */
+	private final int[] mEvents;
+
+	/**
+	 * Total number of events ever recorded.
+	 */
+	private long mCount;
+
+	/**
+	 * Preallocated argument arrays for forwarding section names.
+	 */
+	private final Object[][] mSectionArgs;
+
+	/**
+	 * Whether or not sections are forwarded to the platform tracer.
+	 */
+	private boolean mIsForwarding;
+
+
+
+	/**
+	 * Create a new, empty tracer.
+	 */
+	public Tracer() {
+		this.mTimes = new long[Tracer.CAPACITY];
+		this.mEvents = new int[Tracer.CAPACITY];
+		this.mSectionArgs = new Object[Tracer.SECTION_NAMES.length][];
+		for (int i = 0; i < Tracer.SECTION_NAMES.length; i++) {
+			this.mSectionArgs[i] = new Object[] { Tracer.SECTION_NAMES[i] };
+		}
+		this.mIsForwarding = (Tracer.TRACE_BEGIN != null);
+	}
+
+
+
+	/**
+	 * Begin a section.
+	 *
+	 * @param section Section constant.
+	 */
+	public void begin(final int section) {
+		this.record(section);
+
+		if (this.mIsForwarding) {
+			try {
+				Tracer.TRACE_BEGIN.invoke(null, this.mSectionArgs[section]);
+			} catch (final Exception e) {
+				this.stopForwarding(e);
+			}
+		}
+	}
+
+	/**
+	 * End a section. Sections must be ended in the reverse order they were begun.
+	 *
+	 * @param section Section constant.
+	 */
+	public void end(final int section) {
+		if (this.mIsForwarding) {
+			try {
+				Tracer.TRACE_END.invoke(null, Tracer.NO_ARGS);
+			} catch (final Exception e) {
+				this.stopForwarding(e);
+			}
+		}
+
+		this.record(section | Tracer.FLAG_END);
+	}
+
+	/**
+	 * Store a single event in the ring buffer.
+	 *
+	 * @param event Section constant and flags.
+	 */
+	private void record(final int event) {
+		final int index = (int)(this.mCount % Tracer.CAPACITY);
+		this.mTimes[index] = System.nanoTime();
+		this.mEvents[index] = event;
+		this.mCount += 1;
+	}
+
+	/**
+	 * Disable forwarding after the platform tracer failed.
+	 *
+	 * @param e Failure.
+	 */
+	private void stopForwarding(final Exception e) {
+		this.mIsForwarding = false;
+		if (Tracer.LOG_WARN != null) {
+			try {
+				Tracer.LOG_WARN.invoke(null, Tracer.TAG, "Unable to forward trace sections.", e);
+				return;
+			} catch (final Exception logFailure) {
+				//Fall through to standard error
+			}
+		}
+		System.err.println(Tracer.TAG + ": Unable to forward trace sections. " + e);
+	}
+
+	/**
+	 * Discard all recorded events.
+	 */
+	public void reset() {
+		this.mCount = 0;
+	}
+
+	/**
+	 * Write all buffered events in the Chrome trace event JSON format which
+	 * can be loaded by Perfetto or chrome://tracing.
+	 *
+	 * @param writer Destination.
+	 * @param pid Process ID to report.
+	 * @param tid Thread ID to report.
+	 */
+	public void writeJson(final PrintWriter writer, final int pid, final int tid) {
+		final long count = this.mCount;
+		final long first = Math.max(0, count - Tracer.CAPACITY);
+
+		writer.print("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+		for (long i = first; i < count; i++) {
+			final int index = (int)(i % Tracer.CAPACITY);
+			final int event = this.mEvents[index];
+			final boolean isEnd = (event & Tracer.FLAG_END) != 0;
+			final int section = event & ~Tracer.FLAG_END;
+
+			if (i != first) {
+				writer.print(',');
+			}
+			writer.print("{\"name\":\"");
+			writer.print(Tracer.SECTION_NAMES[section]);
+			writer.print("\",\"cat\":\"breakout\",\"ph\":\"");
+			writer.print(isEnd ? 'E' : 'B');
+			writer.print("\",\"ts\":");
+			//Microseconds with nanosecond precision
+			final long time = this.mTimes[index];
+			writer.print(time / 1000);
+			writer.print('.');
+			final long fraction = time % 1000;
+			if (fraction < 100) {
+				writer.print('0');
+			}
+			if (fraction < 10) {
+				writer.print('0');
+			}
+			writer.print(fraction);
+			writer.print(",\"pid\":");
+			writer.print(pid);
+			writer.print(",\"tid\":");
+			writer.print(tid);
+			writer.print('}');
+		}
+		writer.println("]}");
+		writer.flush();
+	}
+}
@@ -1,10 +1,18 @@
 package com.jakewharton.breakoutwallpaper;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedList;
+import java.util.List;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Canvas;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.service.wallpaper.WallpaperService;
 import android.util.Log;
 import android.view.MotionEvent;
@@ -62,9 +70,14 @@ public class Wallpaper extends WallpaperService {
 	/*package*/static final int MILLISECONDS_IN_SECOND = 1000;
 	
 	/**
-	 * Maximum time between taps that will reset the game.
+	 * Filename of the persisted flight recorder after an anomaly.
 	 */
-	/*package*/static final long RESET_THRESHOLD = 100;
+	private static final String FILENAME_FLIGHT_RECORDER = "flightrecorder.bin";
+	
+	/**
+	 * Filename prefix of a persisted session. The engine index and extension are appended.
+	 */
+	private static final String FILENAME_SESSION = "session-";
     
     
     
@@ -72,9 +85,67 @@ public class Wallpaper extends WallpaperService {
      * The timed callback handler.
      */
     private final Handler mHandler = new Handler();
+    
+    /**
+     * Background thread on which diagnostics are written to storage.
+     */
+    private HandlerThread mWriterThread;
+    
+    /**
+     * Handler posting to {@link #mWriterThread}.
+     */
+    private Handler mWriter;
+    
+    /**
+     * Dump argument which enables tick profiling.
+     */
+    private static final String DUMP_PROFILE_START = "profile-start";
+    
+    /**
+     * Dump argument which disables tick profiling.
+     */
+    private static final String DUMP_PROFILE_STOP = "profile-stop";
+    
+    /**
+     * Dump argument which prints only the trace buffers as JSON.
+     */
+    private static final String DUMP_TRACE = "trace";
+    
+    /**
+     * Dump argument which resets all statistics.
+     */
+    private static final String DUMP_RESET = "reset";
+    
+    /**
+     * Dump argument which writes each engine's session so it can be replayed.
+     */
+    private static final String DUMP_SESSION = "session";
+    
+    
+    
+    /**
+     * All engines which are currently alive.
+     */
+    private final List<BreakEngine> mEngines = new LinkedList<BreakEngine>();
 
     
     
+    @Override
+    public void onCreate() {
+    	super.onCreate();
+    	
+    	this.mWriterThread = new HandlerThread("BreakoutWriter", Process.THREAD_PRIORITY_BACKGROUND);
+    	this.mWriterThread.start();
+    	this.mWriter = new Handler(this.mWriterThread.getLooper());
+    }
+    
+    @Override
+    public void onDestroy() {
+    	super.onDestroy();
+    	
+    	this.mWriterThread.quit();
+    }
+    
     @Override
     public Engine onCreateEngine() {
     	Wallpaper.PREFERENCES = this.getSharedPreferences(Preferences.SHARED_NAME, Context.MODE_PRIVATE);
@@ -85,6 +156,75 @@ public class Wallpaper extends WallpaperService {
         return new BreakEngine();
     }
     
+    @Override
+    protected void dump(final FileDescriptor fd, final PrintWriter writer, final String[] args) {
+    	synchronized (this.mEngines) {
+    		if ((args != null) && (args.length > 0) && Wallpaper.DUMP_TRACE.equals(args[0])) {
+    			//Only the first engine so the output is a single valid JSON document. Engines
+    			//run on the main thread whose ID matches the process ID.
+    			if (!this.mEngines.isEmpty()) {
+    				this.mEngines.get(0).mGame.getTracer().writeJson(writer, Process.myPid(), Process.myPid());
+    			}
+    			return;
+    		}
+    		
+    		writer.println("Engines: " + this.mEngines.size());
+    		int index = 0;
+    		for (final BreakEngine engine : this.mEngines) {
+    			writer.println("Engine #" + index + ":");
+    			engine.dump("  ", writer);
+    			index += 1;
+    		}
+    		
+    		if (args != null) {
+    			for (final String arg : args) {
+    				index = 0;
+    				for (final BreakEngine engine : this.mEngines) {
+    					final Game game = engine.mGame;
+    					if (Wallpaper.DUMP_PROFILE_START.equals(arg)) {
+    						//Swap profilers on the main thread so none is swapped mid-tick
+    						this.mHandler.post(new Runnable() {
+    							public void run() {
+    								if (game.getProfiler() == null) {
+    									game.setProfiler(new TickProfiler());
+    								}
+    							}
+    						});
+    					} else if (Wallpaper.DUMP_PROFILE_STOP.equals(arg)) {
+    						this.mHandler.post(new Runnable() {
+    							public void run() {
+    								game.setProfiler(null);
+    							}
+    						});
+    					} else if (Wallpaper.DUMP_RESET.equals(arg)) {
+    						//Reset on the main thread so nothing is mid-record when it is cleared
+    						this.mHandler.post(new Runnable() {
+    							public void run() {
+    								game.getStats().reset();
+    								game.getTracer().reset();
+    								final TickProfiler profiler = game.getProfiler();
+    								if (profiler != null) {
+    									profiler.reset();
+    								}
+    							}
+    						});
+    					} else if (Wallpaper.DUMP_SESSION.equals(arg)) {
+    						//Write on the main thread so the session is not modified underneath us
+    						final File file = new File(this.getFilesDir(), Wallpaper.FILENAME_SESSION + index + ".bin");
+    						this.mHandler.post(new Runnable() {
+    							public void run() {
+    								engine.persistSession(file);
+    							}
+    						});
+    						writer.println("Writing session to " + file.getAbsolutePath());
+    					}
+    					index += 1;
+    				}
+    			}
+    		}
+    	}
+    }
+    
     /**
      * Sets up some preferences based on screen size on the first run only.
      */
@@ -158,17 +298,77 @@ public class Wallpaper extends WallpaperService {
         private float mScreenCenterY;
         
         /**
-         * The system milliseconds of the last user touch.
+         * The {@link System#nanoTime()} at which the next frame is expected to run.
+         */
+        private long mFrameScheduled;
+        
+        /**
+         * Flight recorder events copied for writing off the main thread.
+         */
+        private final long[] mRecorderCopy = FlightRecorder.newBuffer();
+        
+        /**
+         * Number of events in {@link #mRecorderCopy}.
          */
-        private long mLastTouch;
+        private int mRecorderEvents;
+        
+        /**
+         * The {@link System#nanoTime()} at which {@link #mRecorderCopy} was filled.
+         */
+        private long mRecorderCopied;
+        
+        /**
+         * Whether or not {@link #mRecorderCopy} is waiting to be or being written.
+         */
+        private volatile boolean mIsRecorderWriting;
+        
+        /**
+         * A runnable which writes the copied flight recorder on the writer thread.
+         */
+        private final Runnable mWriteRecorder = new Runnable() {
+            public void run() {
+            	final File file = new File(Wallpaper.this.getFilesDir(), Wallpaper.FILENAME_FLIGHT_RECORDER);
+            	try {
+            		FlightRecorder.writeTo(file, BreakEngine.this.mRecorderCopy, BreakEngine.this.mRecorderEvents, BreakEngine.this.mRecorderCopied);
+            	} catch (final IOException e) {
+            		Log.w(BreakEngine.TAG, "Unable to write flight recorder.", e);
+            	} finally {
+            		BreakEngine.this.mIsRecorderWriting = false;
+            	}
+            }
+        };
 
         /**
          * A runnable which automates the frame rendering.
          */
         private final Runnable mDrawWakka = new Runnable() {
             public void run() {
+            	final FrameStats stats = BreakEngine.this.mGame.getStats();
+            	final long start = System.nanoTime();
+            	if (BreakEngine.this.mFrameScheduled != 0) {
+            		final long lateness = start - BreakEngine.this.mFrameScheduled;
+            		stats.getLateness().record(lateness);
+            		if (lateness >= (FrameStats.NANOSECONDS_IN_SECOND / BreakEngine.this.mFPS)) {
+            			//Missed at least one whole frame slot
+            			stats.onDropped();
+            		}
+            	}
+            	
             	BreakEngine.this.newFrame();
                 BreakEngine.this.draw();
+                
+                final long end = System.nanoTime();
+                final long duration = end - start;
+                stats.onFrame(end, duration);
+                
+                final FlightRecorder recorder = BreakEngine.this.mGame.getRecorder();
+                final long budget = FrameStats.NANOSECONDS_IN_SECOND / BreakEngine.this.mFPS;
+                if (duration > budget) {
+                	recorder.anomaly(FlightRecorder.EVENT_FRAME_OVER_BUDGET, duration / 1000, budget / 1000);
+                }
+                if (recorder.takePendingDump()) {
+                	BreakEngine.this.persistRecorder();
+                }
             }
         };
 
@@ -183,7 +383,11 @@ public class Wallpaper extends WallpaperService {
         	}
         	
             this.mGame = new Game();
-            this.mLastTouch = 0;
+            
+            synchronized (Wallpaper.this.mEngines) {
+            	Wallpaper.this.mEngines.add(this);
+            }
+            this.mGame.getRecorder().record(FlightRecorder.EVENT_ENGINE_CREATED, 0, 0);
 
             //Load all preferences or their defaults
             Wallpaper.PREFERENCES.registerOnSharedPreferenceChangeListener(this);
@@ -219,6 +423,7 @@ public class Wallpaper extends WallpaperService {
 			final String userControl = Wallpaper.this.getString(R.string.settings_game_usercontrol_key);
 			if (all || key.equals(userControl)) {
 				this.mIsControllable = preferences.getBoolean(userControl, resources.getBoolean(R.bool.game_usercontrol_default));
+				this.mGame.setControllable(this.mIsControllable);
 				
 				if (Wallpaper.LOG_DEBUG) {
 					Log.d(BreakEngine.TAG, "Is User Controllable: " + this.mIsControllable);
@@ -233,6 +438,7 @@ public class Wallpaper extends WallpaperService {
         @Override
         public void onVisibilityChanged(final boolean visible) {
             this.mIsVisible = visible;
+            this.mGame.getRecorder().record(FlightRecorder.EVENT_VISIBILITY, visible ? 1 : 0, 0);
             if (visible) {
                 this.draw();
                 
@@ -258,24 +464,52 @@ public class Wallpaper extends WallpaperService {
         public void onDestroy() {
             super.onDestroy();
             Wallpaper.this.mHandler.removeCallbacks(mDrawWakka);
+            
+            synchronized (Wallpaper.this.mEngines) {
+            	Wallpaper.this.mEngines.remove(this);
+            }
         }
         
         @Override
         public void onTouchEvent(final MotionEvent event) {
-        	if (event.getAction() == MotionEvent.ACTION_DOWN) {
-        		final long touch = System.currentTimeMillis();
-        		if (touch - this.mLastTouch < Wallpaper.RESET_THRESHOLD) {
-        			this.mGame.newLevel();
-        			this.mLastTouch = 0;
-        		} else if (this.mIsControllable) {
-	        		this.mLastTouch = touch;
-	        		this.mGame.setTouch(event.getX(), event.getY());
-        		}
-        		
-        		if (!Wallpaper.AUTO_FPS) {
-        			this.mGame.tick();
-        			this.draw();
-        		}
+        	final InputQueue queue = this.mGame.getInputQueue();
+        	final int action = event.getAction() & MotionEvent.ACTION_MASK;
+        	//Event times share the monotonic clock behind System.nanoTime()
+        	final long time = event.getEventTime() * FrameStats.NANOSECONDS_IN_MILLISECOND;
+        	
+        	switch (action) {
+        		case MotionEvent.ACTION_DOWN:
+        		case MotionEvent.ACTION_POINTER_DOWN:
+        		case MotionEvent.ACTION_UP:
+        		case MotionEvent.ACTION_POINTER_UP:
+        			final int index = (event.getAction() & MotionEvent.ACTION_POINTER_ID_MASK) >> MotionEvent.ACTION_POINTER_ID_SHIFT;
+        			final boolean isDown = (action == MotionEvent.ACTION_DOWN) || (action == MotionEvent.ACTION_POINTER_DOWN);
+        			queue.offer(isDown ? InputQueue.ACTION_DOWN : InputQueue.ACTION_UP, event.getPointerId(index), event.getX(index), event.getY(index), time);
+        			break;
+        			
+        		case MotionEvent.ACTION_MOVE:
+        			//Batched samples since the last event come first, oldest to newest
+        			final int pointers = event.getPointerCount();
+        			final int history = event.getHistorySize();
+        			for (int h = 0; h < history; h++) {
+        				final long historical = event.getHistoricalEventTime(h) * FrameStats.NANOSECONDS_IN_MILLISECOND;
+        				for (int p = 0; p < pointers; p++) {
+        					queue.offer(InputQueue.ACTION_MOVE, event.getPointerId(p), event.getHistoricalX(p, h), event.getHistoricalY(p, h), historical);
+        				}
+        			}
+        			for (int p = 0; p < pointers; p++) {
+        				queue.offer(InputQueue.ACTION_MOVE, event.getPointerId(p), event.getX(p), event.getY(p), time);
+        			}
+        			break;
+        			
+        		case MotionEvent.ACTION_CANCEL:
+        			queue.offer(InputQueue.ACTION_CANCEL, 0, 0, 0, time);
+        			break;
+        	}
+        	
+        	if (!Wallpaper.AUTO_FPS && (action == MotionEvent.ACTION_DOWN)) {
+        		this.mGame.tick();
+        		this.draw();
         	}
         }
 
@@ -289,11 +523,7 @@ public class Wallpaper extends WallpaperService {
             
             this.mScreenCenterX = width / 2.0f;
             this.mScreenCenterY = height / 2.0f;
-            
-            if (Wallpaper.LOG_DEBUG) {
-            	Log.d(BreakEngine.TAG, "Center X: " + this.mScreenCenterX);
-            	Log.d(BreakEngine.TAG, "Center Y: " + this.mScreenCenterY);
-            }
+            this.mGame.getRecorder().record(FlightRecorder.EVENT_SURFACE_CHANGED, width, height);
             
             //Trickle down
             this.mGame.performResize(width, height);
@@ -317,13 +547,68 @@ public class Wallpaper extends WallpaperService {
          * Advance the game by one frame.
          */
         private void newFrame() {
+        	final Tracer tracer = this.mGame.getTracer();
+        	tracer.begin(Tracer.SECTION_FRAME);
+        	
         	this.mGame.tick();
 
         	if (Wallpaper.AUTO_FPS) {
         		if (this.mIsVisible) {
-            		Wallpaper.this.mHandler.postDelayed(this.mDrawWakka, Wallpaper.MILLISECONDS_IN_SECOND / this.mFPS);
+        			final long delay = Wallpaper.MILLISECONDS_IN_SECOND / this.mFPS;
+        			this.mFrameScheduled = System.nanoTime() + (delay * FrameStats.NANOSECONDS_IN_MILLISECOND);
+            		Wallpaper.this.mHandler.postDelayed(this.mDrawWakka, delay);
             	}
             }
+        	
+        	tracer.end(Tracer.SECTION_FRAME);
+        }
+
+        /**
+         * Write the flight recorder to private storage so it survives for later
+         * inspection. Called right after a slow frame, so the main thread only
+         * copies the events and the file is written on the writer thread. A
+         * dump requested while the previous one is still being written is
+         * skipped.
+         */
+        private void persistRecorder() {
+        	if (this.mIsRecorderWriting) {
+        		return;
+        	}
+        	
+        	this.mRecorderEvents = this.mGame.getRecorder().copyTo(this.mRecorderCopy);
+        	this.mRecorderCopied = System.nanoTime();
+        	this.mIsRecorderWriting = true;
+        	Wallpaper.this.mWriter.post(this.mWriteRecorder);
+        }
+        
+        /**
+         * Write the current session to private storage so it can be replayed.
+         * 
+         * @param file Destination.
+         */
+        private void persistSession(final File file) {
+        	final Simulation simulation = this.mGame.getSimulation();
+        	final SessionRecorder session = simulation.getSession();
+        	if (session == null) {
+        		return;
+        	}
+        	
+        	try {
+        		session.writeTo(file, simulation.getTicks(), simulation.checksum());
+        	} catch (final IOException e) {
+        		Log.w(BreakEngine.TAG, "Unable to write session.", e);
+        	}
+        }
+        
+        /**
+         * Print the engine and game state in a human-readable form.
+         * 
+         * @param prefix Prefix for each line.
+         * @param writer Destination.
+         */
+        private void dump(final String prefix, final PrintWriter writer) {
+        	writer.println(prefix + "visible=" + this.mIsVisible + " preview=" + this.isPreview() + " fpsTarget=" + this.mFPS + " controllable=" + this.mIsControllable);
+        	this.mGame.dump(prefix, writer);
         }
 
         /**
@@ -331,16 +616,27 @@ public class Wallpaper extends WallpaperService {
          */
         private void draw() {
             final SurfaceHolder holder = this.getSurfaceHolder();
+            final Tracer tracer = this.mGame.getTracer();
 
             Canvas c = null;
             try {
+            	final long lockStart = System.nanoTime();
+            	tracer.begin(Tracer.SECTION_LOCK);
                 c = holder.lockCanvas();
+                tracer.end(Tracer.SECTION_LOCK);
+                this.mGame.getStats().getLock().record(System.nanoTime() - lockStart);
                 if (c != null) {
                     this.mGame.draw(c);
+                } else {
+                	this.mGame.getStats().onDropped();
+                	this.mGame.getRecorder().anomaly(FlightRecorder.EVENT_NO_CANVAS, 0, 0);
                 }
             } finally {
                 if (c != null) {
+                	tracer.begin(Tracer.SECTION_POST);
                 	holder.unlockCanvasAndPost(c);
+                	tracer.end(Tracer.SECTION_POST);
+                	this.mGame.onFramePosted(System.nanoTime());
                 }
             }
         }